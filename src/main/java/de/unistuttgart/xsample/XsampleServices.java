@@ -119,7 +119,20 @@ public class XsampleServices {
 		/** Percent value of a resource that will be returned as the default slice.  */
 		DefaultStaticExcerpt,
 		/** Lower boundary in segments for a resource to count as "small".  */
-		SmallFileLimit
+		SmallFileLimit,
+		/** Wall-clock limit in milliseconds for evaluating a query on a single part, 0 for no limit. */
+		QueryTimeout,
+		/** Maximum number of hits to collect per part, 0 for no limit. */
+		QueryResultLimit,
+		/** Log a per-matcher profile for every evaluated query. */
+		QueryProfiling,
+		/** Order matchers and constraints of every query by their estimated selectivity. */
+		QueryOptimization,
+		/** 
+		 * Additionally split the sentences of every part among the threads of the
+		 * common fork-join pool. Those threads are not managed by the container.
+		 */
+		QueryParallel
 		;
 		
 		public String getLabel() { return name(); }
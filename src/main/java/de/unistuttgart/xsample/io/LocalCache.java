@@ -101,6 +101,7 @@ public class LocalCache implements Serializable {
 	private static final String CACHE_FOLDER = "xsample_cache";
 	private static final String TMP_PREFIX = "xsample_file_";
 	private static final String DATA_SUFFIX = ".tmp";
+	private static final String INDEX_SUFFIX = ".idx";
 	
 	@Inject
 	XsampleServices services;
@@ -151,6 +152,7 @@ public class LocalCache implements Serializable {
     			try {
     				Path file = file(copy.getFilename());
     				Files.deleteIfExists(file);
+    				Files.deleteIfExists(getIndexFile(copy));
     			} catch (IOException e) {
     				log.log(Level.SEVERE, "Failed to purge expired file: "+copy.getFilename(), e);
 				} finally {
@@ -352,6 +354,13 @@ public class LocalCache implements Serializable {
 			} catch (IOException e) {
 				throw new TransmissionException("Failed to load remote resource", e);
 			}
+			
+			// Any index derived from previous content is now outdated
+			try {
+				Files.deleteIfExists(getIndexFile(copy));
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Failed to delete outdated index file for: "+copy.getFilename(), e);
+			}
 		}
     }
 
@@ -396,6 +405,16 @@ public class LocalCache implements Serializable {
 		return tempFolder().resolve(copy.getFilename());
 	}
 	
+	/**
+	 * Returns the location of the (optional) index file that query engines can 
+	 * use to store pre-processed versions of the given copy. The index file
+	 * shares the lifecycle of the actual data file and is encrypted with
+	 * the same key.
+	 */
+	public Path getIndexFile(XmpLocalCopy copy) {
+		return tempFolder().resolve(copy.getFilename()+INDEX_SUFFIX);
+	}
+	
 	public boolean isPopulated(XmpLocalCopy copy) {
 		Path file = getDataFile(copy);
 		try {
@@ -24,6 +24,10 @@ public class XsampleUi {
 		PrimeFaces.current().ajax().update(Arrays.asList(components));		
 	}
 	
+	public void addCallbackParam(String name, Object value) {
+		PrimeFaces.current().ajax().addCallbackParam(name, value);
+	}
+	
 	public void addMessage(@Nullable String clientId, FacesMessage message) {
 		Messages.add(clientId, message);
 	}
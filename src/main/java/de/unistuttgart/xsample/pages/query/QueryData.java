@@ -45,12 +45,18 @@ public class QueryData implements DataBean {
 	private boolean caseSensitive = true;
 	private int limit = 0;
 	
+	/** Id of the currently running {@link de.unistuttgart.xsample.qe.QueryJob query job}, if any */
+	private String jobId;
+	
 	public String getQuery() { return query; }
 	public void setQuery(String selectedCorpus) { this.query = selectedCorpus; }
 	
+	public String getJobId() { return jobId; }
+	public void setJobId(String jobId) { this.jobId = jobId; }
+	
 	@Override
 	public String toString() {
-		return String.format("%s@[query=%s, caseSensitive=%b, limit=%d]", getClass().getSimpleName(),
-				query, _boolean(caseSensitive), _int(limit));
+		return String.format("%s@[query=%s, caseSensitive=%b, limit=%d, jobId=%s]", getClass().getSimpleName(),
+				query, _boolean(caseSensitive), _int(limit), jobId);
 	}
 }
@@ -21,7 +21,6 @@ package de.unistuttgart.xsample.pages.query;
 
 import static de.unistuttgart.xsample.util.XSampleUtils.isNullOrEmpty;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -45,10 +44,14 @@ import de.unistuttgart.xsample.pages.shared.ExcerptEntry;
 import de.unistuttgart.xsample.pages.shared.FragmentCodec;
 import de.unistuttgart.xsample.qe.MappingException;
 import de.unistuttgart.xsample.qe.QueryEngine;
+import de.unistuttgart.xsample.qe.QueryEngine.QueryPlan;
 import de.unistuttgart.xsample.qe.QueryException;
+import de.unistuttgart.xsample.qe.QueryJob;
+import de.unistuttgart.xsample.qe.QueryJobService;
 import de.unistuttgart.xsample.qe.QueryResult;
 import de.unistuttgart.xsample.qe.Result;
 import de.unistuttgart.xsample.util.BundleUtil;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 
 /**
  * @author Markus Gärtner
@@ -73,6 +76,8 @@ public class QueryPage extends AbstractSlicePage {
 	@Inject
 	QueryEngine queryEngine;
 	@Inject
+	QueryJobService queryJobs;
+	@Inject
 	ResultData resultData;
 	@Inject
 	ResultsData resultsData;
@@ -88,7 +93,22 @@ public class QueryPage extends AbstractSlicePage {
 		return StringEscapeUtils.unescapeHtml4(query);
 	}
 	
-	/** Callback for button to run ICARUS query */
+	private void reportQueryError(QueryException e) {
+		logger.log(Level.SEVERE, "Query evaluation failed: "+e.getMessage(), e);
+		String resourceId = e.getResourceId().orElse(sharedData.getManifest().getCorpus().getId());
+		switch (e.getCode()) {
+		case IO_ERROR: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.loadingError", resourceId); break;
+		case INTERNAL_ERROR: queryMessage(FacesMessage.SEVERITY_FATAL, "query.msg.internalError", resourceId); break;
+		case SYNTAX_ERROR: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.invalidQuerySyntax"); break;
+		case UNSUPPORTED_FORMAT: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.unsupportedFormat", resourceId); break;
+		case SECURITY_ERROR: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.decryptionFailed", resourceId); break;
+		case RESOURCE_LOCKED: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.cacheBusy", resourceId); break;
+		default:
+			break;
+		}
+	}
+	
+	/** Callback for button to run ICARUS query. Only starts the search, results are fetched via {@link #pollQuery()}. */
 	@Transactional
 	public void runQuery() {
 		String rawQuery = queryData.getQuery();
@@ -98,29 +118,83 @@ public class QueryPage extends AbstractSlicePage {
 		
 		String query = cleanQuery(rawQuery);
 		
+		// Only one active query per view
+		queryJobs.cancel(queryData.getJobId());
+		queryData.setJobId(null);
+		
+		// Keep previous results around, a refined query only needs to search those
+		final String previousQuery = resultsData.getQuery();
+		final Map<String, Result> previousResults = new Object2ObjectOpenHashMap<>(resultsData.getRawResults());
+		
 		resultData.reset();
 		resultsData.reset();
+		resultsData.setQuery(query);
 		
-		// Execute actual search
-		List<QueryResult> results;
+		// Prepare search on the request thread, actual evaluation happens in the background
+		QueryPlan plan;
 		try {
-			results = queryEngine.query(query);
+			plan = queryEngine.plan(query, previousQuery, previousResults);
 		} catch(QueryException e) {
-			logger.log(Level.SEVERE, "Query evaluation failed: "+e.getMessage(), e);
-			String resourceId = e.getResourceId().orElse(sharedData.getManifest().getCorpus().getId());
-			switch (e.getCode()) {
-			case IO_ERROR: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.loadingError", resourceId); break;
-			case INTERNAL_ERROR: queryMessage(FacesMessage.SEVERITY_FATAL, "query.msg.internalError", resourceId); break;
-			case SYNTAX_ERROR: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.invalidQuerySyntax"); break;
-			case UNSUPPORTED_FORMAT: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.unsupportedFormat", resourceId); break;
-			case SECURITY_ERROR: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.decryptionFailed", resourceId); break;
-			case RESOURCE_LOCKED: queryMessage(FacesMessage.SEVERITY_ERROR, "query.msg.cacheBusy", resourceId); break;
-			default:
-				break;
-			}
+			reportQueryError(e);
+			return;
+		}
+		
+		QueryJob job = queryJobs.submit(plan);
+		queryData.setJobId(job.getId());
+		ui.addCallbackParam("queryStarted", Boolean.TRUE);
+	}
+	
+	/** Callback for the poll component while a query is running */
+	@Transactional
+	public void pollQuery() {
+		final String jobId = queryData.getJobId();
+		if(jobId==null) {
+			return;
+		}
+		
+		QueryJob job = queryJobs.find(jobId);
+		if(job==null) {
+			queryData.setJobId(null);
+			queryMessage(FacesMessage.SEVERITY_WARN, "query.msg.jobExpired");
+			return;
+		}
+		if(!job.isFinished()) {
 			return;
 		}
 		
+		queryJobs.claim(jobId);
+		queryData.setJobId(null);
+		
+		switch (job.getState()) {
+		case DONE:
+			processResults(queryData.getQuery(), job.getResults());
+			ui.addCallbackParam("queryDone", Boolean.TRUE);
+			break;
+		case FAILED:
+			reportQueryError(job.getError());
+			break;
+		default:
+			// Cancelled jobs have no results to show
+			break;
+		}
+	}
+	
+	/** Callback for button to abort the running query */
+	public void cancelQuery() {
+		queryJobs.cancel(queryData.getJobId());
+		queryData.setJobId(null);
+	}
+	
+	public boolean isQueryRunning() {
+		return queryData.getJobId()!=null;
+	}
+	
+	public int getQueryProgress() {
+		QueryJob job = queryJobs.find(queryData.getJobId());
+		return job==null ? 0 : job.getProgress();
+	}
+	
+	private void processResults(String rawQuery, List<QueryResult> results) {
 		// Doubles as offset for the new result
 		long rawSegments = 0;
 		FragmentCodec rawHits = new FragmentCodec();
@@ -128,6 +202,9 @@ public class QueryPage extends AbstractSlicePage {
 
 		for (int i = 0; i < results.size(); i++) {
 			QueryResult qr = results.get(i);
+			if(qr.isTruncated()) {
+				queryMessage(FacesMessage.SEVERITY_WARN, "query.msg.truncated", qr.getCorpusId());
+			}
 			resultsData.registerRawResult(qr.getResult());
 			resultsData.registerRawSegments(qr.getCorpusId(), qr.getSegments());
 			
@@ -236,7 +313,7 @@ public class QueryPage extends AbstractSlicePage {
 		if(!resultData.isEmpty()) {
 			Result candidates = resultData.getMappedResult();
 			if(!candidates.isEmpty()) {
-				long firstUsableSlot = candidates.getHits()[0];
+				long firstUsableSlot = candidates.getBitmap().first();
 				sliceData.setBegin(firstUsableSlot);
 				sliceData.setEnd(firstUsableSlot);
 			}
@@ -247,31 +324,6 @@ public class QueryPage extends AbstractSlicePage {
 		}
 	}
 	
-	private static final long[] EMPTY = {};
-	
-	private static long[] filter(long[] hits, long min, long max) {
-		int first = Arrays.binarySearch(hits, min);
-		if(first < 0) first = -first - 1;
-		
-		if(first==hits.length) {
-			return EMPTY;
-		}
-		
-		int last = Arrays.binarySearch(hits, first, hits.length, max);
-		if(last < 0) {
-			last = -last - 1;
-		} else {
-			// If we actually found the value, we need to ensure it is contained in the slice
-			last = Math.min(last+1, hits.length);
-		}
-		
-		if(first==last) {
-			return EMPTY;
-		}
-		
-		return Arrays.copyOfRange(hits, first, last);
-	}
-	
 	/**
 	 * @see de.unistuttgart.xsample.pages.shared.AbstractSlicePage#asFragments(long, long)
 	 */
@@ -280,7 +332,7 @@ public class QueryPage extends AbstractSlicePage {
 		if(resultData.isEmpty()) {
 			return Collections.emptyList();
 		}
-		final long[] values = filter(resultData.getMappedResult().getHits(), begin, end);
+		final long[] values = resultData.getMappedResult().getBitmap().slice(begin, end).toArray();
 		return XmpFragment.from(values);
 	}
 	
@@ -22,6 +22,7 @@ package de.unistuttgart.xsample.pages.query;
 import static de.unistuttgart.xsample.util.XSampleUtils._long;
 import static java.util.Objects.requireNonNull;
 
+import java.util.Collections;
 import java.util.Map;
 
 import javax.faces.view.ViewScoped;
@@ -55,6 +56,9 @@ public class ResultsData extends EncodedResultData {
 	/** Accumulated raw segments */
 	private long rawSegments = 0;
 	
+	/** The query that produced the current results */
+	private String query;
+	
 	public ResultsData() {
 		rawSegmentsByCorpus.defaultReturnValue(0);
 	}
@@ -62,6 +66,9 @@ public class ResultsData extends EncodedResultData {
 	public long getRawSegments() { return rawSegments; }
 	public void setRawSegments(long rawSegments) { this.rawSegments = rawSegments; }
 	
+	public String getQuery() { return query; }
+	public void setQuery(String query) { this.query = query; }
+	
 	// RAW RESULTS
 
 	public Result getRawResult(Corpus corpus) {
@@ -76,6 +83,10 @@ public class ResultsData extends EncodedResultData {
 	public void registerRawResult(Result result) {
 		rawResults.put(result.getCorpusId(), result);
 	}
+	/** Returns a read-only view on the raw results of all parts, mapped by corpus id. */
+	public Map<String, Result> getRawResults() {
+		return Collections.unmodifiableMap(rawResults);
+	}
 	
 	// MAPPED RESULTS
 	
@@ -116,6 +127,7 @@ public class ResultsData extends EncodedResultData {
 		rawSegmentsByCorpus.clear();
 		
 		rawSegments = 0;
+		query = null;
 	}
 	
 	public boolean isEmpty() { return rawResults==null || rawResults.isEmpty(); }
@@ -130,8 +142,8 @@ public class ResultsData extends EncodedResultData {
 	
 	@Override
 	public String toString() {
-		return String.format("%s@[rawHits='%s', mappedHits='%s', rawResult=%s, mappedResult=%s, rawSegments=%s, totalRawSegments=%d]", 
+		return String.format("%s@[rawHits='%s', mappedHits='%s', rawResult=%s, mappedResult=%s, rawSegments=%s, totalRawSegments=%d, query='%s']", 
 				getClass().getSimpleName(), getRawHits(), getMappedHits(),
-				rawResults, mappedResultsByCorpus, rawSegmentsByCorpus, _long(rawSegments));
+				rawResults, mappedResultsByCorpus, rawSegmentsByCorpus, _long(rawSegments), query);
 	}
 }
@@ -0,0 +1,826 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static de.unistuttgart.xsample.util.XSampleUtils.checkArgument;
+import static de.unistuttgart.xsample.util.XSampleUtils.strictToInt;
+import static java.util.Objects.requireNonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Immutable sorted set of {@code long} values, compressed in the style of a
+ * Roaring bitmap. Values are grouped into chunks of 2<sup>16</sup> by their
+ * upper bits and every chunk is stored in whichever of three containers is
+ * smallest: a sorted array of the lower bits for sparse chunks, a plain bitmap
+ * for dense ones or a list of runs for chunks made up of contiguous spans. The
+ * latter is the typical shape of results after mapping them to primary segments.
+ * <p>
+ * Serialization writes the containers as they are, so a set keeps its compact
+ * form in view state and caches.
+ * 
+ * @author Markus Gärtner
+ *
+ */
+public final class HitBitmap implements Serializable {
+
+	private static final long serialVersionUID = 6023573125894853340L;
+	
+	public static final HitBitmap EMPTY = new HitBitmap(new long[0], new Container[0]);
+
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	/** Number of words in a bitmap container */
+	private static final int WORDS = CHUNK_SIZE / Long.SIZE;
+	/** Storage size of a bitmap container in bytes */
+	private static final int BITMAP_BYTES = WORDS * Long.BYTES;
+	
+	private static final byte ARRAY = 0;
+	private static final byte BITMAP = 1;
+	private static final byte RUN = 2;
+	
+	/** Upper bits of the values in every container, ascending */
+	private transient long[] keys;
+	private transient Container[] containers;
+	private transient long cardinality;
+	
+	private HitBitmap(long[] keys, Container[] containers) {
+		this.keys = keys;
+		this.containers = containers;
+		for (Container container : containers) {
+			cardinality += container.cardinality();
+		}
+	}
+	
+	private static HitBitmap create(LongArrayList keys, ObjectArrayList<Container> containers) {
+		if(keys.isEmpty()) {
+			return EMPTY;
+		}
+		return new HitBitmap(keys.toLongArray(), containers.toArray(new Container[containers.size()]));
+	}
+	
+	private static long key(long value) { return value >> CHUNK_BITS; }
+	
+	private static int low(long value) { return (int) (value & CHUNK_MASK); }
+	
+	private static long base(long key) { return key << CHUNK_BITS; }
+	
+	/** Creates a set from the given strictly ascending values. */
+	public static HitBitmap of(long...values) {
+		requireNonNull(values);
+		if(values.length==0) {
+			return EMPTY;
+		}
+		Builder builder = new Builder();
+		for (long value : values) {
+			builder.add(value);
+		}
+		return builder.build();
+	}
+	
+	/** Creates a set containing all values between {@code from} and {@code to}, both inclusive. */
+	public static HitBitmap range(long from, long to) {
+		if(from>to) {
+			return EMPTY;
+		}
+		return new Builder().addRange(from, to).build();
+	}
+	
+	public long cardinality() { return cardinality; }
+	
+	public boolean isEmpty() { return cardinality==0; }
+	
+	/** Returns the number of values between {@code from} and {@code to}, both inclusive. */
+	public long cardinality(long from, long to) {
+		if(from>to) {
+			return 0;
+		}
+		return rank(to) - (from==Long.MIN_VALUE ? 0 : rank(from-1));
+	}
+	
+	/** Number of values less than or equal to {@code value} */
+	private long rank(long value) {
+		final long key = key(value);
+		long count = 0;
+		for (int i = 0; i < keys.length && keys[i]<=key; i++) {
+			if(keys[i]==key) {
+				count += containers[i].rank(low(value));
+			} else {
+				count += containers[i].cardinality();
+			}
+		}
+		return count;
+	}
+	
+	public boolean contains(long value) {
+		final int index = Arrays.binarySearch(keys, key(value));
+		return index>=0 && containers[index].contains(low(value));
+	}
+	
+	public long first() {
+		if(isEmpty())
+			throw new NoSuchElementException();
+		return base(keys[0]) | containers[0].ceiling(0);
+	}
+	
+	public long last() {
+		if(isEmpty())
+			throw new NoSuchElementException();
+		final int index = keys.length-1;
+		return base(keys[index]) | containers[index].last();
+	}
+	
+	/** Returns the subset of values between {@code from} and {@code to}, both inclusive. */
+	public HitBitmap slice(long from, long to) {
+		if(from>to || isEmpty()) {
+			return EMPTY;
+		}
+		if(from<=first() && to>=last()) {
+			return this;
+		}
+		return and(range(from, to));
+	}
+	
+	/** Returns the intersection of this set and {@code other}. */
+	public HitBitmap and(HitBitmap other) {
+		requireNonNull(other);
+		final LongArrayList resultKeys = new LongArrayList();
+		final ObjectArrayList<Container> resultContainers = new ObjectArrayList<>();
+		int i = 0, j = 0;
+		while(i<keys.length && j<other.keys.length) {
+			final int order = Long.compare(keys[i], other.keys[j]);
+			if(order<0) {
+				i++;
+			} else if(order>0) {
+				j++;
+			} else {
+				final Container container = Container.and(containers[i], other.containers[j]);
+				if(container!=null) {
+					resultKeys.add(keys[i]);
+					resultContainers.add(container);
+				}
+				i++;
+				j++;
+			}
+		}
+		return create(resultKeys, resultContainers);
+	}
+	
+	/** Returns the union of this set and {@code other}. */
+	public HitBitmap or(HitBitmap other) {
+		requireNonNull(other);
+		if(other.isEmpty()) {
+			return this;
+		}
+		if(isEmpty()) {
+			return other;
+		}
+		final LongArrayList resultKeys = new LongArrayList();
+		final ObjectArrayList<Container> resultContainers = new ObjectArrayList<>();
+		int i = 0, j = 0;
+		while(i<keys.length || j<other.keys.length) {
+			final int order = i==keys.length ? 1 : j==other.keys.length ? -1 
+					: Long.compare(keys[i], other.keys[j]);
+			if(order<0) {
+				resultKeys.add(keys[i]);
+				resultContainers.add(containers[i++]);
+			} else if(order>0) {
+				resultKeys.add(other.keys[j]);
+				resultContainers.add(other.containers[j++]);
+			} else {
+				resultKeys.add(keys[i]);
+				resultContainers.add(Container.or(containers[i++], other.containers[j++]));
+			}
+		}
+		return create(resultKeys, resultContainers);
+	}
+	
+	public void forEach(LongConsumer action) {
+		requireNonNull(action);
+		for (int i = 0; i < keys.length; i++) {
+			containers[i].forEach(base(keys[i]), action);
+		}
+	}
+	
+	public PrimitiveIterator.OfLong iterator() {
+		return new PrimitiveIterator.OfLong() {
+			private int index = 0;
+			private int next = keys.length==0 ? -1 : containers[0].ceiling(0);
+
+			@Override
+			public boolean hasNext() {
+				return next!=-1;
+			}
+
+			@Override
+			public long nextLong() {
+				if(next==-1)
+					throw new NoSuchElementException();
+				final long value = base(keys[index]) | next;
+				next = next==CHUNK_MASK ? -1 : containers[index].ceiling(next+1);
+				while(next==-1 && ++index<keys.length) {
+					next = containers[index].ceiling(0);
+				}
+				return value;
+			}
+		};
+	}
+	
+	public long[] toArray() {
+		final long[] values = new long[strictToInt(cardinality)];
+		final int[] cursor = {0};
+		forEach(value -> values[cursor[0]++] = value);
+		return values;
+	}
+	
+	/** Writes the compressed form of this set. */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			out.writeLong(keys[i]);
+			out.writeByte(containers[i].type());
+			containers[i].write(out);
+		}
+	}
+	
+	/** Reads a set previously written by {@link #writeTo(DataOutput)}. */
+	public static HitBitmap readFrom(DataInput in) throws IOException {
+		final int size = in.readInt();
+		if(size<0)
+			throw new IOException("Negative container count: "+size);
+		if(size==0) {
+			return EMPTY;
+		}
+		
+		final long[] keys = new long[size];
+		final Container[] containers = new Container[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = in.readLong();
+			final byte type = in.readByte();
+			switch (type) {
+			case ARRAY: containers[i] = ArrayContainer.read(in); break;
+			case BITMAP: containers[i] = BitmapContainer.read(in); break;
+			case RUN: containers[i] = RunContainer.read(in); break;
+
+			default:
+				throw new IOException("Unknown container type: "+type);
+			}
+		}
+		return new HitBitmap(keys, containers);
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		writeTo(out);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		final HitBitmap source = readFrom(in);
+		keys = source.keys;
+		containers = source.containers;
+		cardinality = source.cardinality;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(keys) * 31 + Long.hashCode(cardinality);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(obj==this) {
+			return true;
+		} else if(obj instanceof HitBitmap) {
+			final HitBitmap other = (HitBitmap) obj;
+			if(cardinality!=other.cardinality || !Arrays.equals(keys, other.keys)) {
+				return false;
+			}
+			final PrimitiveIterator.OfLong it1 = iterator(), it2 = other.iterator();
+			while(it1.hasNext()) {
+				if(it1.nextLong()!=it2.nextLong()) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+	
+	/**
+	 * Collects values in ascending order and picks the most compact container
+	 * for every chunk. Spans added via {@link #addRange(long, long)} never get 
+	 * expanded unless the chunk turns out to be stored as array or bitmap.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static final class Builder {
+		private final LongArrayList keys = new LongArrayList();
+		private final ObjectArrayList<Container> containers = new ObjectArrayList<>();
+		
+		/** Runs in the current chunk as pairs of inclusive bounds */
+		private char[] runs = new char[16];
+		private int runCount = 0;
+		private int size = 0;
+		private long key;
+		private long last;
+		private boolean empty = true;
+		
+		public Builder add(long value) {
+			return addRange(value, value);
+		}
+		
+		/** 
+		 * Adds all values between {@code from} and {@code to}, both inclusive.
+		 * Values must be added in strictly ascending order.
+		 */
+		public Builder addRange(long from, long to) {
+			checkArgument("Range must not be empty", from<=to);
+			checkArgument("Values must be added in ascending order", empty || from>last);
+			empty = false;
+			last = to;
+			
+			while(true) {
+				final long chunk = key(from);
+				if(runCount>0 && chunk!=key) {
+					flush();
+				}
+				key = chunk;
+				final long end = Math.min(to, base(chunk) | CHUNK_MASK);
+				push(low(from), low(end));
+				if(end==to) {
+					break;
+				}
+				from = end+1;
+			}
+			return this;
+		}
+		
+		private void push(int from, int to) {
+			size += to-from+1;
+			if(runCount>0 && runs[2*runCount-1]+1==from) {
+				runs[2*runCount-1] = (char) to;
+				return;
+			}
+			if(2*runCount==runs.length) {
+				runs = Arrays.copyOf(runs, runs.length*2);
+			}
+			runs[2*runCount] = (char) from;
+			runs[2*runCount+1] = (char) to;
+			runCount++;
+		}
+		
+		private void flush() {
+			if(runCount==0) {
+				return;
+			}
+			keys.add(key);
+			containers.add(Container.of(runs, runCount, size, null));
+			runCount = 0;
+			size = 0;
+		}
+		
+		public HitBitmap build() {
+			flush();
+			return create(keys, containers);
+		}
+	}
+
+	/** Stores the lower 16 bits of all values in a single chunk */
+	private static abstract class Container {
+		
+		/** 
+		 * Picks the most compact representation for the given runs. If present, 
+		 * {@code words} must hold the same values and is reused for bitmaps.
+		 */
+		static Container of(char[] runs, int runCount, int cardinality, @Nullable long[] words) {
+			if(4*runCount < Math.min(2*cardinality, BITMAP_BYTES)) {
+				return new RunContainer(Arrays.copyOf(runs, 2*runCount), cardinality);
+			}
+			if(2*cardinality <= BITMAP_BYTES) {
+				final char[] values = new char[cardinality];
+				int size = 0;
+				for (int r = 0; r < runCount; r++) {
+					for (int v = runs[2*r]; v <= runs[2*r+1]; v++) {
+						values[size++] = (char) v;
+					}
+				}
+				return new ArrayContainer(values);
+			}
+			if(words==null) {
+				words = new long[WORDS];
+				for (int r = 0; r < runCount; r++) {
+					setRange(words, runs[2*r], runs[2*r+1]);
+				}
+			}
+			return new BitmapContainer(words, cardinality);
+		}
+		
+		/** Converts the given bitmap into the most compact container or {@code null} if it is empty. */
+		@Nullable
+		static Container of(long[] words) {
+			char[] runs = new char[16];
+			int runCount = 0, cardinality = 0;
+			int begin = nextSetBit(words, 0);
+			while(begin!=-1) {
+				final int end = nextClearBit(words, begin);
+				if(2*runCount==runs.length) {
+					runs = Arrays.copyOf(runs, runs.length*2);
+				}
+				runs[2*runCount] = (char) begin;
+				runs[2*runCount+1] = (char) (end-1);
+				runCount++;
+				cardinality += end-begin;
+				begin = nextSetBit(words, end);
+			}
+			return cardinality==0 ? null : of(runs, runCount, cardinality, words);
+		}
+		
+		@Nullable
+		static Container and(Container c1, Container c2) {
+			if(c1.cardinality()==CHUNK_SIZE) {
+				return c2;
+			} else if(c2.cardinality()==CHUNK_SIZE) {
+				return c1;
+			} else if(c1 instanceof ArrayContainer) {
+				return ((ArrayContainer)c1).filter(c2);
+			} else if(c2 instanceof ArrayContainer) {
+				return ((ArrayContainer)c2).filter(c1);
+			}
+			final long[] words1 = new long[WORDS], words2 = new long[WORDS];
+			c1.fill(words1);
+			c2.fill(words2);
+			for (int i = 0; i < WORDS; i++) {
+				words1[i] &= words2[i];
+			}
+			return of(words1);
+		}
+		
+		static Container or(Container c1, Container c2) {
+			final long[] words = new long[WORDS];
+			c1.fill(words);
+			c2.fill(words);
+			return of(words);
+		}
+
+		abstract byte type();
+		
+		abstract int cardinality();
+		
+		abstract boolean contains(int value);
+		
+		/** Number of values less than or equal to {@code value} */
+		abstract int rank(int value);
+		
+		/** Smallest value greater than or equal to {@code value} or {@code -1} */
+		abstract int ceiling(int value);
+		
+		abstract int last();
+		
+		/** Sets the bits of all values in the given bitmap */
+		abstract void fill(long[] words);
+		
+		abstract void forEach(long base, LongConsumer action);
+		
+		abstract void write(DataOutput out) throws IOException;
+	}
+	
+	private static final class ArrayContainer extends Container {
+		private final char[] values;
+
+		ArrayContainer(char[] values) {
+			this.values = values;
+		}
+		
+		static ArrayContainer read(DataInput in) throws IOException {
+			final char[] values = new char[in.readChar()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = in.readChar();
+			}
+			return new ArrayContainer(values);
+		}
+		
+		@Nullable
+		Container filter(Container other) {
+			final char[] buffer = new char[values.length];
+			int size = 0;
+			for (char value : values) {
+				if(other.contains(value)) {
+					buffer[size++] = value;
+				}
+			}
+			if(size==0) {
+				return null;
+			}
+			return size==values.length ? this : new ArrayContainer(Arrays.copyOf(buffer, size));
+		}
+
+		@Override
+		byte type() { return ARRAY; }
+
+		@Override
+		int cardinality() { return values.length; }
+
+		@Override
+		boolean contains(int value) { return Arrays.binarySearch(values, (char) value)>=0; }
+
+		@Override
+		int rank(int value) {
+			final int index = Arrays.binarySearch(values, (char) value);
+			return index>=0 ? index+1 : -index-1;
+		}
+
+		@Override
+		int ceiling(int value) {
+			int index = Arrays.binarySearch(values, (char) value);
+			if(index<0) {
+				index = -index-1;
+			}
+			return index<values.length ? values[index] : -1;
+		}
+
+		@Override
+		int last() { return values[values.length-1]; }
+
+		@Override
+		void fill(long[] words) {
+			for (char value : values) {
+				words[value >>> 6] |= 1L << value;
+			}
+		}
+
+		@Override
+		void forEach(long base, LongConsumer action) {
+			for (char value : values) {
+				action.accept(base | value);
+			}
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeChar(values.length);
+			for (char value : values) {
+				out.writeChar(value);
+			}
+		}
+	}
+	
+	private static final class BitmapContainer extends Container {
+		private final long[] words;
+		private final int cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+		
+		static BitmapContainer read(DataInput in) throws IOException {
+			final long[] words = new long[WORDS];
+			int cardinality = 0;
+			for (int i = 0; i < WORDS; i++) {
+				words[i] = in.readLong();
+				cardinality += Long.bitCount(words[i]);
+			}
+			return new BitmapContainer(words, cardinality);
+		}
+
+		@Override
+		byte type() { return BITMAP; }
+
+		@Override
+		int cardinality() { return cardinality; }
+
+		@Override
+		boolean contains(int value) { return (words[value >>> 6] & (1L << value)) != 0; }
+
+		@Override
+		int rank(int value) {
+			final int index = value >>> 6;
+			int count = 0;
+			for (int i = 0; i < index; i++) {
+				count += Long.bitCount(words[i]);
+			}
+			return count + Long.bitCount(words[index] & (-1L >>> (63 - (value & 63))));
+		}
+
+		@Override
+		int ceiling(int value) { return nextSetBit(words, value); }
+
+		@Override
+		int last() {
+			int index = WORDS-1;
+			while(words[index]==0) {
+				index--;
+			}
+			return index*Long.SIZE + 63 - Long.numberOfLeadingZeros(words[index]);
+		}
+
+		@Override
+		void fill(long[] words) {
+			for (int i = 0; i < WORDS; i++) {
+				words[i] |= this.words[i];
+			}
+		}
+
+		@Override
+		void forEach(long base, LongConsumer action) {
+			for (int i = 0; i < WORDS; i++) {
+				long word = words[i];
+				while(word!=0) {
+					action.accept(base | (i*Long.SIZE + Long.numberOfTrailingZeros(word)));
+					word &= word-1;
+				}
+			}
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException {
+			for (long word : words) {
+				out.writeLong(word);
+			}
+		}
+	}
+	
+	private static final class RunContainer extends Container {
+		/** Pairs of inclusive bounds */
+		private final char[] runs;
+		private final int cardinality;
+
+		RunContainer(char[] runs, int cardinality) {
+			this.runs = runs;
+			this.cardinality = cardinality;
+		}
+		
+		static RunContainer read(DataInput in) throws IOException {
+			final char[] runs = new char[2*in.readChar()];
+			int cardinality = 0;
+			for (int r = 0; r < runs.length; r += 2) {
+				runs[r] = in.readChar();
+				runs[r+1] = in.readChar();
+				cardinality += runs[r+1]-runs[r]+1;
+			}
+			return new RunContainer(runs, cardinality);
+		}
+		
+		/** Index of the last run starting at or before {@code value} or {@code -1} */
+		private int find(int value) {
+			int low = 0, high = runs.length/2 - 1, result = -1;
+			while(low<=high) {
+				final int mid = (low + high) >>> 1;
+				if(runs[2*mid]<=value) {
+					result = mid;
+					low = mid+1;
+				} else {
+					high = mid-1;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		byte type() { return RUN; }
+
+		@Override
+		int cardinality() { return cardinality; }
+
+		@Override
+		boolean contains(int value) {
+			final int run = find(value);
+			return run!=-1 && value<=runs[2*run+1];
+		}
+
+		@Override
+		int rank(int value) {
+			final int run = find(value);
+			int count = 0;
+			for (int r = 0; r < run; r++) {
+				count += runs[2*r+1]-runs[2*r]+1;
+			}
+			if(run!=-1) {
+				count += Math.min(value, runs[2*run+1])-runs[2*run]+1;
+			}
+			return count;
+		}
+
+		@Override
+		int ceiling(int value) {
+			final int run = find(value);
+			if(run!=-1 && value<=runs[2*run+1]) {
+				return value;
+			}
+			final int next = 2*(run+1);
+			return next<runs.length ? runs[next] : -1;
+		}
+
+		@Override
+		int last() { return runs[runs.length-1]; }
+
+		@Override
+		void fill(long[] words) {
+			for (int r = 0; r < runs.length; r += 2) {
+				setRange(words, runs[r], runs[r+1]);
+			}
+		}
+
+		@Override
+		void forEach(long base, LongConsumer action) {
+			for (int r = 0; r < runs.length; r += 2) {
+				for (int v = runs[r]; v <= runs[r+1]; v++) {
+					action.accept(base | v);
+				}
+			}
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeChar(runs.length/2);
+			for (char bound : runs) {
+				out.writeChar(bound);
+			}
+		}
+	}
+	
+	/** Sets all bits between {@code from} and {@code to}, both inclusive. */
+	private static void setRange(long[] words, int from, int to) {
+		final int first = from >>> 6, last = to >>> 6;
+		final long firstMask = -1L << from, lastMask = -1L >>> (63 - (to & 63));
+		if(first==last) {
+			words[first] |= firstMask & lastMask;
+			return;
+		}
+		words[first] |= firstMask;
+		for (int i = first+1; i < last; i++) {
+			words[i] = -1L;
+		}
+		words[last] |= lastMask;
+	}
+	
+	private static int nextSetBit(long[] words, int from) {
+		int index = from >>> 6;
+		if(index>=WORDS) {
+			return -1;
+		}
+		long word = words[index] & (-1L << from);
+		while(true) {
+			if(word!=0) {
+				return index*Long.SIZE + Long.numberOfTrailingZeros(word);
+			}
+			if(++index==WORDS) {
+				return -1;
+			}
+			word = words[index];
+		}
+	}
+	
+	private static int nextClearBit(long[] words, int from) {
+		int index = from >>> 6;
+		long word = ~words[index] & (-1L << from);
+		while(true) {
+			if(word!=0) {
+				return index*Long.SIZE + Long.numberOfTrailingZeros(word);
+			}
+			if(++index==WORDS) {
+				return CHUNK_SIZE;
+			}
+			word = ~words[index];
+		}
+	}
+}
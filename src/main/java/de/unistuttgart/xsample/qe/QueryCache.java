@@ -0,0 +1,327 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.enterprise.context.ApplicationScoped;
+
+import de.unistuttgart.xsample.dv.XmpLocalCopy;
+import de.unistuttgart.xsample.dv.XmpResource;
+import de.unistuttgart.xsample.qe.QueryException.QueryErrorCode;
+
+/**
+ * Application-wide cache for the results of evaluating a query on a single 
+ * part of a manifest. Entries are keyed by the normalized query, the search
+ * settings and the identity and content version of the local copy that got
+ * searched. The cache is bounded both in the number of entries and in the 
+ * total number of stored hits and evicts the least recently used entries first.
+ * <p>
+ * Concurrent requests for the same key are coalesced: only the first caller
+ * actually evaluates the query, all others wait for and share its outcome.
+ * {@link Result#isTruncated() Truncated} results are never stored and waiting 
+ * callers evaluate the query on their own instead, since the evaluation they 
+ * waited for might have been cancelled.
+ * <p>
+ * Cached hit arrays are shared between all callers and must never be modified!
+ * 
+ * @author Markus Gärtner
+ *
+ */
+@ApplicationScoped
+public class QueryCache {
+
+	private static final Logger log = Logger.getLogger(QueryCache.class.getCanonicalName());
+	
+	/** Maximum number of cached part results */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+	/** Maximum number of hits across all cached part results */
+	public static final long DEFAULT_MAX_HITS = 1L << 24;
+	
+	private final int maxEntries;
+	private final long maxHits;
+	
+	/** Access-ordered, guarded by {@link #lock} */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+	/** Total number of hits in {@link #entries}, guarded by {@link #lock} */
+	private long totalHits = 0;
+	private final Object lock = new Object();
+	
+	/** Evaluations currently in progress */
+	private final ConcurrentMap<Key, CompletableFuture<Entry>> pending = new ConcurrentHashMap<>();
+	
+	public QueryCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_HITS);
+	}
+	
+	public QueryCache(int maxEntries, long maxHits) {
+		if(maxEntries<1)
+			throw new IllegalArgumentException("Entry limit must be positive: "+maxEntries);
+		if(maxHits<0)
+			throw new IllegalArgumentException("Hit limit must not be negative: "+maxHits);
+		this.maxEntries = maxEntries;
+		this.maxHits = maxHits;
+	}
+	
+	/**
+	 * Fetches the cached result for {@code key} or evaluates it via the given
+	 * {@code loader}. If another thread is already evaluating the same key, 
+	 * this method waits for that evaluation instead of starting a new one.
+	 * Failures are forwarded to all waiting callers and are not cached.
+	 * <p>
+	 * Every call returns a fresh {@link QueryResult} so that callers can 
+	 * freely assign the {@link Result#setCorpusId(String) corpus id}.
+	 */
+	public QueryResult get(Key key, Callable<QueryResult> loader) throws QueryException {
+		requireNonNull(key);
+		requireNonNull(loader);
+		
+		Entry entry = lookup(key);
+		if(entry!=null) {
+			return entry.toResult();
+		}
+		
+		final CompletableFuture<Entry> future = new CompletableFuture<>();
+		final CompletableFuture<Entry> running = pending.putIfAbsent(key, future);
+		if(running!=null) {
+			entry = await(running);
+			if(entry.truncated) {
+				// The other evaluation might have been cancelled by its owner
+				return load(loader);
+			}
+			return entry.toResult();
+		}
+		
+		try {
+			// Another evaluation might have finished between our lookup and claiming the key
+			entry = lookup(key);
+			if(entry==null) {
+				entry = new Entry(loader.call());
+				store(key, entry);
+			}
+			future.complete(entry);
+			return entry.toResult();
+		} catch(QueryException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} catch(Exception e) {
+			QueryException ex = new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, e);
+			future.completeExceptionally(ex);
+			throw ex;
+		} catch(Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			pending.remove(key, future);
+		}
+	}
+	
+	/**
+	 * Returns the cached result for {@code key} or {@code null} if there is
+	 * none. Never triggers an evaluation or waits for one in progress.
+	 */
+	@Nullable
+	public QueryResult peek(Key key) {
+		requireNonNull(key);
+		final Entry entry = lookup(key);
+		return entry==null ? null : entry.toResult();
+	}
+	
+	private static QueryResult load(Callable<QueryResult> loader) throws QueryException {
+		try {
+			return loader.call();
+		} catch(QueryException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, e);
+		}
+	}
+	
+	private Entry await(CompletableFuture<Entry> future) throws QueryException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof QueryException)
+				throw (QueryException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryException("Query interrupted", QueryErrorCode.INTERNAL_ERROR, e);
+		}
+	}
+	
+	private Entry lookup(Key key) {
+		synchronized (lock) {
+			return entries.get(key);
+		}
+	}
+	
+	private void store(Key key, Entry entry) {
+		// Partial results depend on timing and server load
+		if(entry.truncated) {
+			return;
+		}
+		
+		final long hits = entry.hits.cardinality();
+		// Never let a single huge result flush the entire cache
+		if(hits>maxHits) {
+			log.fine(String.format("Result too large to be cached: hits=%d key=%s", 
+					Long.valueOf(hits), key));
+			return;
+		}
+		
+		synchronized (lock) {
+			final Entry previous = entries.put(key, entry);
+			if(previous!=null) {
+				totalHits -= previous.hits.cardinality();
+			}
+			totalHits += hits;
+			
+			for(Iterator<Entry> it = entries.values().iterator(); 
+					it.hasNext() && (entries.size()>maxEntries || totalHits>maxHits);) {
+				totalHits -= it.next().hits.cardinality();
+				it.remove();
+			}
+		}
+	}
+	
+	/** Discards all cached results. Evaluations in progress are not affected. */
+	public void clear() {
+		synchronized (lock) {
+			entries.clear();
+			totalHits = 0;
+		}
+	}
+	
+	public int size() {
+		synchronized (lock) {
+			return entries.size();
+		}
+	}
+	
+	public long getTotalHits() {
+		synchronized (lock) {
+			return totalHits;
+		}
+	}
+	
+	private static class Entry {
+		private final HitBitmap hits;
+		private final long segments;
+		private final boolean truncated;
+		
+		Entry(QueryResult result) {
+			requireNonNull(result);
+			hits = result.getResult().getBitmap();
+			segments = result.getSegments();
+			truncated = result.isTruncated();
+		}
+		
+		QueryResult toResult() {
+			Result result = new Result();
+			result.setBitmap(hits);
+			result.setTruncated(truncated);
+			return new QueryResult(result, segments);
+		}
+	}
+	
+	/**
+	 * Identifies the evaluation of a normalized query with fixed settings on 
+	 * a specific version of a resource. Since files on the dataverse side are 
+	 * immutable, the remote file id together with the size of the local copy 
+	 * reliably detects changed content.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static final class Key {
+		private final String query;
+		private final String settings;
+		private final Long resource;
+		private final Long file;
+		private final Long copy;
+		private final long size;
+		private final int hash;
+		
+		public Key(String query, String settings, Long resource, Long file, Long copy, long size) {
+			this.query = requireNonNull(query);
+			this.settings = requireNonNull(settings);
+			this.resource = resource;
+			this.file = file;
+			this.copy = copy;
+			this.size = size;
+			hash = Objects.hash(query, settings, resource, file, copy, Long.valueOf(size));
+		}
+		
+		public static Key of(String normalizedQuery, Properties settings, XmpResource resource, XmpLocalCopy copy) {
+			requireNonNull(settings);
+			requireNonNull(resource);
+			requireNonNull(copy);
+			// Sorted for a stable representation
+			final Map<String, String> sorted = new TreeMap<>();
+			settings.forEach((k, v) -> sorted.put(String.valueOf(k), String.valueOf(v)));
+			return new Key(normalizedQuery, sorted.toString(), resource.getId(), resource.getFile(), 
+					copy.getId(), copy.getSize());
+		}
+		
+		@Override
+		public int hashCode() { return hash; }
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(obj==this) {
+				return true;
+			} else if(obj instanceof Key) {
+				Key other = (Key) obj;
+				return hash==other.hash
+						&& size==other.size
+						&& query.equals(other.query)
+						&& settings.equals(other.settings)
+						&& Objects.equals(resource, other.resource)
+						&& Objects.equals(file, other.file)
+						&& Objects.equals(copy, other.copy);
+			}
+			return false;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s@[query=%s, settings=%s, resource=%s, file=%s, copy=%s, size=%d]", 
+					getClass().getSimpleName(), query, settings, resource, file, copy, Long.valueOf(size));
+		}
+	}
+}
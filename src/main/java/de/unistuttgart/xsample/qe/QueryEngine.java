@@ -19,31 +19,36 @@
  */
 package de.unistuttgart.xsample.qe;
 
-import static de.unistuttgart.xsample.util.XSampleUtils.decrypt;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.Serializable;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
+import javax.annotation.Nullable;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.faces.view.ViewScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import de.unistuttgart.xsample.XsampleServices;
+import de.unistuttgart.xsample.XsampleServices.Key;
 import de.unistuttgart.xsample.ct.UnsupportedContentTypeException;
 import de.unistuttgart.xsample.dv.XmpLocalCopy;
 import de.unistuttgart.xsample.dv.XmpResource;
@@ -56,10 +61,12 @@ import de.unistuttgart.xsample.pages.shared.CorpusData;
 import de.unistuttgart.xsample.pages.shared.SharedData;
 import de.unistuttgart.xsample.qe.MappingException.MappingErrorCode;
 import de.unistuttgart.xsample.qe.QueryException.QueryErrorCode;
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.Icarus1Wrapper;
+import de.unistuttgart.xsample.qe.icarus1.Icarus1Wrapper.SearchMonitor;
+import de.unistuttgart.xsample.qe.icarus1.match.Search;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
 import de.unistuttgart.xsample.util.XSampleUtils;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
@@ -84,49 +91,314 @@ public class QueryEngine implements Serializable {
 	@Inject
 	CorpusData corpusData;
 	
+	@Inject
+	QueryCache queryCache;
+	
+	/** 
+	 * Container-managed and therefore bounded pool for evaluating parts concurrently. 
+	 * Not restored after passivation, in which case parts are evaluated sequentially. 
+	 */
+	@Resource
+	transient ManagedExecutorService executor;
+	
+	/** Maximum time to wait for exclusive access to a single part */
+	private static final long LOCK_TIMEOUT_MILLIS = 50;
+	
+	/** Evaluates the given query on all parts of the current manifest and blocks until finished. */
 	public List<QueryResult> query(String query) throws QueryException {
-		Icarus1Wrapper wrapper = new Icarus1Wrapper();
-		wrapper.init(query, new Properties()); //TODO forward search settings
+		return execute(plan(query));
+	}
+	
+	/**
+	 * Parses the query and prepares its evaluation for all parts of the current 
+	 * manifest. Must be called on the request thread, while the returned plan
+	 * only holds plain data and can be executed from anywhere.
+	 */
+	public QueryPlan plan(String query) throws QueryException {
+		return plan(query, null, Collections.emptyMap());
+	}
+	
+	/**
+	 * Same as {@link #plan(String)}, but additionally tries to reuse the raw
+	 * results of the previous query. If the new query is a 
+	 * {@link Icarus1Wrapper#refines(Icarus1Wrapper) specialization} of the 
+	 * previous one, the complete hits of the previous query for each part
+	 * serve as candidates and the search only visits those sentences.
+	 * Truncated results are never reused. Restricted evaluations still use
+	 * cached results of the full query, but are never stored in the cache
+	 * themselves.
+	 * 
+	 * @param previousQuery the query that produced {@code previousResults}
+	 * @param previousResults raw results of the previous query, mapped by corpus id
+	 */
+	public QueryPlan plan(String query, @Nullable String previousQuery, 
+			Map<String, Result> previousResults) throws QueryException {
+		requireNonNull(previousResults);
+		
+		Properties settings = new Properties();
+		settings.put(SearchParameters.SEARCH_PARALLEL, Boolean.valueOf(services.getBooleanSetting(Key.QueryParallel)));
+		settings.put(SearchParameters.OPTIMIZE_SEARCH, Boolean.valueOf(services.getBooleanSetting(Key.QueryOptimization)));
+		settings.put(SearchParameters.SEARCH_TIMEOUT, Long.valueOf(services.getLongSetting(Key.QueryTimeout)));
+		settings.put(SearchParameters.SEARCH_RESULT_LIMIT, Integer.valueOf(services.getIntSetting(Key.QueryResultLimit)));
+		settings.put(SearchParameters.SEARCH_PROFILE, Boolean.valueOf(services.getBooleanSetting(Key.QueryProfiling)));
 		
-		List<QueryResult> results = new ObjectArrayList<>();
+		Icarus1Wrapper wrapper = new Icarus1Wrapper();
+		wrapper.init(query, settings);
+		final String normalizedQuery = wrapper.getNormalizedQuery();
+		final boolean refines = previousQuery!=null && !previousResults.isEmpty() 
+				&& refines(wrapper, previousQuery, settings);
 		
+		/* 
+		 * All interaction with CDI beans and the database happens here on the 
+		 * request thread. The part queries themselves only get plain data.
+		 */
+		final List<PartQuery> parts = new ObjectArrayList<>();
 		for(Corpus corpus : excerptData.getManifest().getAllParts()) {
 			final ManifestFile manifest = excerptData.findManifest(corpus);
 			final XmpResource resource = services.findResource(excerptData.getServer(), manifest.getId());
 			final XmpLocalCopy copy = cache.getCopy(resource);
 			
+			final Result previous = refines ? previousResults.get(corpus.getId()) : null;
+			final HitBitmap candidates = previous==null || previous.isTruncated() ? null : previous.getBitmap();
+			
+			parts.add(new PartQuery(wrapper, queryCache, QueryCache.Key.of(normalizedQuery, settings, resource, copy),
+					corpus.getId(), manifest.getLabel(), copy, cache.getDataFile(copy), cache.getIndexFile(copy), candidates));
+		}
+		
+		return new QueryPlan(wrapper, parts);
+	}
+	
+	/** Checks whether {@code wrapper} holds a specialization of {@code previousQuery}. */
+	private static boolean refines(Icarus1Wrapper wrapper, String previousQuery, Properties settings) {
+		final Icarus1Wrapper previous = new Icarus1Wrapper();
+		try {
+			previous.init(previousQuery, settings);
+		} catch (QueryException e) {
+			// Previous query is only an optimization hint, so we just ignore it
+			return false;
+		}
+		return wrapper.refines(previous);
+	}
+	
+	/** Evaluates all parts of the given plan and blocks until finished. */
+	public List<QueryResult> execute(QueryPlan plan) throws QueryException {
+		requireNonNull(plan);
+		final RunningSearches searches = new RunningSearches();
+		plan.setMonitor(searches);
+		return execute(executor, plan.parts, searches);
+	}
+	
+	/**
+	 * Evaluates the given parts, concurrently if an {@code executor} is available,
+	 * and returns their results in the original order. The first failure aborts 
+	 * the entire query: pending parts are not started anymore and all searches
+	 * registered with {@code searches} get cancelled.
+	 */
+	static List<QueryResult> execute(@Nullable ExecutorService executor, 
+			List<? extends Callable<QueryResult>> parts, RunningSearches searches) throws QueryException {
+		final List<QueryResult> results = new ObjectArrayList<>();
+		
+		// Sequential fallback if we have nothing to gain or lost the executor during passivation
+		if(executor==null || parts.size()<2) {
+			for(Callable<QueryResult> part : parts) {
+				results.add(call(part));
+			}
+			return results;
+		}
+		
+		final List<Future<QueryResult>> futures = new ObjectArrayList<>(parts.size());
+		boolean completed = false;
+		try {
+			for(Callable<QueryResult> part : parts) {
+				futures.add(executor.submit(part));
+			}
+			// Collect in manifest order, first failure aborts the entire query
+			for(Future<QueryResult> future : futures) {
+				results.add(future.get());
+			}
+			completed = true;
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof QueryException)
+				throw (QueryException) cause;
+			throw new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryException("Query interrupted", QueryErrorCode.INTERNAL_ERROR, e);
+		} finally {
+			if(!completed) {
+				// Searches stop cooperatively, so there is no point in interrupting worker threads
+				for(Future<QueryResult> future : futures) {
+					future.cancel(false);
+				}
+				searches.abort();
+			}
+		}
+		
+		return results;
+	}
+	
+	private static QueryResult call(Callable<QueryResult> part) throws QueryException {
+		try {
+			return part.call();
+		} catch(QueryException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, e);
+		}
+	}
+	
+	/**
+	 * Keeps track of the searches of a synchronous {@link QueryEngine#execute(QueryPlan) execution},
+	 * so that the ones still running can be cancelled after another part failed.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	static final class RunningSearches implements SearchMonitor {
+		
+		private final Set<Search> searches = ConcurrentHashMap.newKeySet();
+		private volatile boolean aborted = false;
+		
+		/** Cancels all running searches and every search that starts afterwards */
+		void abort() {
+			aborted = true;
+			searches.forEach(RunningSearches::cancel);
+		}
+		
+		private static void cancel(Search search) {
 			try {
-				copy.getLock().tryLock(50, TimeUnit.MILLISECONDS);
-			} catch (InterruptedException e) {
-				throw new QueryException("Failed to acquire lock for annotations file", QueryErrorCode.RESOURCE_LOCKED, manifest.getLabel(), e);
+				search.cancel();
+			} catch(IllegalStateException e) {
+				// Search got cancelled already
 			}
-			try {		
-				final Path file = cache.getDataFile(copy);
-				Cipher cipher = decrypt(XSampleUtils.deserializeKey(copy.getKey()));
-				final Charset encoding = Charset.forName(copy.getEncoding());
+		}
+
+		@Override
+		public void searchStarted(Search search) {
+			searches.add(search);
+			// Might have missed the abort
+			if(aborted) {
+				cancel(search);
+			}
+		}
+
+		@Override
+		public void searchFinished(Search search) {
+			searches.remove(search);
+		}
+	}
+	
+	/**
+	 * Prepared evaluation of a single query on all parts of a manifest.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static final class QueryPlan {
+		
+		private final Icarus1Wrapper wrapper;
+		private final List<PartQuery> parts;
+		
+		private QueryPlan(Icarus1Wrapper wrapper, List<PartQuery> parts) {
+			this.wrapper = requireNonNull(wrapper);
+			this.parts = requireNonNull(parts);
+		}
+		
+		public int getPartCount() {
+			return parts.size();
+		}
+		
+		/** Parts in manifest order, each evaluating the query on a single corpus. */
+		List<Callable<QueryResult>> getParts() {
+			return Collections.unmodifiableList(parts);
+		}
+		
+		/** Registers a listener for all searches executed as part of this plan. */
+		void setMonitor(SearchMonitor monitor) {
+			wrapper.setMonitor(monitor);
+		}
+	}
+	
+	/**
+	 * Evaluation of a query on a single part of the manifest. Only holds 
+	 * plain data and the {@link XmpLocalCopy copy} itself for locking, so
+	 * that it can safely be executed on a worker thread. Results are shared
+	 * with identical queries of other users via the {@link QueryCache}.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	private static class PartQuery implements Callable<QueryResult> {
+		
+		private final Icarus1Wrapper wrapper;
+		private final QueryCache queryCache;
+		private final QueryCache.Key key;
+		private final String corpusId;
+		private final String label;
+		private final XmpLocalCopy copy;
+		private final Path dataFile, indexFile;
+		/** Hits of a more general query, {@code null} if the entire part needs to be searched */
+		private final HitBitmap candidates;
+		
+		PartQuery(Icarus1Wrapper wrapper, QueryCache queryCache, QueryCache.Key key, 
+				String corpusId, String label, XmpLocalCopy copy, Path dataFile, Path indexFile, 
+				@Nullable HitBitmap candidates) {
+			this.wrapper = requireNonNull(wrapper);
+			this.queryCache = requireNonNull(queryCache);
+			this.key = requireNonNull(key);
+			this.corpusId = requireNonNull(corpusId);
+			this.label = label;
+			this.copy = requireNonNull(copy);
+			this.dataFile = requireNonNull(dataFile);
+			this.indexFile = requireNonNull(indexFile);
+			this.candidates = candidates;
+		}
 
-				try(InputStream raw = Files.newInputStream(file, StandardOpenOption.READ);
-						InputStream in = new CipherInputStream(raw, cipher);
-						Reader reader = new InputStreamReader(in, encoding);) {
-					
-					QueryResult resultPart = wrapper.evaluate(reader);
-					resultPart.getResult().setCorpusId(corpus.getId());
-					results.add(resultPart);
+		@Override
+		public QueryResult call() throws QueryException {
+			try {
+				QueryResult resultPart;
+				if(candidates==null) {
+					resultPart = queryCache.get(key, this::evaluate);
+				} else {
+					// Only exact if the query can't match outside the candidates, so keep it out of the shared cache
+					resultPart = queryCache.peek(key);
+					if(resultPart==null) {
+						resultPart = evaluate();
+					}
 				}
+				resultPart.getResult().setCorpusId(corpusId);
+				return resultPart;
 			} catch(QueryException e) {
 				// Decorate exception with contextual info and rethrow
-				e.setCorpusId(corpus.getId());
+				e.setCorpusId(corpusId);
 				throw e;
+			}
+		}
+		
+		private QueryResult evaluate() throws QueryException {
+			final Lock lock = copy.getLock();
+			try {
+				if(!lock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+					throw new QueryException("Annotations file is locked", QueryErrorCode.RESOURCE_LOCKED, label);
+			} catch (InterruptedException e) {
+				throw new QueryException("Failed to acquire lock for annotations file", QueryErrorCode.RESOURCE_LOCKED, label, e);
+			}
+			try {		
+				final ColumnarCorpus data = Icarus1Wrapper.loadCorpus(dataFile, indexFile, 
+						XSampleUtils.deserializeKey(copy.getKey()), 
+						Charset.forName(copy.getEncoding()), copy.getSize());
+				
+				return wrapper.evaluate(data, candidates);
 			} catch (IOException e) {
-				throw new QueryException("Unable to read annotations file", QueryErrorCode.IO_ERROR, manifest.getLabel(), e);
+				throw new QueryException("Unable to read annotations file", QueryErrorCode.IO_ERROR, label, e);
 			} catch (GeneralSecurityException e) {
-				throw new QueryException("Unable to decrypt annotations file", QueryErrorCode.SECURITY_ERROR, manifest.getLabel(), e);
+				throw new QueryException("Unable to decrypt annotations file", QueryErrorCode.SECURITY_ERROR, label, e);
 			} finally {
-				copy.getLock().unlock();
+				lock.unlock();
 			}
 		}
-		
-		return results;
 	}
 	
 	/** Maps 0-based hits in the annotation space into 1-based segments of the primary data.
@@ -187,13 +459,14 @@ public class QueryEngine implements Serializable {
 	 * @param targetLimit 1-based maximum for output indices
 	 */
 	private void map(Result source, Mapping mapping, Result target, long targetLimit) {
-		LongList buffer = new LongArrayList();
+		HitBitmap.Builder buffer = new HitBitmap.Builder();
 		
 		/* We only need to onsider mapped segments that are "new" to the
 		 * result, since we're bound to have a lot of overlap.
 		 */
 		long max = -1;
-		for(long sourceIndex : source.getHits()) {
+		for(PrimitiveIterator.OfLong it = source.getBitmap().iterator(); it.hasNext();) {
+			long sourceIndex = it.nextLong();
 			long targetBegin = mapping.getTargetBegin(sourceIndex)+1;
 			long targetEnd = mapping.getTargetEnd(sourceIndex)+1;
 			
@@ -213,18 +486,17 @@ public class QueryEngine implements Serializable {
 			}
 		}
 		
-		if(!buffer.isEmpty()) {
-			target.setHits(buffer.toLongArray());
-		}
+		target.setBitmap(buffer.build());
 	}
 	
-	private boolean feed(LongList buffer, long from, long to, long limit) {
-		for (long index = from; index <= to; index++) {
-			if(index>limit) {
-				return false;
-			}
-			buffer.add(index);
+	/** Adds the span as a whole, so that the bitmap can store it as a single run */
+	private boolean feed(HitBitmap.Builder buffer, long from, long to, long limit) {
+		if(from>to) {
+			return true;
+		}
+		if(from<=limit) {
+			buffer.addRange(from, Math.min(to, limit));
 		}
-		return true;
+		return to<=limit;
 	}
 }
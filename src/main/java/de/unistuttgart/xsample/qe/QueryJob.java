@@ -0,0 +1,229 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+import de.unistuttgart.xsample.qe.QueryException.QueryErrorCode;
+import de.unistuttgart.xsample.qe.icarus1.Icarus1Wrapper.SearchMonitor;
+import de.unistuttgart.xsample.qe.icarus1.match.Search;
+
+/**
+ * Asynchronous evaluation of a single query on all parts of a manifest.
+ * Parts are evaluated independently and report back to the job, which
+ * in turn tracks the overall progress based on the finished parts and 
+ * the progress of all currently running searches. The first failing part
+ * aborts the entire job.
+ * 
+ * @author Markus Gärtner
+ *
+ */
+public class QueryJob implements SearchMonitor {
+	
+	public enum State {
+		RUNNING,
+		DONE,
+		FAILED,
+		CANCELLED,
+		;
+	}
+	
+	private final String id;
+	private final Instant created;
+	
+	private final Object lock = new Object();
+	
+	/** Results in manifest order, guarded by {@link #lock} */
+	private final QueryResult[] results;
+	/** Number of finished parts, guarded by {@link #lock} */
+	private int completedParts = 0;
+	
+	private volatile State state = State.RUNNING;
+	private volatile QueryException error;
+	private volatile Instant finished;
+	
+	private final Set<Search> searches = ConcurrentHashMap.newKeySet();
+	private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+
+	QueryJob(String id, int partCount) {
+		this.id = requireNonNull(id);
+		if(partCount<0)
+			throw new IllegalArgumentException("Negative part count: "+partCount);
+		results = new QueryResult[partCount];
+		created = Instant.now();
+		if(partCount==0) {
+			finish(State.DONE);
+		}
+	}
+	
+	public String getId() { return id; }
+	
+	public Instant getCreated() { return created; }
+	
+	/** Returns the time this job finished or {@code null} if it is still running. */
+	public Instant getFinished() { return finished; }
+	
+	public State getState() { return state; }
+	
+	public boolean isFinished() { return state!=State.RUNNING; }
+	
+	public int getPartCount() { return results.length; }
+	
+	/** Returns the failure that aborted this job or {@code null}. */
+	public QueryException getError() { return error; }
+	
+	/**
+	 * Returns the results of all parts in manifest order. 
+	 * 
+	 * @throws IllegalStateException if this job did not finish successfully
+	 */
+	public List<QueryResult> getResults() {
+		if(state!=State.DONE)
+			throw new IllegalStateException("Job not done: "+state);
+		synchronized (lock) {
+			return Collections.unmodifiableList(Arrays.asList(results.clone()));
+		}
+	}
+	
+	/** Returns the estimated overall progress in the range 0 to 100. */
+	public int getProgress() {
+		if(state==State.DONE) {
+			return 100;
+		}
+		final int partCount = results.length;
+		long progress;
+		synchronized (lock) {
+			progress = completedParts * 100L;
+		}
+		for(Search search : searches) {
+			progress += search.getProgress();
+		}
+		return (int) Math.min(100, progress / partCount);
+	}
+	
+	void addFuture(Future<?> future) {
+		futures.add(future);
+		if(isFinished()) {
+			future.cancel(false);
+		}
+	}
+	
+	/** Evaluates the part at the given index and reports the outcome to this job. */
+	void run(int index, Callable<QueryResult> part) {
+		if(isFinished()) {
+			return;
+		}
+		final QueryResult result;
+		try {
+			result = part.call();
+		} catch(QueryException e) {
+			fail(e);
+			return;
+		} catch(Exception e) {
+			fail(new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, e));
+			return;
+		}
+		synchronized (lock) {
+			if(isFinished()) {
+				return;
+			}
+			results[index] = requireNonNull(result);
+			completedParts++;
+			if(completedParts==results.length) {
+				finish(State.DONE);
+			}
+		}
+	}
+	
+	private void fail(QueryException e) {
+		synchronized (lock) {
+			if(isFinished()) {
+				return;
+			}
+			error = e;
+			finish(State.FAILED);
+		}
+		stop();
+	}
+	
+	/** 
+	 * Cancels all running searches of this job and prevents pending parts from starting. 
+	 * Returns {@code false} if the job had already finished. 
+	 */
+	public boolean cancel() {
+		synchronized (lock) {
+			if(isFinished()) {
+				return false;
+			}
+			finish(State.CANCELLED);
+		}
+		stop();
+		return true;
+	}
+	
+	private void finish(State state) {
+		finished = Instant.now();
+		this.state = state;
+	}
+	
+	/** Searches stop cooperatively, so we never interrupt worker threads */
+	private void stop() {
+		searches.forEach(QueryJob::cancel);
+		futures.forEach(future -> future.cancel(false));
+	}
+	
+	private static void cancel(Search search) {
+		try {
+			search.cancel();
+		} catch(IllegalStateException e) {
+			// Search got cancelled already
+		}
+	}
+
+	@Override
+	public void searchStarted(Search search) {
+		searches.add(search);
+		// Might have missed the cancellation of the job
+		if(isFinished()) {
+			cancel(search);
+		}
+	}
+
+	@Override
+	public void searchFinished(Search search) {
+		searches.remove(search);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s@[id=%s, state=%s, parts=%d]", getClass().getSimpleName(), 
+				id, state, Integer.valueOf(results.length));
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+
+import de.unistuttgart.xsample.qe.QueryEngine.QueryPlan;
+
+/**
+ * Application-wide registry of {@link QueryJob asynchronous query jobs}.
+ * Jobs are identified by random ids, so that pages only need to keep track
+ * of a plain string between requests. Finished jobs that never get claimed
+ * and jobs that keep running for too long are discarded after 
+ * {@link #JOB_RETENTION}.
+ * 
+ * @author Markus Gärtner
+ *
+ */
+@ApplicationScoped
+public class QueryJobService {
+
+	private static final Logger log = Logger.getLogger(QueryJobService.class.getCanonicalName());
+	
+	/** Maximum time a job is kept around, measured from its creation */
+	public static final Duration JOB_RETENTION = Duration.ofMinutes(10);
+	
+	/** Container-managed pool for evaluating parts. If missing, parts are evaluated on the calling thread. */
+	@Resource
+	ManagedExecutorService executor;
+	
+	private final ConcurrentMap<String, QueryJob> jobs = new ConcurrentHashMap<>();
+	
+	/** Starts evaluating the given plan and returns the job to track it. */
+	public QueryJob submit(QueryPlan plan) {
+		requireNonNull(plan);
+		purge(Instant.now().minus(JOB_RETENTION));
+		
+		final QueryJob job = new QueryJob(UUID.randomUUID().toString(), plan.getPartCount());
+		plan.setMonitor(job);
+		jobs.put(job.getId(), job);
+		
+		final List<Callable<QueryResult>> parts = plan.getParts();
+		final ExecutorService executor = this.executor;
+		for (int i = 0; i < parts.size(); i++) {
+			final int index = i;
+			final Callable<QueryResult> part = parts.get(i);
+			if(executor==null) {
+				job.run(index, part);
+			} else {
+				job.addFuture(executor.submit(() -> job.run(index, part)));
+			}
+		}
+		
+		return job;
+	}
+	
+	/** Returns the job for the given id or {@code null} if it is unknown or expired. */
+	@Nullable
+	public QueryJob find(@Nullable String id) {
+		return id==null ? null : jobs.get(id);
+	}
+	
+	/** 
+	 * Removes and returns the job for the given id if it has finished. 
+	 * Returns {@code null} if the job is unknown, expired or still running. 
+	 */
+	@Nullable
+	public QueryJob claim(@Nullable String id) {
+		final QueryJob job = find(id);
+		if(job==null || !job.isFinished()) {
+			return null;
+		}
+		return jobs.remove(id, job) ? job : null;
+	}
+	
+	/** Cancels and removes the job for the given id. Returns {@code false} if the job is unknown. */
+	public boolean cancel(@Nullable String id) {
+		final QueryJob job = id==null ? null : jobs.remove(id);
+		if(job==null) {
+			return false;
+		}
+		job.cancel();
+		return true;
+	}
+	
+	int size() {
+		return jobs.size();
+	}
+	
+	/** Cancels and removes all jobs created before the given point in time. */
+	void purge(Instant threshold) {
+		for(Iterator<QueryJob> it = jobs.values().iterator(); it.hasNext();) {
+			final QueryJob job = it.next();
+			if(job.getCreated().isBefore(threshold)) {
+				it.remove();
+				if(job.cancel()) {
+					log.warning("Cancelled abandoned query job: "+job);
+				}
+			}
+		}
+	}
+}
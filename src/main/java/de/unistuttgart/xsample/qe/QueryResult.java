@@ -46,5 +46,7 @@ public class QueryResult {
 	}
 	
 	public boolean isEmpty() { return result.isEmpty(); }
+	/** Returns whether the search for this result stopped early due to a limit or deadline */
+	public boolean isTruncated() { return result.isTruncated(); }
 	public String getCorpusId() { return result.getCorpusId(); }
 }
@@ -19,31 +19,36 @@
  */
 package de.unistuttgart.xsample.qe;
 
+import static de.unistuttgart.xsample.util.XSampleUtils.strictToInt;
 import static java.util.Objects.requireNonNull;
 
 import java.io.Serializable;
-import java.util.Arrays;
 
 /**
  * Contains 0-based hits in ascending order for the designated target corpus.
  * <br>
  * Note that indices refer to basic segments in the corpus and need additional
  * mapping to primary data segments before excerpt generation.
+ * <p>
+ * Hits are kept in a compressed {@link HitBitmap}, so that large results
+ * stay small in view state and caches. {@link #getHits()} materializes
+ * them as a plain array on every call.
  * 
  * @author Markus Gärtner
  *
  */
 public class Result implements Serializable {
 
-	private static final long serialVersionUID = -48675199041173516L;
-	
-	private static final long[] EMPTY = {};
+	private static final long serialVersionUID = 2950183711403647281L;
 
 	/** Identifier for the corpus as specified in the manifest. */
 	private String corpusId;
 
 	/** The raw (sub)segments returned by the query engine, 0-based. */
-	private long[] hits = EMPTY;
+	private HitBitmap hits = HitBitmap.EMPTY;
+	
+	/** Signals that the search stopped early and {@link #hits} might be incomplete. */
+	private boolean truncated = false;
 
 	public String getCorpusId() {
 		return corpusId;
@@ -54,24 +59,45 @@ public class Result implements Serializable {
 	}
 
 	public long[] getHits() {
-		return hits;
+		return hits.toArray();
 	}
 
+	/** Replaces the hits with the given strictly ascending values */
 	public void setHits(long[] hits) {
+		this.hits = HitBitmap.of(hits);
+	}
+	
+	public HitBitmap getBitmap() {
+		return hits;
+	}
+	
+	public void setBitmap(HitBitmap hits) {
 		this.hits = requireNonNull(hits);
 	}
 	
-	public int getSize() { return hits.length; }
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+	public int getSize() { return strictToInt(hits.cardinality()); }
 	
-	public boolean isEmpty() { return hits.length==0; }
+	public boolean isEmpty() { return hits.isEmpty(); }
 	
-	public void clear() { setHits(EMPTY); }
+	public void clear() { 
+		setBitmap(HitBitmap.EMPTY); 
+		setTruncated(false);
+	}
 	
 	/**
 	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		return String.format("%s@[corpusId=%s, hits=%s]", getClass().getSimpleName(), corpusId, Arrays.toString(hits));
+		return String.format("%s@[corpusId=%s, hits=%s, truncated=%b]", getClass().getSimpleName(), 
+				corpusId, hits, Boolean.valueOf(truncated));
 	}
 }
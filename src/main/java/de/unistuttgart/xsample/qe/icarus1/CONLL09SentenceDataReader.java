@@ -18,6 +18,7 @@ package de.unistuttgart.xsample.qe.icarus1;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Set;
 
 
 /**
@@ -27,10 +28,22 @@ import java.io.Reader;
  */
 public class CONLL09SentenceDataReader implements SentenceDataReader {
 	
+	/**
+	 * Option holding the {@code Set<String>} of annotation keys to be read.
+	 * All other columns are skipped. If absent, all annotations are read.
+	 */
+	public static final String ANNOTATIONS_OPTION = "annotations"; //$NON-NLS-1$
+	
 	private final boolean gold;
 
 	protected CharTableBuffer buffer;
 	protected int count;
+	
+	/** Shared across sentences, so that recurring values only get materialized once */
+	protected StringPool pool;
+	
+	/** Annotations to materialize, {@code null} for all of them */
+	protected Set<String> annotations;
 
 	public CONLL09SentenceDataReader(boolean gold) {
 		this.gold = gold;
@@ -48,8 +61,13 @@ public class CONLL09SentenceDataReader implements SentenceDataReader {
 		}
 
 		count = 0;
+		
+		@SuppressWarnings("unchecked")
+		Set<String> annotations = (Set<String>) options.get(ANNOTATIONS_OPTION);
+		this.annotations = annotations;
 
 		buffer = new CharTableBuffer();
+		pool = new StringPool();
 
 		buffer.startReading(reader);
 	}
@@ -65,9 +83,9 @@ public class CONLL09SentenceDataReader implements SentenceDataReader {
 		if (buffer.next()) {
 			try {
 				if(gold) {
-					resultdd = CONLLUtils.readGold09(buffer, count++);
+					resultdd = CONLLUtils.readGold09(buffer, count++, pool, annotations);
 				} else {
-					resultdd = CONLLUtils.readPredicted09(buffer, count++);
+					resultdd = CONLLUtils.readPredicted09(buffer, count++, pool, annotations);
 				}
 			} catch(Exception e) {
 				// Cannot be IOException or UnsupportedFormatException
@@ -86,6 +104,7 @@ public class CONLL09SentenceDataReader implements SentenceDataReader {
 	public void close() {
 		try {
 			buffer.close();
+			pool = null;
 		} catch (IOException e) {
 			throw new InternalError(e);
 		}
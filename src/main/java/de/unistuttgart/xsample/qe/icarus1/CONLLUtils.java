@@ -16,8 +16,10 @@
  */
 package de.unistuttgart.xsample.qe.icarus1;
 
-import static de.unistuttgart.xsample.util.XSampleUtils._int;
-import static de.unistuttgart.xsample.util.XSampleUtils._long;
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 import de.unistuttgart.xsample.qe.icarus1.CharTableBuffer.Cursor;
 import de.unistuttgart.xsample.qe.icarus1.CharTableBuffer.Row;
@@ -71,78 +73,78 @@ public class CONLLUtils {
 	private final static int COL_LIMIT06 = 8;
 
 	private static final Object US = "_"; //$NON-NLS-1$
-	private static final String DELIMITER = "\\s+"; //$NON-NLS-1$
 	private static final String EMPTY = ""; //$NON-NLS-1$
 
 	public static SentenceData readGold09(CharTableBuffer buffer, int corpusIndex) {
-		if(buffer.isEmpty())
-			throw new IllegalArgumentException("No rows to read in buffer"); //$NON-NLS-1$
-
-		int size = buffer.getRowCount();
-		
-		SentenceData data = new SentenceData();
-
-		short[] heads = new short[size];
-		String[] forms = new String[size];
-		long[] flags = new long[size];
-
-		int index = -1;
-
-		Row row;
-		boolean checkIdForIndex = true;
-
-		for(int i=0; i<size; i++) {
-
-			row = buffer.getRow(i);
-			if(row.split(DELIMITER, COL_LIMIT09)!=COL_LIMIT09)
-				throw new IllegalArgumentException("Incorrect column count in data file, " //$NON-NLS-1$
-						+ "are you sure this is the right format for CoNLL 09?"); //$NON-NLS-1$
+		return readGold09(buffer, corpusIndex, null);
+	}
 
-			forms[i] = getString(row, FORM09, "<empty>"); //$NON-NLS-1$
-			Integer head = getInt(row, HEAD06);
-			heads[i] = head.shortValue();
-			data.setProperty(i, LanguageConstants.HEAD_KEY, head);
-			data.setProperty(i, LanguageConstants.LEMMA_KEY, getString(row, LEMMA09, EMPTY));
-			data.setProperty(i, LanguageConstants.FEATURES_KEY, getString(row, FEAT09, EMPTY));
-			data.setProperty(i, LanguageConstants.POS_KEY, getString(row, POS09, EMPTY));
-			data.setProperty(i, LanguageConstants.DEPREL_KEY, getString(row, DEPREL09, EMPTY));
-			
-			if(index==-1 && checkIdForIndex) {
-				Cursor cursor = row.getSplitCursor(ID09);
-				int offset = cursor.indexOf('_');
-				if(offset>-1 && offset<cursor.length()) {
-					index = StringPrimitives.parseInt(cursor, 0, offset-1)-1;
-				} else {
-					checkIdForIndex = false;
-				}
-				cursor.recycle();
-			}
-		}
+	public static SentenceData readPredicted09(CharTableBuffer buffer, int corpusIndex) {
+		return readPredicted09(buffer, corpusIndex, null);
+	}
 
-		if(index==-1) {
-			index = corpusIndex;
-		}
+	public static SentenceData readGold09(CharTableBuffer buffer, int corpusIndex, StringPool pool) {
+		return readGold09(buffer, corpusIndex, pool, null);
+	}
 
-		fillProjectivityFlags(heads, flags);
-		data.setForms(forms);
+	public static SentenceData readPredicted09(CharTableBuffer buffer, int corpusIndex, StringPool pool) {
+		return readPredicted09(buffer, corpusIndex, pool, null);
+	}
 
-		for(int i=0; i<size; i++) {
-			data.setProperty(i, LanguageConstants.FLAGS_KEY, _long(flags[i]));
-		}
+	public static SentenceData readGold09(CharTableBuffer buffer, int corpusIndex, StringPool pool, 
+			@Nullable Set<String> keys) {
+		return read09(buffer, corpusIndex, pool, keys, LEMMA09, POS09, FEAT09, HEAD09, DEPREL09);
+	}
 
-		return data;
+	public static SentenceData readPredicted09(CharTableBuffer buffer, int corpusIndex, StringPool pool, 
+			@Nullable Set<String> keys) {
+		return read09(buffer, corpusIndex, pool, keys, PLEMMA09, PPOS09, PFEAT09, PHEAD09, PDEPREL09);
 	}
 
-	public static SentenceData readPredicted09(CharTableBuffer buffer, int corpusIndex) {
+	/**
+	 * Reads a single CoNLL09 sentence from the given buffer, using the specified 
+	 * columns for either the gold or predicted annotation layers. If a {@code pool}
+	 * is given, all column values are taken from it instead of creating new strings.
+	 * <p>
+	 * If {@code keys} is not {@code null}, only the annotations with those
+	 * {@link LanguageConstants#FORM_KEY keys} are materialized and rows are only 
+	 * split up to the last required column. All other annotations are left
+	 * empty and heads are set to {@link LanguageConstants#DATA_UNDEFINED_VALUE}.
+	 * 
+	 * @param keys the annotations to read or {@code null} to read everything
+	 */
+	private static SentenceData read09(CharTableBuffer buffer, int corpusIndex, StringPool pool, @Nullable Set<String> keys,
+			int lemmaCol, int posCol, int featCol, int headCol, int deprelCol) {
 		if(buffer.isEmpty())
 			throw new IllegalArgumentException("No rows to read in buffer"); //$NON-NLS-1$
+		
+		final boolean readForm = keys==null || keys.contains(LanguageConstants.FORM_KEY);
+		final boolean readLemma = keys==null || keys.contains(LanguageConstants.LEMMA_KEY);
+		final boolean readPos = keys==null || keys.contains(LanguageConstants.POS_KEY);
+		final boolean readFeatures = keys==null || keys.contains(LanguageConstants.FEATURES_KEY);
+		final boolean readHead = keys==null || keys.contains(LanguageConstants.HEAD_KEY);
+		final boolean readRelation = keys==null || keys.contains(LanguageConstants.DEPREL_KEY);
+		
+		int columns = COL_LIMIT09;
+		if(keys!=null) {
+			columns = ID09;
+			if(readForm) columns = Math.max(columns, FORM09);
+			if(readLemma) columns = Math.max(columns, lemmaCol);
+			if(readPos) columns = Math.max(columns, posCol);
+			if(readFeatures) columns = Math.max(columns, featCol);
+			if(readHead) columns = Math.max(columns, headCol);
+			if(readRelation) columns = Math.max(columns, deprelCol);
+			columns++;
+		}
 
 		int size = buffer.getRowCount();
-		
-		SentenceData data = new SentenceData();
 
-		short[] heads = new short[size];
 		String[] forms = new String[size];
+		String[] lemmas = new String[size];
+		String[] pos = new String[size];
+		String[] features = new String[size];
+		String[] relations = new String[size];
+		short[] heads = new short[size];
 		long[] flags = new long[size];
 
 		int index = -1;
@@ -153,18 +155,16 @@ public class CONLLUtils {
 		for(int i=0; i<size; i++) {
 
 			row = buffer.getRow(i);
-			if(row.split(DELIMITER, COL_LIMIT09)!=COL_LIMIT09)
+			if(row.splitWhitespace(columns)!=columns)
 				throw new IllegalArgumentException("Incorrect column count in data file, " //$NON-NLS-1$
 						+ "are you sure this is the right format for CoNLL 09?"); //$NON-NLS-1$
 
-			forms[i] = getString(row, FORM09, "<empty>"); //$NON-NLS-1$
-			Integer head = getInt(row, HEAD06);
-			heads[i] = head.shortValue();
-			data.setProperty(i, LanguageConstants.HEAD_KEY, head);
-			data.setProperty(i, LanguageConstants.LEMMA_KEY, getString(row, PLEMMA09, EMPTY));
-			data.setProperty(i, LanguageConstants.FEATURES_KEY, getString(row, PFEAT09, EMPTY));
-			data.setProperty(i, LanguageConstants.POS_KEY, getString(row, PPOS09, EMPTY));
-			data.setProperty(i, LanguageConstants.DEPREL_KEY, getString(row, PDEPREL09, EMPTY));
+			if(readForm) forms[i] = getString(row, FORM09, "<empty>", pool); //$NON-NLS-1$
+			if(readHead) heads[i] = (short) getInt(row, headCol);
+			if(readLemma) lemmas[i] = getString(row, lemmaCol, EMPTY, pool);
+			if(readFeatures) features[i] = getString(row, featCol, EMPTY, pool);
+			if(readPos) pos[i] = getString(row, posCol, EMPTY, pool);
+			if(readRelation) relations[i] = getString(row, deprelCol, EMPTY, pool);
 			
 			if(index==-1 && checkIdForIndex) {
 				Cursor cursor = row.getSplitCursor(ID09);
@@ -181,18 +181,20 @@ public class CONLLUtils {
 		if(index==-1) {
 			index = corpusIndex;
 		}
+		
+		if(!readForm) Arrays.fill(forms, EMPTY);
+		if(!readHead) Arrays.fill(heads, (short) LanguageConstants.DATA_UNDEFINED_VALUE);
+		if(!readLemma) Arrays.fill(lemmas, EMPTY);
+		if(!readFeatures) Arrays.fill(features, EMPTY);
+		if(!readPos) Arrays.fill(pos, EMPTY);
+		if(!readRelation) Arrays.fill(relations, EMPTY);
 
-		fillProjectivityFlags(heads, flags);
-		data.setForms(forms);
-
-		for(int i=0; i<size; i++) {
-			data.setProperty(i, LanguageConstants.FLAGS_KEY, _long(flags[i]));
-		}
+		// Projectivity is computed on demand by the TargetTree
 
-		return data;
+		return new CompactSentenceData(forms, lemmas, pos, features, relations, heads, flags);
 	}
 
-	private static Integer getInt(Row row, int index) {
+	private static int getInt(Row row, int index) {
 		Cursor cursor = row.getSplitCursor(index);
 
 		int value = LanguageConstants.DATA_UNDEFINED_VALUE;
@@ -203,14 +205,16 @@ public class CONLLUtils {
 
 		cursor.recycle();
 
-		return _int(value);
+		return value;
 	}
 
-	private static String getString(Row row, int index, String def) {
+	private static String getString(Row row, int index, String def, StringPool pool) {
 		Cursor cursor = row.getSplitCursor(index);
 		String s = EMPTY;
 		if(StringUtil.equals(cursor, US) || cursor.isEmpty()) {
 			s = def;
+		} else if(pool!=null) {
+			s = pool.get(cursor);
 		} else {
 			s = cursor.toString();
 		}
@@ -224,41 +228,4 @@ public class CONLLUtils {
 	 * Head value to mark the root node.
 	 */
 	public static final short DATA_HEAD_ROOT = -1;
-
-	/**
-	 * Algorithm by
-	 * <a href="http://ufal.mff.cuni.cz:8080/pub/files/havelka2005.pdf">Havelka 2005</a>
-	 *
-	 * Naive approach used for now instead!
-	 */
-	private static void fillProjectivityFlags(short[] heads, long[] flags) {
-		for(int i=0; i<heads.length; i++) {
-			flags[i] &= ~LanguageConstants.FLAG_PROJECTIVE;
-			if(isProjective(i, heads[i], heads)) {
-				flags[i] |= LanguageConstants.FLAG_PROJECTIVE;
-			}
-		}
-	}
-
-	private static boolean isProjective(int dep,int head,short[] heads){
-		if(head==DATA_HEAD_ROOT)
-			return true;
-		int min=dep;
-		int max;
-		if(head<dep){
-			min=head;
-			max=dep;
-		} else {
-			max=head;
-		}
-		for(int i=min+1;i<max;++i){
-			int cur=i;
-			while(cur!=dep && cur!=head){
-				if(cur==DATA_HEAD_ROOT)
-					return false;
-				cur=heads[cur];
-			}
-		}
-		return true;
-	}
 }
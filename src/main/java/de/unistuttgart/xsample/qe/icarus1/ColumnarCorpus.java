@@ -0,0 +1,495 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static de.unistuttgart.xsample.util.XSampleUtils.checkArgument;
+import static de.unistuttgart.xsample.util.XSampleUtils.strictToShort;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+
+/**
+ * Immutable column-oriented storage for an entire annotated corpus part.
+ * All token-level annotations are kept in flat arrays that span the
+ * complete corpus and individual sentences are addressed via an
+ * offset table. Individual sentences can be accessed as light-weight
+ * {@link EncodedSentenceData} views that do not copy any of the underlying data.
+ * <p>
+ * String annotations (form, lemma, part-of-speech, features and relation)
+ * are not stored directly, but as ids into a corpus-wide {@link SymbolTable}
+ * per annotation layer. Besides saving a lot of memory for the highly 
+ * repetitive annotation values this allows searches to translate their
+ * constraint values into ids once and compare tokens by id only.
+ * For the most commonly queried layers a {@link PostingsIndex} is
+ * maintained that allows searches to skip sentences which cannot 
+ * contain a match. Feature bundles are additionally split into their
+ * individual features by a {@link FeatureIndex}.
+ * <p>
+ * Instances are either created from a {@link SentenceDataReader} or loaded
+ * from a previously persisted {@link CorpusIndex}.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class ColumnarCorpus {
+	
+	/** Begin of each sentence in the token columns, with one additional entry marking the end */
+	private final int[] offsets;
+	
+	/** Sentence indices sorted by length, ties in ascending order of index. Derived from {@link #offsets}. */
+	private final int[] lengthOrder;
+	
+	/* 
+	 * Per-sentence summaries of the dependency tree shape, derived from {@link #heads}
+	 * by the Builder and persisted as part of the CorpusIndex.
+	 * Values follow the conventions of TargetTree: a leaf has height 1 and nodes
+	 * not reachable from any root have neither height nor descendants.
+	 */
+	/** Maximum height of any node per sentence */
+	private final short[] maxHeights;
+	/** Maximum number of direct children of any node per sentence */
+	private final short[] maxFanOuts;
+	/** Maximum number of descendants of any node per sentence */
+	private final short[] maxDescendants;
+	
+	private final int[] forms;
+	private final int[] lemmas;
+	private final int[] pos;
+	private final int[] features;
+	private final int[] relations;
+	private final short[] heads;
+	private final long[] flags;
+	
+	private final SymbolTable formSymbols;
+	private final SymbolTable lemmaSymbols;
+	private final SymbolTable posSymbols;
+	private final SymbolTable featureSymbols;
+	private final SymbolTable relationSymbols;
+	
+	private final PostingsIndex formPostings;
+	private final PostingsIndex lemmaPostings;
+	private final PostingsIndex posPostings;
+	private final PostingsIndex relationPostings;
+	private final PostingsIndex featurePostings;
+	
+	/** Parsed feature bundles, derived from {@link #featureSymbols} by the Builder */
+	private final FeatureIndex featureIndex;
+	
+	ColumnarCorpus(int[] offsets, int[] forms, int[] lemmas, int[] pos, 
+			int[] features, int[] relations, short[] heads, long[] flags,
+			short[] maxHeights, short[] maxFanOuts, short[] maxDescendants,
+			SymbolTable formSymbols, SymbolTable lemmaSymbols, SymbolTable posSymbols,
+			SymbolTable featureSymbols, SymbolTable relationSymbols,
+			PostingsIndex formPostings, PostingsIndex lemmaPostings, 
+			PostingsIndex posPostings, PostingsIndex relationPostings,
+			PostingsIndex featurePostings, FeatureIndex featureIndex) {
+		this.offsets = requireNonNull(offsets);
+		this.forms = requireNonNull(forms);
+		this.lemmas = requireNonNull(lemmas);
+		this.pos = requireNonNull(pos);
+		this.features = requireNonNull(features);
+		this.relations = requireNonNull(relations);
+		this.heads = requireNonNull(heads);
+		this.flags = requireNonNull(flags);
+		this.maxHeights = requireNonNull(maxHeights);
+		this.maxFanOuts = requireNonNull(maxFanOuts);
+		this.maxDescendants = requireNonNull(maxDescendants);
+		this.formSymbols = requireNonNull(formSymbols);
+		this.lemmaSymbols = requireNonNull(lemmaSymbols);
+		this.posSymbols = requireNonNull(posSymbols);
+		this.featureSymbols = requireNonNull(featureSymbols);
+		this.relationSymbols = requireNonNull(relationSymbols);
+		this.formPostings = requireNonNull(formPostings);
+		this.lemmaPostings = requireNonNull(lemmaPostings);
+		this.posPostings = requireNonNull(posPostings);
+		this.relationPostings = requireNonNull(relationPostings);
+		this.featurePostings = requireNonNull(featurePostings);
+		this.featureIndex = requireNonNull(featureIndex);
+		
+		checkArgument("Offset table must not be empty", offsets.length>0);
+		final int tokens = offsets[offsets.length-1];
+		checkArgument("Inconsistent column sizes", forms.length==tokens
+				&& lemmas.length==tokens && pos.length==tokens 
+				&& features.length==tokens && relations.length==tokens
+				&& heads.length==tokens && flags.length==tokens);
+		final int size = offsets.length-1;
+		checkArgument("Inconsistent shape summaries", maxHeights.length==size
+				&& maxFanOuts.length==size && maxDescendants.length==size);
+		checkArgument("Feature index does not match symbol table", featureIndex.size()==featureSymbols.size());
+		
+		lengthOrder = sortByLength(offsets);
+	}
+	
+	/**
+	 * Computes the tree shape summaries for all sentences. Uses a breadth-first
+	 * traversal from the roots and accumulates heights and descendant counts in
+	 * reverse order, so that no recursion or per-sentence allocation is needed.
+	 */
+	private static void summarizeShapes(int[] offsets, short[] heads, 
+			short[] maxHeights, short[] maxFanOuts, short[] maxDescendants) {
+		final int size = offsets.length-1;
+		int maxLength = 0;
+		for (int s = 0; s < size; s++) {
+			maxLength = Math.max(maxLength, offsets[s+1]-offsets[s]);
+		}
+		
+		final int[] childBegins = new int[maxLength+1];
+		final int[] fill = new int[maxLength];
+		final int[] children = new int[maxLength];
+		final int[] order = new int[maxLength];
+		final int[] heights = new int[maxLength];
+		final int[] descendants = new int[maxLength];
+		
+		for (int s = 0; s < size; s++) {
+			final int offset = offsets[s];
+			final int length = offsets[s+1]-offset;
+			
+			// Collect children lists, ignoring dangling or broken heads
+			Arrays.fill(childBegins, 0, length+1, 0);
+			for (int i = 0; i < length; i++) {
+				final int head = heads[offset+i];
+				if(head>=0 && head<length) {
+					childBegins[head+1]++;
+				}
+			}
+			int fanOut = 0;
+			for (int i = 0; i < length; i++) {
+				fanOut = Math.max(fanOut, childBegins[i+1]);
+				childBegins[i+1] += childBegins[i];
+			}
+			System.arraycopy(childBegins, 0, fill, 0, length);
+			for (int i = 0; i < length; i++) {
+				final int head = heads[offset+i];
+				if(head>=0 && head<length) {
+					children[fill[head]++] = i;
+				}
+			}
+			
+			// Nodes reachable from a root in breadth-first order
+			int count = 0;
+			for (int i = 0; i < length; i++) {
+				if(heads[offset+i]==LanguageConstants.DATA_HEAD_ROOT) {
+					order[count++] = i;
+				}
+			}
+			for (int k = 0; k < count; k++) {
+				final int node = order[k];
+				for (int c = childBegins[node]; c < childBegins[node+1]; c++) {
+					order[count++] = children[c];
+				}
+			}
+			
+			int height = 0, descendantCount = 0;
+			for (int k = count-1; k >= 0; k--) {
+				final int node = order[k];
+				int h = 0, d = 0;
+				for (int c = childBegins[node]; c < childBegins[node+1]; c++) {
+					h = Math.max(h, heights[children[c]]);
+					d += descendants[children[c]] + 1;
+				}
+				heights[node] = h+1;
+				descendants[node] = d;
+				height = Math.max(height, h+1);
+				descendantCount = Math.max(descendantCount, d);
+			}
+			
+			maxHeights[s] = strictToShort(height);
+			maxFanOuts[s] = strictToShort(fanOut);
+			maxDescendants[s] = strictToShort(descendantCount);
+		}
+	}
+	
+	/** Counting sort over the sentence lengths, which are bounded by the token count. */
+	private static int[] sortByLength(int[] offsets) {
+		final int size = offsets.length-1;
+		int maxLength = 0;
+		for (int i = 0; i < size; i++) {
+			maxLength = Math.max(maxLength, offsets[i+1]-offsets[i]);
+		}
+		
+		final int[] begins = new int[maxLength+2];
+		for (int i = 0; i < size; i++) {
+			begins[offsets[i+1]-offsets[i]+1]++;
+		}
+		for (int length = 1; length < begins.length; length++) {
+			begins[length] += begins[length-1];
+		}
+		
+		final int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[begins[offsets[i+1]-offsets[i]]++] = i;
+		}
+		return order;
+	}
+	
+	/**
+	 * Reads all the sentences available from the given {@code reader} 
+	 * and packs them into a new columnar corpus. Note that the reader
+	 * must already have been {@link SentenceDataReader#init(java.io.Reader, Options) initialized}.
+	 */
+	public static ColumnarCorpus build(SentenceDataReader reader) throws IOException, UnsupportedFormatException {
+		requireNonNull(reader);
+		Builder builder = new Builder();
+		SentenceData sentence;
+		while((sentence = reader.next()) != null) {
+			builder.add(sentence);
+		}
+		return builder.build();
+	}
+	
+	/** Number of sentences in this corpus */
+	public int size() { return offsets.length-1; }
+	
+	/** Total number of tokens in this corpus */
+	public int tokenCount() { return offsets[offsets.length-1]; }
+	
+	/** Number of tokens in the specified sentence */
+	public int length(int sentence) { return offsets[sentence+1]-offsets[sentence]; }
+	
+	/** Position of the first token of the specified sentence in the token columns */
+	public int offset(int sentence) { return offsets[sentence]; }
+	
+	/** Maximum height of any node in the dependency tree of the specified sentence, with leafs having height {@code 1} */
+	public int maxHeight(int sentence) { return maxHeights[sentence]; }
+	
+	/** Maximum number of direct children of any node in the specified sentence */
+	public int maxFanOut(int sentence) { return maxFanOuts[sentence]; }
+	
+	/** Maximum number of descendants of any node in the specified sentence */
+	public int maxDescendants(int sentence) { return maxDescendants[sentence]; }
+	
+	/** Length of the longest sentence in this corpus */
+	public int maxLength() { return lengthOrder.length==0 ? 0 : length(lengthOrder[lengthOrder.length-1]); }
+	
+	/**
+	 * Returns the ascending list of indices of all sentences whose length lies 
+	 * within the given bounds, both inclusive.
+	 */
+	public int[] sentencesWithLength(int minLength, int maxLength) {
+		final int from = firstWithLength(minLength);
+		final int to = maxLength==Integer.MAX_VALUE ? lengthOrder.length : firstWithLength(maxLength+1);
+		if(from>=to) {
+			return new int[0];
+		}
+		final int[] sentences = Arrays.copyOfRange(lengthOrder, from, to);
+		Arrays.sort(sentences);
+		return sentences;
+	}
+	
+	/** Position of the first sentence in {@link #lengthOrder} that is at least {@code length} tokens long */
+	private int firstWithLength(int length) {
+		int low = 0, high = lengthOrder.length;
+		while(low<high) {
+			final int mid = (low+high) >>> 1;
+			if(length(lengthOrder[mid])<length) {
+				low = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	public SymbolTable getFormSymbols() { return formSymbols; }
+	public SymbolTable getLemmaSymbols() { return lemmaSymbols; }
+	public SymbolTable getPosSymbols() { return posSymbols; }
+	public SymbolTable getFeatureSymbols() { return featureSymbols; }
+	public SymbolTable getRelationSymbols() { return relationSymbols; }
+	
+	/** Returns the individual features of all the bundles in {@link #getFeatureSymbols()} */
+	public FeatureIndex getFeatureIndex() { return featureIndex; }
+	
+	/**
+	 * Returns the symbol table for the annotation layer denoted by the given
+	 * key or {@code null} if that layer is not stored as symbols. Supported 
+	 * keys are {@link LanguageConstants#FORM_KEY}, {@link LanguageConstants#LEMMA_KEY},
+	 * {@link LanguageConstants#POS_KEY}, {@link LanguageConstants#FEATURES_KEY}
+	 * and {@link LanguageConstants#DEPREL_KEY}.
+	 */
+	@Nullable
+	public SymbolTable getSymbols(String key) {
+		switch (key) {
+		case LanguageConstants.FORM_KEY: return formSymbols;
+		case LanguageConstants.LEMMA_KEY: return lemmaSymbols;
+		case LanguageConstants.POS_KEY: return posSymbols;
+		case LanguageConstants.FEATURES_KEY: return featureSymbols;
+		case LanguageConstants.DEPREL_KEY: return relationSymbols;
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the inverted index for the annotation layer denoted by the given
+	 * key or {@code null} if that layer is not indexed. Supported keys are 
+	 * {@link LanguageConstants#FORM_KEY}, {@link LanguageConstants#LEMMA_KEY},
+	 * {@link LanguageConstants#POS_KEY}, {@link LanguageConstants#FEATURES_KEY}
+	 * and {@link LanguageConstants#DEPREL_KEY}.
+	 */
+	@Nullable
+	public PostingsIndex getPostings(String key) {
+		switch (key) {
+		case LanguageConstants.FORM_KEY: return formPostings;
+		case LanguageConstants.LEMMA_KEY: return lemmaPostings;
+		case LanguageConstants.POS_KEY: return posPostings;
+		case LanguageConstants.DEPREL_KEY: return relationPostings;
+		case LanguageConstants.FEATURES_KEY: return featurePostings;
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the symbol ids of the annotation layer denoted by the given key
+	 * for all tokens in the corpus or {@code null} if that layer is not stored
+	 * as symbols. The tokens of a sentence start at its {@link #offset(int) offset}.
+	 * Supports the same keys as {@link #getSymbols(String)}. The returned array
+	 * is shared and must not be modified.
+	 */
+	@Nullable
+	public int[] getColumn(String key) {
+		switch (key) {
+		case LanguageConstants.FORM_KEY: return forms;
+		case LanguageConstants.LEMMA_KEY: return lemmas;
+		case LanguageConstants.POS_KEY: return pos;
+		case LanguageConstants.FEATURES_KEY: return features;
+		case LanguageConstants.DEPREL_KEY: return relations;
+		default:
+			return null;
+		}
+	}
+	
+	int[] offsets() { return offsets; }
+	int[] forms() { return forms; }
+	int[] lemmas() { return lemmas; }
+	int[] pos() { return pos; }
+	int[] features() { return features; }
+	int[] relations() { return relations; }
+	short[] heads() { return heads; }
+	long[] flags() { return flags; }
+	short[] maxHeights() { return maxHeights; }
+	short[] maxFanOuts() { return maxFanOuts; }
+	short[] maxDescendants() { return maxDescendants; }
+	
+	/** Creates a new view on the specified sentence. */
+	public EncodedSentenceData getSentence(int index) {
+		if(index<0 || index>=size())
+			throw new IndexOutOfBoundsException("Sentence index out of bounds: "+index); //$NON-NLS-1$
+		final EncodedSentenceData sentence = new EncodedSentenceData(this, offsets[index], length(index));
+		sentence.setIndex(index);
+		return sentence;
+	}
+	
+	/** 
+	 * Returns a random access list view on all the sentences in this corpus.
+	 * Sentence objects are created lazily on access and are not cached. 
+	 */
+	public List<SentenceData> sentences() {
+		return new SentenceList();
+	}
+	
+	private class SentenceList extends AbstractList<SentenceData> implements RandomAccess {
+
+		@Override
+		public SentenceData get(int index) { return getSentence(index); }
+
+		@Override
+		public int size() { return ColumnarCorpus.this.size(); }
+	}
+	
+	/**
+	 * Incrementally collects sentences into growing columns, assigning
+	 * ids to annotation values in order of their first occurrence.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static class Builder {
+		private final IntArrayList offsets = new IntArrayList();
+		private final IntArrayList forms = new IntArrayList();
+		private final IntArrayList lemmas = new IntArrayList();
+		private final IntArrayList pos = new IntArrayList();
+		private final IntArrayList features = new IntArrayList();
+		private final IntArrayList relations = new IntArrayList();
+		private final ShortArrayList heads = new ShortArrayList();
+		private final LongArrayList flags = new LongArrayList();
+		
+		private final SymbolTable formSymbols = new SymbolTable();
+		private final SymbolTable lemmaSymbols = new SymbolTable();
+		private final SymbolTable posSymbols = new SymbolTable();
+		private final SymbolTable featureSymbols = new SymbolTable();
+		private final SymbolTable relationSymbols = new SymbolTable();
+		
+		public Builder() {
+			offsets.add(0);
+		}
+		
+		public Builder add(SentenceData sentence) {
+			requireNonNull(sentence);
+			final int length = sentence.length();
+			for (int i = 0; i < length; i++) {
+				forms.add(formSymbols.intern(sentence.getForm(i)));
+				lemmas.add(lemmaSymbols.intern(sentence.getLemma(i)));
+				pos.add(posSymbols.intern(sentence.getPos(i)));
+				features.add(featureSymbols.intern(sentence.getFeatures(i)));
+				relations.add(relationSymbols.intern(sentence.getRelation(i)));
+				heads.add(strictToShort(sentence.getHead(i)));
+				flags.add(sentence.getFlags(i));
+			}
+			offsets.add(forms.size());
+			return this;
+		}
+		
+		public ColumnarCorpus build() {
+			final int[] offsets = this.offsets.toIntArray();
+			final int[] forms = this.forms.toIntArray();
+			final int[] lemmas = this.lemmas.toIntArray();
+			final int[] pos = this.pos.toIntArray();
+			final int[] relations = this.relations.toIntArray();
+			final int[] features = this.features.toIntArray();
+			final short[] heads = this.heads.toShortArray();
+			
+			final int size = offsets.length-1;
+			final short[] maxHeights = new short[size];
+			final short[] maxFanOuts = new short[size];
+			final short[] maxDescendants = new short[size];
+			summarizeShapes(offsets, heads, maxHeights, maxFanOuts, maxDescendants);
+			
+			return new ColumnarCorpus(offsets, forms, lemmas, pos, features, 
+					relations, heads, flags.toLongArray(),
+					maxHeights, maxFanOuts, maxDescendants,
+					formSymbols, lemmaSymbols, posSymbols, featureSymbols, relationSymbols,
+					PostingsIndex.build(forms, offsets, formSymbols.size()),
+					PostingsIndex.build(lemmas, offsets, lemmaSymbols.size()),
+					PostingsIndex.build(pos, offsets, posSymbols.size()),
+					PostingsIndex.build(relations, offsets, relationSymbols.size()),
+					PostingsIndex.build(features, offsets, featureSymbols.size()),
+					FeatureIndex.build(featureSymbols));
+		}
+	}
+}
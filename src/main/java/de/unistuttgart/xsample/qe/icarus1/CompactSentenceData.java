@@ -0,0 +1,136 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static de.unistuttgart.xsample.util.XSampleUtils._int;
+import static de.unistuttgart.xsample.util.XSampleUtils._long;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+/**
+ * Sentence implementation that keeps the default CoNLL annotations in 
+ * flat per-attribute arrays instead of the generic property map of
+ * {@link SentenceData}. All the default accessors are answered by direct
+ * array lookups without any hashing or boxing.
+ * <p>
+ * Instances can either own their arrays or act as a view on a range 
+ * within arrays shared by an entire corpus (see {@link ColumnarCorpus}).
+ * Any additional properties are still stored via the inherited mechanism.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class CompactSentenceData extends SentenceData {
+
+	private static final long serialVersionUID = -3203437391926958318L;
+	
+	/** Position of the first token within the arrays */
+	private final int begin;
+	/** Number of tokens */
+	private final int length;
+	
+	private final String[] lemmas;
+	private final String[] pos;
+	private final String[] features;
+	private final String[] relations;
+	private final short[] heads;
+	private final long[] flags;
+	
+	/**
+	 * Creates a sentence that covers the entire given arrays. 
+	 */
+	public CompactSentenceData(String[] forms, String[] lemmas, String[] pos, String[] features,
+			String[] relations, short[] heads, long[] flags) {
+		this(forms, lemmas, pos, features, relations, heads, flags, 0, forms.length);
+	}
+	
+	/**
+	 * Creates a sentence that covers the range {@code [begin, begin+length)} 
+	 * of the given arrays.
+	 */
+	public CompactSentenceData(String[] forms, String[] lemmas, String[] pos, String[] features,
+			String[] relations, short[] heads, long[] flags, int begin, int length) {
+		super(forms);
+		this.lemmas = requireNonNull(lemmas);
+		this.pos = requireNonNull(pos);
+		this.features = requireNonNull(features);
+		this.relations = requireNonNull(relations);
+		this.heads = requireNonNull(heads);
+		this.flags = requireNonNull(flags);
+		
+		if(begin<0 || length<0 || begin+length>forms.length)
+			throw new IndexOutOfBoundsException("Invalid token range: "+begin+"+"+length); //$NON-NLS-1$ //$NON-NLS-2$
+		
+		this.begin = begin;
+		this.length = length;
+	}
+	
+	@Override
+	public int length() { return length; }
+	
+	@Override
+	public String getForm(int index) { return forms[begin+index]; }
+
+	@Override
+	public String getPos(int index) { return pos[begin+index]; }
+
+	@Override
+	public String getLemma(int index) { return lemmas[begin+index]; }
+
+	@Override
+	public String getFeatures(int index) { return features[begin+index]; }
+
+	@Override
+	public String getRelation(int index) { return relations[begin+index]; }
+
+	@Override
+	public int getHead(int index) { return heads[begin+index]; }
+
+	@Override
+	public long getFlags(int index) { return flags[begin+index]; }
+
+	@Override
+	public boolean isFlagSet(int index, long flag) {
+		return (flags[begin+index] & flag) == flag;
+	}
+	
+	@Override
+	public Object getProperty(int index, String key) {
+		switch (key) {
+		case LanguageConstants.FORM_KEY: return getForm(index);
+		case LanguageConstants.POS_KEY: return getPos(index);
+		case LanguageConstants.LEMMA_KEY: return getLemma(index);
+		case LanguageConstants.FEATURES_KEY: return getFeatures(index);
+		case LanguageConstants.DEPREL_KEY: return getRelation(index);
+		case LanguageConstants.HEAD_KEY: return _int(getHead(index));
+		case LanguageConstants.FLAGS_KEY: return _long(getFlags(index));
+		case LanguageConstants.SIZE_KEY:
+		case LanguageConstants.LENGTH_KEY:
+			return _int(getForm(index).length());
+
+		default:
+			return super.getProperty(index, key);
+		}
+	}
+	
+	@Override
+	public String getText() {
+		return String.join(" ", Arrays.asList(forms).subList(begin, begin+length)); //$NON-NLS-1$
+	}
+}
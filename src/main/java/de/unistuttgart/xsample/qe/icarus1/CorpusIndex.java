@@ -0,0 +1,380 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static de.unistuttgart.xsample.util.XSampleUtils.buffer;
+import static java.util.Objects.requireNonNull;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+
+import javax.annotation.Nullable;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+
+/**
+ * Binary persistence format for {@link ColumnarCorpus} instances.
+ * An index file starts with a small header (magic number, format version 
+ * and size of the source file it was created from) followed by the 
+ * sentence offsets, the {@link SymbolTable symbol tables} together with their
+ * {@link SymbolTable#getLowercaseIds() case folding} and the individual
+ * annotation columns. String columns are stored as symbol ids. They are followed
+ * by the per-sentence summaries of the tree shapes and the file ends with the 
+ * {@link PostingsIndex inverted indices} and {@link FeatureIndex feature index}
+ * of the corpus.
+ * <p>
+ * Index files are stored encrypted with the same key as the local copy they 
+ * have been created from. Note that the initialization vector provided by 
+ * {@link de.unistuttgart.xsample.util.XSampleUtils#encrypt(javax.crypto.SecretKey)}
+ * is not stable across server restarts. Since CBC mode only requires the vector 
+ * for the first block, every file starts with a block of random filler bytes that 
+ * is discarded upon reading.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class CorpusIndex {
+	
+	/** "XSCI" */
+	private static final int MAGIC = 0x58534349;
+	
+	/** Current version of the binary format, increment on every incompatible change! */
+	public static final int VERSION = 8;
+	
+	/** Size of the random filler block preceding the actual content */
+	private static final int FILLER = 16;
+	
+	private static final String TMP_SUFFIX = ".part";
+	
+	/**
+	 * Loads a previously {@link #store(ColumnarCorpus, long, Path, Cipher) stored} index.
+	 * Returns {@code null} if no index file exists, if it was created by an incompatible
+	 * version of this class or if it does not belong to a source file of the given size. 
+	 * In any of those cases the index needs to be rebuilt.
+	 * 
+	 * @param file the index file
+	 * @param cipher cipher initialized for decryption with the key of the local copy
+	 * @param sourceSize size of the source file the index is expected to represent
+	 * @throws IOException if reading the index file failed or it contains corrupted data
+	 */
+	@Nullable
+	public static ColumnarCorpus load(Path file, Cipher cipher, long sourceSize) throws IOException {
+		requireNonNull(file);
+		requireNonNull(cipher);
+		if(!Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+			return null;
+		}
+		
+		try(InputStream raw = buffer(Files.newInputStream(file, StandardOpenOption.READ));
+				DataInputStream in = new DataInputStream(new CipherInputStream(raw, cipher))) {
+			in.readFully(new byte[FILLER]);
+			return read(in, sourceSize);
+		}
+	}
+	
+	/**
+	 * Writes the given corpus as an encrypted index file. The data is first written
+	 * to a temporary sibling file which then replaces the target file, so that a 
+	 * failed or interrupted write never leaves a partial index behind.
+	 * 
+	 * @param corpus the corpus to persist
+	 * @param sourceSize size of the source file the corpus was created from
+	 * @param file the index file
+	 * @param cipher cipher initialized for encryption with the key of the local copy
+	 * @throws IOException if writing the index file failed
+	 */
+	public static void store(ColumnarCorpus corpus, long sourceSize, Path file, Cipher cipher) throws IOException {
+		requireNonNull(corpus);
+		requireNonNull(file);
+		requireNonNull(cipher);
+		
+		final Path tmp = file.resolveSibling(file.getFileName()+TMP_SUFFIX);
+		try {
+			try(OutputStream raw = buffer(Files.newOutputStream(tmp));
+					DataOutputStream out = new DataOutputStream(new CipherOutputStream(raw, cipher))) {
+				final byte[] filler = new byte[FILLER];
+				new SecureRandom().nextBytes(filler);
+				out.write(filler);
+				write(corpus, sourceSize, out);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** Writes the raw (unencrypted) index data for the given corpus. */
+	public static void write(ColumnarCorpus corpus, long sourceSize, DataOutput out) throws IOException {
+		requireNonNull(corpus);
+		requireNonNull(out);
+		
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(sourceSize);
+		
+		final int sentences = corpus.size();
+		final int tokens = corpus.tokenCount();
+		out.writeInt(sentences);
+		out.writeInt(tokens);
+		
+		for(int offset : corpus.offsets()) {
+			out.writeInt(offset);
+		}
+		
+		writeSymbols(corpus.getFormSymbols(), out);
+		writeSymbols(corpus.getLemmaSymbols(), out);
+		writeSymbols(corpus.getPosSymbols(), out);
+		writeSymbols(corpus.getFeatureSymbols(), out);
+		writeSymbols(corpus.getRelationSymbols(), out);
+		
+		writeLowercase(corpus.getFormSymbols(), out);
+		writeLowercase(corpus.getLemmaSymbols(), out);
+		writeLowercase(corpus.getPosSymbols(), out);
+		writeLowercase(corpus.getFeatureSymbols(), out);
+		writeLowercase(corpus.getRelationSymbols(), out);
+		
+		writeInts(corpus.forms(), out);
+		writeInts(corpus.lemmas(), out);
+		writeInts(corpus.pos(), out);
+		writeInts(corpus.features(), out);
+		writeInts(corpus.relations(), out);
+		
+		for(short head : corpus.heads()) {
+			out.writeShort(head);
+		}
+		for(long flag : corpus.flags()) {
+			out.writeLong(flag);
+		}
+		
+		writeShorts(corpus.maxHeights(), out);
+		writeShorts(corpus.maxFanOuts(), out);
+		writeShorts(corpus.maxDescendants(), out);
+		
+		corpus.getPostings(LanguageConstants.FORM_KEY).write(out);
+		corpus.getPostings(LanguageConstants.LEMMA_KEY).write(out);
+		corpus.getPostings(LanguageConstants.POS_KEY).write(out);
+		corpus.getPostings(LanguageConstants.DEPREL_KEY).write(out);
+		corpus.getPostings(LanguageConstants.FEATURES_KEY).write(out);
+		
+		writeFeatures(corpus.getFeatureIndex(), out);
+	}
+	
+	/** 
+	 * Reads raw (unencrypted) index data. Returns {@code null} if the header 
+	 * does not match the current format or expected source size.
+	 */
+	@Nullable
+	public static ColumnarCorpus read(DataInput in, long sourceSize) throws IOException {
+		requireNonNull(in);
+		
+		if(in.readInt()!=MAGIC || in.readInt()!=VERSION || in.readLong()!=sourceSize) {
+			return null;
+		}
+		
+		final int sentences = in.readInt();
+		final int tokens = in.readInt();
+		if(sentences<0 || tokens<0)
+			throw new IOException("Corrupted index header"); //$NON-NLS-1$
+		
+		final int[] offsets = new int[sentences+1];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = in.readInt();
+		}
+		if(offsets[sentences]!=tokens)
+			throw new IOException("Corrupted offset table"); //$NON-NLS-1$
+		
+		final SymbolTable formSymbols = readSymbols(in);
+		final SymbolTable lemmaSymbols = readSymbols(in);
+		final SymbolTable posSymbols = readSymbols(in);
+		final SymbolTable featureSymbols = readSymbols(in);
+		final SymbolTable relationSymbols = readSymbols(in);
+		
+		readLowercase(formSymbols, in);
+		readLowercase(lemmaSymbols, in);
+		readLowercase(posSymbols, in);
+		readLowercase(featureSymbols, in);
+		readLowercase(relationSymbols, in);
+		
+		final int[] forms = readInts(tokens, formSymbols, in);
+		final int[] lemmas = readInts(tokens, lemmaSymbols, in);
+		final int[] pos = readInts(tokens, posSymbols, in);
+		final int[] features = readInts(tokens, featureSymbols, in);
+		final int[] relations = readInts(tokens, relationSymbols, in);
+		
+		final short[] heads = new short[tokens];
+		for (int i = 0; i < tokens; i++) {
+			heads[i] = in.readShort();
+		}
+		final long[] flags = new long[tokens];
+		for (int i = 0; i < tokens; i++) {
+			flags[i] = in.readLong();
+		}
+		
+		final short[] maxHeights = readShorts(sentences, in);
+		final short[] maxFanOuts = readShorts(sentences, in);
+		final short[] maxDescendants = readShorts(sentences, in);
+		
+		final PostingsIndex formPostings = readPostings(formSymbols, in);
+		final PostingsIndex lemmaPostings = readPostings(lemmaSymbols, in);
+		final PostingsIndex posPostings = readPostings(posSymbols, in);
+		final PostingsIndex relationPostings = readPostings(relationSymbols, in);
+		final PostingsIndex featurePostings = readPostings(featureSymbols, in);
+		
+		final FeatureIndex featureIndex = readFeatures(featureSymbols, in);
+		
+		return new ColumnarCorpus(offsets, forms, lemmas, pos, features, relations, heads, flags,
+				maxHeights, maxFanOuts, maxDescendants,
+				formSymbols, lemmaSymbols, posSymbols, featureSymbols, relationSymbols,
+				formPostings, lemmaPostings, posPostings, relationPostings, featurePostings,
+				featureIndex);
+	}
+	
+	private static void writeSymbols(SymbolTable symbols, DataOutput out) throws IOException {
+		final int size = symbols.size();
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			byte[] bytes = symbols.getSymbol(i).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	/** Reads a symbol table, preserving the original ids by interning in stored order. */
+	private static SymbolTable readSymbols(DataInput in) throws IOException {
+		final int size = in.readInt();
+		if(size<0)
+			throw new IOException("Corrupted symbol table size: "+size); //$NON-NLS-1$
+		final SymbolTable symbols = new SymbolTable();
+		byte[] buffer = new byte[64];
+		for (int i = 0; i < size; i++) {
+			int length = in.readInt();
+			if(length<0)
+				throw new IOException("Corrupted string length: "+length); //$NON-NLS-1$
+			if(length>buffer.length) {
+				buffer = new byte[Math.max(length, buffer.length*2)];
+			}
+			in.readFully(buffer, 0, length);
+			symbols.intern(new String(buffer, 0, length, StandardCharsets.UTF_8));
+		}
+		if(symbols.size()!=size)
+			throw new IOException("Duplicate entries in symbol table"); //$NON-NLS-1$
+		return symbols;
+	}
+	
+	private static void writeLowercase(SymbolTable symbols, DataOutput out) throws IOException {
+		writeSymbols(symbols.getLowercaseSymbols(), out);
+		writeInts(symbols.getLowercaseIds(), out);
+	}
+	
+	/** Restores the case folding of the given table, so it does not have to be recomputed. */
+	private static void readLowercase(SymbolTable symbols, DataInput in) throws IOException {
+		final SymbolTable lowercaseSymbols = readSymbols(in);
+		if(lowercaseSymbols.size()>symbols.size())
+			throw new IOException("Lowercase table larger than its source"); //$NON-NLS-1$
+		final int[] lowercaseIds = readInts(symbols.size(), lowercaseSymbols, in);
+		for(int id : lowercaseIds) {
+			if(id==SymbolTable.NULL_ID)
+				throw new IOException("Missing lowercase symbol"); //$NON-NLS-1$
+		}
+		symbols.setLowercase(lowercaseSymbols, lowercaseIds);
+	}
+	
+	private static PostingsIndex readPostings(SymbolTable symbols, DataInput in) throws IOException {
+		final PostingsIndex postings = PostingsIndex.read(in);
+		if(postings.size()!=symbols.size())
+			throw new IOException("Postings do not match symbol table"); //$NON-NLS-1$
+		return postings;
+	}
+	
+	private static void writeFeatures(FeatureIndex index, DataOutput out) throws IOException {
+		writeSymbols(index.getKeys(), out);
+		writeSymbols(index.getValues(), out);
+		final int[] keyIds = index.keyIds();
+		out.writeInt(keyIds.length);
+		writeInts(index.starts(), out);
+		writeInts(keyIds, out);
+		writeInts(index.valueIds(), out);
+	}
+	
+	private static FeatureIndex readFeatures(SymbolTable bundles, DataInput in) throws IOException {
+		final SymbolTable keys = readSymbols(in);
+		final SymbolTable values = readSymbols(in);
+		final int count = in.readInt();
+		if(count<0)
+			throw new IOException("Corrupted feature count: "+count); //$NON-NLS-1$
+		final int[] starts = new int[bundles.size()+1];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = in.readInt();
+			if(starts[i]<(i==0 ? 0 : starts[i-1]) || starts[i]>count)
+				throw new IOException("Corrupted feature table"); //$NON-NLS-1$
+		}
+		if(starts[0]!=0 || starts[bundles.size()]!=count)
+			throw new IOException("Corrupted feature table"); //$NON-NLS-1$
+		final int[] keyIds = readInts(count, keys, in);
+		final int[] valueIds = readInts(count, values, in);
+		return new FeatureIndex(keys, values, starts, keyIds, valueIds);
+	}
+	
+	private static void writeInts(int[] column, DataOutput out) throws IOException {
+		for(int value : column) {
+			out.writeInt(value);
+		}
+	}
+	
+	private static void writeShorts(short[] column, DataOutput out) throws IOException {
+		for(short value : column) {
+			out.writeShort(value);
+		}
+	}
+	
+	private static short[] readShorts(int count, DataInput in) throws IOException {
+		final short[] column = new short[count];
+		for (int i = 0; i < count; i++) {
+			final short value = in.readShort();
+			if(value<0)
+				throw new IOException("Corrupted shape summary: "+value); //$NON-NLS-1$
+			column[i] = value;
+		}
+		return column;
+	}
+	
+	private static int[] readInts(int count, SymbolTable symbols, DataInput in) throws IOException {
+		final int[] column = new int[count];
+		final int size = symbols.size();
+		for (int i = 0; i < count; i++) {
+			int id = in.readInt();
+			if(id<SymbolTable.NULL_ID || id>=size)
+				throw new IOException("Corrupted symbol id: "+id); //$NON-NLS-1$
+			column[i] = id;
+		}
+		return column;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static de.unistuttgart.xsample.util.XSampleUtils._int;
+import static de.unistuttgart.xsample.util.XSampleUtils._long;
+import static java.util.Objects.requireNonNull;
+
+import java.util.StringJoiner;
+
+/**
+ * View on a single sentence of a {@link ColumnarCorpus}. In addition to the 
+ * default accessors, all string annotations are available as their dense ids
+ * in the respective {@link SymbolTable} of the corpus. Those ids allow search
+ * constraints to replace string comparisons with simple {@code int} comparisons.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class EncodedSentenceData extends SentenceData {
+
+	private static final long serialVersionUID = 4407150880632306472L;
+	
+	private final ColumnarCorpus corpus;
+	
+	/** Position of the first token within the corpus columns */
+	private final int begin;
+	/** Number of tokens */
+	private final int length;
+	
+	// Local copies of the column references for faster access
+	private final int[] formIds;
+	private final int[] lemmaIds;
+	private final int[] posIds;
+	private final int[] featureIds;
+	private final int[] relationIds;
+	private final short[] heads;
+	private final long[] flags;
+	
+	EncodedSentenceData(ColumnarCorpus corpus, int begin, int length) {
+		this.corpus = requireNonNull(corpus);
+		this.begin = begin;
+		this.length = length;
+		
+		formIds = corpus.forms();
+		lemmaIds = corpus.lemmas();
+		posIds = corpus.pos();
+		featureIds = corpus.features();
+		relationIds = corpus.relations();
+		heads = corpus.heads();
+		flags = corpus.flags();
+	}
+	
+	/** Returns the corpus this sentence belongs to. */
+	public ColumnarCorpus getCorpus() { return corpus; }
+	
+	@Override
+	public int length() { return length; }
+	
+	public int getFormId(int index) { return formIds[begin+index]; }
+	
+	public int getPosId(int index) { return posIds[begin+index]; }
+	
+	public int getLemmaId(int index) { return lemmaIds[begin+index]; }
+	
+	public int getFeaturesId(int index) { return featureIds[begin+index]; }
+	
+	public int getRelationId(int index) { return relationIds[begin+index]; }
+	
+	@Override
+	public String getForm(int index) { return corpus.getFormSymbols().getSymbol(getFormId(index)); }
+
+	@Override
+	public String getPos(int index) { return corpus.getPosSymbols().getSymbol(getPosId(index)); }
+
+	@Override
+	public String getLemma(int index) { return corpus.getLemmaSymbols().getSymbol(getLemmaId(index)); }
+
+	@Override
+	public String getFeatures(int index) { return corpus.getFeatureSymbols().getSymbol(getFeaturesId(index)); }
+
+	@Override
+	public String getRelation(int index) { return corpus.getRelationSymbols().getSymbol(getRelationId(index)); }
+
+	@Override
+	public int getHead(int index) { return heads[begin+index]; }
+
+	@Override
+	public long getFlags(int index) { return flags[begin+index]; }
+
+	@Override
+	public boolean isFlagSet(int index, long flag) {
+		return (flags[begin+index] & flag) == flag;
+	}
+	
+	@Override
+	public Object getProperty(int index, String key) {
+		switch (key) {
+		case LanguageConstants.FORM_KEY: return getForm(index);
+		case LanguageConstants.POS_KEY: return getPos(index);
+		case LanguageConstants.LEMMA_KEY: return getLemma(index);
+		case LanguageConstants.FEATURES_KEY: return getFeatures(index);
+		case LanguageConstants.DEPREL_KEY: return getRelation(index);
+		case LanguageConstants.HEAD_KEY: return _int(getHead(index));
+		case LanguageConstants.FLAGS_KEY: return _long(getFlags(index));
+		case LanguageConstants.SIZE_KEY:
+		case LanguageConstants.LENGTH_KEY:
+			return _int(getForm(index).length());
+
+		default:
+			return super.getProperty(index, key);
+		}
+	}
+	
+	@Override
+	public String getText() {
+		final StringJoiner joiner = new StringJoiner(" ");
+		for (int i = 0; i < length; i++) {
+			joiner.add(getForm(i));
+		}
+		return joiner.toString();
+	}
+}
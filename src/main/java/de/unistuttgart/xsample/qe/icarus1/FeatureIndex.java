@@ -0,0 +1,254 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static de.unistuttgart.xsample.util.XSampleUtils.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Structured view on the feature bundles of a {@link ColumnarCorpus}.
+ * A bundle such as {@code Case=Dat|Number=Sing} is split into its individual
+ * features, whose keys and values are encoded in separate {@link SymbolTable
+ * symbol tables}. For every bundle the features are stored as pairs of key and
+ * value ids, sorted by key id. Since bundles are already encoded as symbols in
+ * the corpus, every distinct bundle is only parsed once, no matter how many
+ * tokens carry it.
+ * <p>
+ * Entries without a {@link #VALUE_SEPARATOR} are treated as features with an
+ * empty value. If a key occurs multiple times within a bundle, only its first
+ * occurrence is considered. The bundle {@value #EMPTY_BUNDLE} contains no features.
+ * <p>
+ * The index is built once together with its corpus and persisted as part of
+ * the {@link CorpusIndex}.
+ *
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class FeatureIndex {
+
+	/** Separator between the individual features of a bundle */
+	public static final char FEATURE_SEPARATOR = '|';
+
+	/** Separator between the key and value of a single feature */
+	public static final char VALUE_SEPARATOR = '=';
+
+	/** Placeholder for bundles without any features */
+	public static final String EMPTY_BUNDLE = "_"; //$NON-NLS-1$
+
+	private final SymbolTable keys;
+	private final SymbolTable values;
+
+	/** Begin of the features of each bundle, with one additional entry marking the end */
+	private final int[] starts;
+	/** Key ids of all features, ascending within each bundle */
+	private final int[] keyIds;
+	/** Value ids of all features, aligned with {@link #keyIds} */
+	private final int[] valueIds;
+
+	FeatureIndex(SymbolTable keys, SymbolTable values, int[] starts, int[] keyIds, int[] valueIds) {
+		this.keys = requireNonNull(keys);
+		this.values = requireNonNull(values);
+		this.starts = requireNonNull(starts);
+		this.keyIds = requireNonNull(keyIds);
+		this.valueIds = requireNonNull(valueIds);
+		checkArgument("Inconsistent table sizes", starts.length>0
+				&& keyIds.length==valueIds.length && starts[starts.length-1]==keyIds.length);
+	}
+
+	/** Parses all the bundles in the given table, preserving their ids. */
+	public static FeatureIndex build(SymbolTable bundles) {
+		requireNonNull(bundles);
+
+		final SymbolTable keys = new SymbolTable();
+		final SymbolTable values = new SymbolTable();
+		final int[] starts = new int[bundles.size()+1];
+		final IntArrayList keyIds = new IntArrayList();
+		final IntArrayList valueIds = new IntArrayList();
+		// Key id in the upper and value id in the lower half, so that sorting orders by key
+		final LongArrayList buffer = new LongArrayList();
+
+		for (int bundle = 0; bundle < bundles.size(); bundle++) {
+			final String features = bundles.getSymbol(bundle);
+			buffer.clear();
+
+			if(!EMPTY_BUNDLE.equals(features)) {
+				int begin = 0;
+				while(begin<features.length()) {
+					int end = features.indexOf(FEATURE_SEPARATOR, begin);
+					if(end==-1) {
+						end = features.length();
+					}
+					if(end>begin) {
+						final int sep = features.indexOf(VALUE_SEPARATOR, begin);
+						final boolean hasValue = sep!=-1 && sep<end;
+						final int key = keys.intern(features.substring(begin, hasValue ? sep : end));
+						if(!contains(buffer, key)) {
+							final int value = values.intern(hasValue ? features.substring(sep+1, end) : ""); //$NON-NLS-1$
+							buffer.add(((long)key << 32) | value);
+						}
+					}
+					begin = end+1;
+				}
+			}
+
+			buffer.sort(null);
+			for (int i = 0; i < buffer.size(); i++) {
+				final long feature = buffer.getLong(i);
+				keyIds.add((int) (feature >>> 32));
+				valueIds.add((int) feature);
+			}
+			starts[bundle+1] = keyIds.size();
+		}
+
+		return new FeatureIndex(keys, values, starts, keyIds.toIntArray(), valueIds.toIntArray());
+	}
+
+	private static boolean contains(LongArrayList features, int key) {
+		for (int i = 0; i < features.size(); i++) {
+			if((int) (features.getLong(i) >>> 32) == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int[] starts() { return starts; }
+	int[] keyIds() { return keyIds; }
+	int[] valueIds() { return valueIds; }
+
+	/** Number of bundles covered by this index */
+	public int size() {
+		return starts.length-1;
+	}
+
+	/** Table of all distinct feature keys */
+	public SymbolTable getKeys() {
+		return keys;
+	}
+
+	/** Table of all distinct feature values */
+	public SymbolTable getValues() {
+		return values;
+	}
+
+	/** Number of features in the given bundle, which is {@code 0} for {@link SymbolTable#NULL_ID}. */
+	public int featureCount(int bundle) {
+		return bundle<0 ? 0 : starts[bundle+1]-starts[bundle];
+	}
+
+	/**
+	 * Returns the id of the value that the specified bundle assigns to the
+	 * given key or {@link SymbolTable#NULL_ID} if the bundle does not contain
+	 * the key.
+	 */
+	public int getValueId(int bundle, int key) {
+		if(bundle<0 || key<0) {
+			return SymbolTable.NULL_ID;
+		}
+		int low = starts[bundle], high = starts[bundle+1]-1;
+		while(low<=high) {
+			final int mid = (low+high) >>> 1;
+			if(keyIds[mid]<key) {
+				low = mid+1;
+			} else if(keyIds[mid]>key) {
+				high = mid-1;
+			} else {
+				return valueIds[mid];
+			}
+		}
+		return SymbolTable.NULL_ID;
+	}
+
+	/** Returns the value that the specified bundle assigns to the given key or {@code null}. */
+	@Nullable
+	public String getValue(int bundle, String key) {
+		return values.getSymbol(getValueId(bundle, keys.getId(key)));
+	}
+
+	/**
+	 * Returns the ids of all bundles whose value for the given key satisfies
+	 * the {@code filter}. Bundles without the key are tested with {@code null}.
+	 * The filter is evaluated at most once per distinct value.
+	 */
+	public BitSet findBundles(String key, Predicate<String> filter) {
+		requireNonNull(key);
+		requireNonNull(filter);
+
+		final int keyId = keys.getId(key);
+		final boolean matchesMissing = filter.test(null);
+		final BitSet evaluated = new BitSet(values.size());
+		final BitSet matching = new BitSet(values.size());
+		final BitSet bundles = new BitSet(size());
+
+		for (int bundle = 0; bundle < size(); bundle++) {
+			final int value = getValueId(bundle, keyId);
+			boolean matches = matchesMissing;
+			if(value>=0) {
+				if(!evaluated.get(value)) {
+					evaluated.set(value);
+					if(filter.test(values.getSymbol(value))) {
+						matching.set(value);
+					}
+				}
+				matches = matching.get(value);
+			}
+			if(matches) {
+				bundles.set(bundle);
+			}
+		}
+
+		return bundles;
+	}
+
+	/**
+	 * Extracts the value for the given key directly from a feature bundle
+	 * without the need for an index. Follows the same conventions as the
+	 * index and returns {@code null} if the bundle does not contain the key.
+	 */
+	@Nullable
+	public static String getFeature(@Nullable String features, String key) {
+		requireNonNull(key);
+		if(features==null || EMPTY_BUNDLE.equals(features)) {
+			return null;
+		}
+
+		int begin = 0;
+		while(begin<features.length()) {
+			int end = features.indexOf(FEATURE_SEPARATOR, begin);
+			if(end==-1) {
+				end = features.length();
+			}
+			final int sep = features.indexOf(VALUE_SEPARATOR, begin);
+			final boolean hasValue = sep!=-1 && sep<end;
+			final int keyEnd = hasValue ? sep : end;
+			if(end>begin && keyEnd-begin==key.length() && features.startsWith(key, begin)) {
+				return hasValue ? features.substring(sep+1, end) : ""; //$NON-NLS-1$
+			}
+			begin = end+1;
+		}
+		return null;
+	}
+}
@@ -24,27 +24,58 @@ import static de.unistuttgart.xsample.util.XSampleUtils.checkState;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.PrimitiveIterator;
 import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
 
+import javax.annotation.Nullable;
+import javax.crypto.CipherInputStream;
+import javax.crypto.SecretKey;
+
+import de.unistuttgart.xsample.qe.HitBitmap;
 import de.unistuttgart.xsample.qe.QueryException;
 import de.unistuttgart.xsample.qe.QueryException.QueryErrorCode;
 import de.unistuttgart.xsample.qe.QueryResult;
 import de.unistuttgart.xsample.qe.Result;
 import de.unistuttgart.xsample.qe.icarus1.match.ConstraintContext;
+import de.unistuttgart.xsample.qe.icarus1.match.QueryParser;
 import de.unistuttgart.xsample.qe.icarus1.match.Search;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchProfile;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchQuery;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchUtils;
+import de.unistuttgart.xsample.util.XSampleUtils;
 
 /**
  * @author Markus Gärtner
  *
  */
 public class Icarus1Wrapper {
+
+	private static final Logger log = Logger.getLogger(Icarus1Wrapper.class.getCanonicalName());
 	
 	private SearchQuery query;
 	private Options options;
 	
+	/** Optional observer, shared by all evaluations of this wrapper */
+	private volatile SearchMonitor monitor;
+	
+	public void setMonitor(SearchMonitor monitor) {
+		this.monitor = monitor;
+	}
+	
 	public void init(String queryString, Properties settings) throws QueryException {
 		checkNotEmpty(queryString);
 		requireNonNull(settings);
@@ -56,35 +87,219 @@ public class Icarus1Wrapper {
 			throw new QueryException("Unsupported format in query: "+queryString, QueryErrorCode.SYNTAX_ERROR, e);
 		}
 		
-		options = new Options(settings);
+		options = new Options();
+		settings.forEach((key, value) -> options.put(String.valueOf(key), value));
+	}
+	
+	/**
+	 * Returns a canonical textual form of the current query, obtained by 
+	 * serializing the parsed search graph again. Queries that only differ 
+	 * in whitespace or similar cosmetic aspects share the same normalized form.
+	 */
+	public String getNormalizedQuery() throws QueryException {
+		checkState("Query not initialized", query!=null);
 		
+		try {
+			return new QueryParser(query.getConstraintContext(), null).toQuery(query.getSearchGraph(), null);
+		} catch (UnsupportedFormatException e) {
+			throw new QueryException("Unable to normalize query: "+query.getQueryString(), QueryErrorCode.SYNTAX_ERROR, e);
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the query of this wrapper is a specialization 
+	 * of the query in {@code other}, i.e. its result is guaranteed to be a
+	 * subset of the result of {@code other} on the same corpus.
+	 * 
+	 * @see SearchUtils#isSpecialization
+	 */
+	public boolean refines(Icarus1Wrapper other) {
+		requireNonNull(other);
+		checkState("Query not initialized", query!=null && other.query!=null);
 		
+		return SearchUtils.isSpecialization(query.getSearchGraph(), other.query.getSearchGraph());
 	}
 
+	/**
+	 * Evaluates the query directly on the CoNLL09 data provided by the given
+	 * {@code reader}. Sentences are parsed and matched one at a time, so memory
+	 * consumption is bounded by the largest sentence instead of the entire part.
+	 */
 	public QueryResult evaluate(Reader reader) throws QueryException {
 		requireNonNull(reader);
 		checkState("Query not initialized", query!=null);
 		
+		// Only materialize the columns actually accessed by the query
+		final Options readerOptions = new Options();
+		final Set<String> annotations = SearchUtils.getRequiredAnnotations(query.getSearchGraph());
+		if(annotations!=null) {
+			readerOptions.put(CONLL09SentenceDataReader.ANNOTATIONS_OPTION, annotations);
+		}
+		
 		final CONLL09SentenceDataReader conllReader = new CONLL09SentenceDataReader(false);
-		final List<SentenceData> part;
 		try {
-			part = conllReader.readAll(reader, null);
+			conllReader.init(reader, readerOptions);
 		} catch (IOException e) {
 			throw new QueryException("Failed to load corpus file", QueryErrorCode.IO_ERROR, e);
-		} catch (UnsupportedFormatException e) {
-			throw new QueryException("Failed to parse corpus data", QueryErrorCode.UNSUPPORTED_FORMAT, e);
 		}
 		
-		final Search search = new Search(query, options, part);
+		final Search search = new Search(query, options, conllReader);
 		
 		try {
 			search.init();
-			search.execute();
+			execute(search);
+		} catch(UncheckedIOException e) {
+			throw new QueryException("Failed to load corpus file", QueryErrorCode.IO_ERROR, e.getCause());
+		} catch(UncheckedFormatException e) {
+			throw new QueryException("Failed to parse corpus data", QueryErrorCode.UNSUPPORTED_FORMAT, e.getCause());
+		} catch(PatternSyntaxException e) {
+			throw new QueryException("Invalid regular expression in query", QueryErrorCode.SYNTAX_ERROR, e);
+		} catch(RuntimeException e) {
+			throw new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, e);
+		}
+	
+		return new QueryResult(search.getResult(), search.getProcessed());
+	}
+
+	public QueryResult evaluate(ColumnarCorpus corpus) throws QueryException {
+		return evaluate(corpus, null);
+	}
+	
+	/**
+	 * Evaluates the query on the given {@code corpus}, but only visits the 
+	 * sentences contained in {@code candidates}. This is meant for refining
+	 * a previous query, whose complete result then serves as candidates.
+	 * 
+	 * @param candidates superset of the sentences matching the query or {@code null}
+	 */
+	public QueryResult evaluate(ColumnarCorpus corpus, @Nullable HitBitmap candidates) throws QueryException {
+		final Search search = search(corpus, options, candidates);
+		return new QueryResult(search.getResult(), corpus.size());
+	}
+	
+	/**
+	 * Evaluates the query on the given {@code corpus} with profiling enabled 
+	 * and returns the report on how the individual matchers performed.
+	 */
+	public SearchProfile explain(ColumnarCorpus corpus) throws QueryException {
+		final Options profileOptions = options.clone();
+		profileOptions.put(SearchParameters.SEARCH_PROFILE, Boolean.TRUE);
+		return search(corpus, profileOptions, null).getProfile();
+	}
+	
+	private Search search(ColumnarCorpus corpus, Options options, @Nullable HitBitmap candidates) throws QueryException {
+		requireNonNull(corpus);
+		checkState("Query not initialized", query!=null);
+		
+		final Search search = new Search(query, options, corpus);
+		
+		try {
+			if(candidates!=null) {
+				search.setRestriction(toSentences(candidates.slice(0, corpus.size()-1)));
+			}
+			search.init();
+			execute(search);
+		} catch(PatternSyntaxException e) {
+			throw new QueryException("Invalid regular expression in query", QueryErrorCode.SYNTAX_ERROR, e);
 		} catch(RuntimeException e) {
 			throw new QueryException("Internal search error", QueryErrorCode.INTERNAL_ERROR, e);
 		}
 	
-		return new QueryResult(search.getResult(), part.size());
+		return search;
+	}
+	
+	private static int[] toSentences(HitBitmap hits) {
+		final int[] sentences = new int[XSampleUtils.strictToInt(hits.cardinality())];
+		final PrimitiveIterator.OfLong it = hits.iterator();
+		for (int i = 0; i < sentences.length; i++) {
+			sentences[i] = (int) it.nextLong();
+		}
+		return sentences;
+	}
+	
+	private void execute(Search search) {
+		final SearchMonitor monitor = this.monitor;
+		if(monitor==null) {
+			search.execute();
+		} else {
+			monitor.searchStarted(search);
+			try {
+				search.execute();
+			} finally {
+				monitor.searchFinished(search);
+			}
+		}
+		
+		final SearchProfile profile = search.getProfile();
+		if(profile!=null) {
+			log.info(profile.toString());
+		}
+	}
+	
+	/**
+	 * Loads the columnar representation of an encrypted CoNLL09 file. If the 
+	 * {@link CorpusIndex index} file is missing, outdated or corrupted, the
+	 * data file is parsed and the index gets (re)built, so that subsequent 
+	 * calls can skip the expensive parsing step. Failing to store the index 
+	 * is not considered fatal.
+	 * <p>
+	 * Callers must ensure exclusive access to both files!
+	 * 
+	 * @param dataFile the encrypted CoNLL09 file
+	 * @param indexFile location of the encrypted index file
+	 * @param key secret key used for both the data and index file
+	 * @param encoding character encoding of the data file
+	 * @param sourceSize size of the raw source data, used to detect stale indices
+	 */
+	public static ColumnarCorpus loadCorpus(Path dataFile, Path indexFile, SecretKey key, 
+			Charset encoding, long sourceSize) throws QueryException, IOException, GeneralSecurityException {
+		requireNonNull(dataFile);
+		requireNonNull(indexFile);
+		requireNonNull(key);
+		requireNonNull(encoding);
+		
+		try {
+			ColumnarCorpus corpus = CorpusIndex.load(indexFile, XSampleUtils.decrypt(key), sourceSize);
+			if(corpus!=null) {
+				return corpus;
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Discarding corrupted index file: "+indexFile, e);
+		}
+		
+		final CONLL09SentenceDataReader conllReader = new CONLL09SentenceDataReader(false);
+		final ColumnarCorpus corpus;
+		try(InputStream raw = Files.newInputStream(dataFile, StandardOpenOption.READ);
+				InputStream in = new CipherInputStream(raw, XSampleUtils.decrypt(key));
+				Reader reader = new InputStreamReader(in, encoding);) {
+			conllReader.init(reader, null);
+			corpus = ColumnarCorpus.build(conllReader);
+		} catch (UnsupportedFormatException e) {
+			throw new QueryException("Failed to parse corpus data", QueryErrorCode.UNSUPPORTED_FORMAT, e);
+		}
+		
+		try {
+			CorpusIndex.store(corpus, sourceSize, indexFile, XSampleUtils.encrypt(key));
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Failed to store index file: "+indexFile, e);
+		}
+		
+		return corpus;
+	}
+	
+	/**
+	 * Gets notified about every search this wrapper executes, e.g. to report
+	 * {@link Search#getProgress() progress} or to {@link Search#cancel() cancel} 
+	 * searches. Callbacks happen on the thread executing the search.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public interface SearchMonitor {
+		/** Called right before the given search starts executing */
+		void searchStarted(Search search);
+		/** Called after the given search finished executing, successfully or not */
+		void searchFinished(Search search);
 	}
 	
 	public static class ResultPart {
@@ -0,0 +1,254 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static de.unistuttgart.xsample.util.XSampleUtils.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Inverted index for a single annotation layer of a {@link ColumnarCorpus}.
+ * For every {@link SymbolTable symbol} id it stores the ascending list of
+ * sentences that contain at least one token with that symbol. 
+ * <p>
+ * All posting lists are packed into a single byte array. Each list is 
+ * stored as gaps between consecutive sentence indices, encoded as 
+ * variable-length integers with 7 bits per byte. Since frequent symbols 
+ * occur in most sentences, the majority of gaps fits into a single byte. 
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class PostingsIndex {
+	
+	private static final int[] EMPTY = {};
+	
+	/** Begin of each posting list in {@link #data}, with one additional entry marking the end */
+	private final int[] starts;
+	/** Number of sentences in each posting list */
+	private final int[] counts;
+	/** Encoded gaps */
+	private final byte[] data;
+	
+	PostingsIndex(int[] starts, int[] counts, byte[] data) {
+		this.starts = requireNonNull(starts);
+		this.counts = requireNonNull(counts);
+		this.data = requireNonNull(data);
+		checkArgument("Inconsistent table sizes", starts.length==counts.length+1
+				&& starts[counts.length]==data.length);
+	}
+	
+	/**
+	 * Creates the posting lists for a single id column of a corpus.
+	 * 
+	 * @param column symbol ids of all tokens in the corpus
+	 * @param offsets begin of every sentence in the column, with one additional entry marking the end
+	 * @param symbolCount number of distinct symbols in the column
+	 */
+	public static PostingsIndex build(int[] column, int[] offsets, int symbolCount) {
+		requireNonNull(column);
+		requireNonNull(offsets);
+		
+		final int sentences = offsets.length-1;
+		final int[] counts = new int[symbolCount];
+		final int[] sizes = new int[symbolCount];
+		final int[] last = new int[symbolCount];
+		
+		// First pass: determine size of each list
+		Arrays.fill(last, -1);
+		for (int s = 0; s < sentences; s++) {
+			for (int t = offsets[s]; t < offsets[s+1]; t++) {
+				final int id = column[t];
+				if(id<0 || last[id]==s) {
+					continue;
+				}
+				sizes[id] += encodedSize(s-last[id]-1);
+				counts[id]++;
+				last[id] = s;
+			}
+		}
+		
+		final int[] starts = new int[symbolCount+1];
+		for (int i = 0; i < symbolCount; i++) {
+			starts[i+1] = starts[i] + sizes[i];
+		}
+		
+		// Second pass: encode gaps, reusing 'sizes' as write positions
+		final byte[] data = new byte[starts[symbolCount]];
+		System.arraycopy(starts, 0, sizes, 0, symbolCount);
+		Arrays.fill(last, -1);
+		for (int s = 0; s < sentences; s++) {
+			for (int t = offsets[s]; t < offsets[s+1]; t++) {
+				final int id = column[t];
+				if(id<0 || last[id]==s) {
+					continue;
+				}
+				sizes[id] = encode(s-last[id]-1, data, sizes[id]);
+				last[id] = s;
+			}
+		}
+		
+		return new PostingsIndex(starts, counts, data);
+	}
+	
+	private static int encodedSize(int value) {
+		int size = 1;
+		while((value >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+	
+	private static int encode(int value, byte[] data, int pos) {
+		while((value & ~0x7F) != 0) {
+			data[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[pos++] = (byte) value;
+		return pos;
+	}
+	
+	/** Number of symbols covered by this index */
+	public int size() {
+		return counts.length;
+	}
+	
+	/** 
+	 * Returns the number of sentences containing the given symbol. 
+	 * Unknown symbols and {@link SymbolTable#NULL_ID} yield {@code 0}. 
+	 */
+	public int frequency(int symbol) {
+		return symbol<0 || symbol>=counts.length ? 0 : counts[symbol];
+	}
+	
+	/**
+	 * Decodes the ascending list of sentences that contain the given symbol. 
+	 * Unknown symbols and {@link SymbolTable#NULL_ID} yield an empty list.
+	 */
+	public int[] postings(int symbol) {
+		final int count = frequency(symbol);
+		if(count==0) {
+			return EMPTY;
+		}
+		
+		final int[] result = new int[count];
+		int pos = starts[symbol];
+		int sentence = -1;
+		for (int i = 0; i < count; i++) {
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[pos++];
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b<0);
+			sentence += gap+1;
+			result[i] = sentence;
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the ascending list of sentences that contain any of the given
+	 * symbols, i.e. the union of their individual posting lists.
+	 */
+	public int[] postings(BitSet symbols) {
+		requireNonNull(symbols);
+		
+		final BitSet sentences = new BitSet();
+		for (int symbol = symbols.nextSetBit(0); symbol >= 0 && symbol < counts.length; 
+				symbol = symbols.nextSetBit(symbol+1)) {
+			int pos = starts[symbol];
+			int sentence = -1;
+			for (int i = 0; i < counts[symbol]; i++) {
+				int gap = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[pos++];
+					gap |= (b & 0x7F) << shift;
+					shift += 7;
+				} while(b<0);
+				sentence += gap+1;
+				sentences.set(sentence);
+			}
+		}
+		return sentences.stream().toArray();
+	}
+	
+	/** Computes the intersection of two ascending lists of sentence indices. */
+	public static int[] intersect(int[] a, int[] b) {
+		requireNonNull(a);
+		requireNonNull(b);
+		
+		final int[] result = new int[Math.min(a.length, b.length)];
+		int size = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length;) {
+			if(a[i]<b[j]) {
+				i++;
+			} else if(a[i]>b[j]) {
+				j++;
+			} else {
+				result[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return size==result.length ? result : Arrays.copyOf(result, size);
+	}
+	
+	void write(DataOutput out) throws IOException {
+		out.writeInt(counts.length);
+		out.writeInt(data.length);
+		for(int count : counts) {
+			out.writeInt(count);
+		}
+		for(int start : starts) {
+			out.writeInt(start);
+		}
+		out.write(data);
+	}
+	
+	static PostingsIndex read(DataInput in) throws IOException {
+		final int size = in.readInt();
+		final int bytes = in.readInt();
+		if(size<0 || bytes<0)
+			throw new IOException("Corrupted postings header"); //$NON-NLS-1$
+		
+		final int[] counts = new int[size];
+		for (int i = 0; i < size; i++) {
+			counts[i] = in.readInt();
+		}
+		final int[] starts = new int[size+1];
+		for (int i = 0; i <= size; i++) {
+			starts[i] = in.readInt();
+		}
+		if(starts[size]!=bytes)
+			throw new IOException("Corrupted postings table"); //$NON-NLS-1$
+		final byte[] data = new byte[bytes];
+		in.readFully(data);
+		
+		return new PostingsIndex(starts, counts, data);
+	}
+}
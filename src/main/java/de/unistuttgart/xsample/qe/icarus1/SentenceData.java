@@ -123,7 +123,8 @@ public class SentenceData implements Cloneable {
 		return forms==null ? null : forms[index];
 	}
 
-	private static final Key sharedKey = new Key();
+	/** Reusable lookup key, one per thread since sentences may be matched concurrently */
+	private static final ThreadLocal<Key> sharedKeys = ThreadLocal.withInitial(Key::new);
 
 	protected final Object getIndexedProperty(int index, String key) {
 		if (key == null)
@@ -133,8 +134,7 @@ public class SentenceData implements Cloneable {
 			return null;
 		}
 
-		//FIXME maybe synchronize?
-
+		final Key sharedKey = sharedKeys.get();
 		sharedKey.index = index;
 		sharedKey.key = key;
 
@@ -127,6 +127,38 @@ public abstract class Splitable extends AbstractString {
 			return split(regex, 0);
 		}
 
+		/**
+		 * Equivalent to {@code split("\\s+", limit)}, but without the 
+		 * overhead of a regex matcher.
+		 */
+		public int splitWhitespace(int limit) {
+			resetSplits();
+
+			int width = length();
+			int i = 0;
+			while(i<width && (limit==0 || splitCount<limit)) {
+				while(i<width && isWhitespace(charAt(i))) {
+					i++;
+				}
+				if(i==width) {
+					break;
+				}
+
+				int begin = i;
+				while(i<width && !isWhitespace(charAt(i))) {
+					i++;
+				}
+				addSplit(begin, i);
+			}
+
+			return splitCount;
+		}
+
+		/** Mirrors the {@code \s} character class of regular expressions */
+		private static boolean isWhitespace(char c) {
+			return c==' ' || c=='\t' || c=='\n' || c=='\u000B' || c=='\f' || c=='\r';
+		}
+
 		public int split(char ch, int limit) {
 			resetSplits();
 
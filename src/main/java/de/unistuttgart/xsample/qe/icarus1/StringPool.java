@@ -0,0 +1,110 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+/**
+ * Canonicalizes character sequences into shared {@link String} instances.
+ * Lookups work directly on the given {@link CharSequence}, so that values 
+ * seen before never cause a temporary string to be created. Once the pool 
+ * reached its maximum size, new values are still converted but no longer
+ * stored.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class StringPool {
+	
+	/** Upper bound on the number of stored values to protect against unbounded vocabularies */
+	public static final int DEFAULT_MAX_SIZE = 1 << 20;
+	
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	/** Open addressing with linear probing, capacity is always a power of 2 */
+	private String[] table;
+	private int size;
+	private final int maxSize;
+	
+	public StringPool() {
+		this(DEFAULT_MAX_SIZE);
+	}
+	
+	public StringPool(int maxSize) {
+		if(maxSize<0)
+			throw new IllegalArgumentException("Negative max size: "+maxSize); //$NON-NLS-1$
+		this.maxSize = maxSize;
+		table = new String[INITIAL_CAPACITY];
+	}
+	
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * Returns the canonical string for the content of the given sequence.
+	 */
+	public String get(CharSequence cs) {
+		// Hash is compatible with String.hashCode() and cached by AbstractString implementations
+		final int hash = cs instanceof AbstractString ? cs.hashCode() : StringUtil.hash(cs);
+		final int mask = table.length-1;
+		
+		int index = mix(hash) & mask;
+		String s;
+		while((s = table[index]) != null) {
+			if(s.hashCode()==hash && StringUtil.equals(cs, s)) {
+				return s;
+			}
+			index = (index+1) & mask;
+		}
+		
+		s = StringUtil.toString(cs);
+		if(size<maxSize) {
+			table[index] = s;
+			if(++size > table.length>>1) {
+				grow();
+			}
+		}
+		return s;
+	}
+	
+	private void grow() {
+		final String[] oldTable = table;
+		final String[] newTable = new String[oldTable.length<<1];
+		final int mask = newTable.length-1;
+		for(String s : oldTable) {
+			if(s!=null) {
+				int index = mix(s.hashCode()) & mask;
+				while(newTable[index]!=null) {
+					index = (index+1) & mask;
+				}
+				newTable[index] = s;
+			}
+		}
+		table = newTable;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void clear() {
+		table = new String[INITIAL_CAPACITY];
+		size = 0;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static de.unistuttgart.xsample.util.XSampleUtils.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Dictionary that maps the distinct values of a single annotation layer
+ * to dense {@code int} ids, starting at {@code 0} in order of their first
+ * occurrence. A {@code null} value is never stored and instead represented 
+ * by {@link #NULL_ID}, while lookups for values not contained in the table 
+ * yield {@link #UNKNOWN_ID}. The two special ids never collide, so an 
+ * unknown value never matches a missing annotation.
+ * <p>
+ * Tables are mutable while a corpus is being built and must not be modified
+ * once they are shared with concurrent readers.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class SymbolTable {
+	
+	/** Id used for {@code null} values */
+	public static final int NULL_ID = -1;
+	
+	/** Id returned for lookups of values not present in a table */
+	public static final int UNKNOWN_ID = -2;
+
+	private final Object2IntMap<String> ids;
+	private final ObjectArrayList<String> symbols;
+	
+	/** Case-folded variant of this table, created on demand */
+	private SymbolTable lowercaseSymbols;
+	/** Maps every id of this table to the id of its lowercase value in {@link #lowercaseSymbols} */
+	private int[] lowercaseIds;
+	
+	public SymbolTable() {
+		ids = new Object2IntOpenHashMap<>();
+		ids.defaultReturnValue(UNKNOWN_ID);
+		symbols = new ObjectArrayList<>();
+	}
+	
+	/** Number of distinct values in this table */
+	public int size() {
+		return symbols.size();
+	}
+	
+	/** 
+	 * Returns the id for the given value, assigning a new one if the
+	 * value has not been seen before.
+	 */
+	public int intern(@Nullable String symbol) {
+		if(symbol==null) {
+			return NULL_ID;
+		}
+		int id = ids.getInt(symbol);
+		if(id==UNKNOWN_ID) {
+			id = symbols.size();
+			symbols.add(symbol);
+			ids.put(symbol, id);
+			lowercaseSymbols = null;
+			lowercaseIds = null;
+		}
+		return id;
+	}
+	
+	/** 
+	 * Returns the id of the given value or {@link #UNKNOWN_ID} if this 
+	 * table does not contain it. 
+	 */
+	public int getId(@Nullable String symbol) {
+		return symbol==null ? NULL_ID : ids.getInt(symbol);
+	}
+	
+	/** Returns the value for the given id, which is {@code null} for {@link #NULL_ID}. */
+	@Nullable
+	public String getSymbol(int id) {
+		return id==NULL_ID ? null : symbols.get(id);
+	}
+	
+	private void foldCase() {
+		if(lowercaseSymbols!=null) {
+			return;
+		}
+		final SymbolTable lowercaseSymbols = new SymbolTable();
+		final int[] lowercaseIds = new int[symbols.size()];
+		for (int id = 0; id < lowercaseIds.length; id++) {
+			lowercaseIds[id] = lowercaseSymbols.intern(symbols.get(id).toLowerCase());
+		}
+		this.lowercaseIds = lowercaseIds;
+		this.lowercaseSymbols = lowercaseSymbols;
+	}
+	
+	/** Installs a previously computed case folding, as read from a {@link CorpusIndex}. */
+	synchronized void setLowercase(SymbolTable lowercaseSymbols, int[] lowercaseIds) {
+		checkArgument("Lowercase ids do not match table size", lowercaseIds.length==symbols.size());
+		this.lowercaseIds = lowercaseIds;
+		this.lowercaseSymbols = requireNonNull(lowercaseSymbols);
+	}
+	
+	/** 
+	 * Returns a table with the distinct lowercase values of this table. 
+	 * It is computed once on first access, unless it has been restored from 
+	 * a {@link CorpusIndex}, and then shared by all callers.
+	 * 
+	 * @see #getLowercaseIds()
+	 */
+	public synchronized SymbolTable getLowercaseSymbols() {
+		foldCase();
+		return lowercaseSymbols;
+	}
+	
+	/** 
+	 * Returns for every id of this table the id of its lowercase value in 
+	 * {@link #getLowercaseSymbols()}. The returned array must not be modified.
+	 */
+	public synchronized int[] getLowercaseIds() {
+		foldCase();
+		return lowercaseIds;
+	}
+}
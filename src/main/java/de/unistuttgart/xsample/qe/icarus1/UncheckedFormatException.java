@@ -0,0 +1,46 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Wraps an {@link UnsupportedFormatException} with an unchecked exception,
+ * analogous to {@link java.io.UncheckedIOException}. Used where sentences
+ * are read lazily from code that cannot declare checked exceptions.
+ * 
+ * @author Markus Gärtner
+ *
+ */
+public class UncheckedFormatException extends RuntimeException {
+
+	private static final long serialVersionUID = -3358210725408413792L;
+
+	public UncheckedFormatException(UnsupportedFormatException cause) {
+		super(requireNonNull(cause));
+	}
+
+	public UncheckedFormatException(String message, UnsupportedFormatException cause) {
+		super(message, requireNonNull(cause));
+	}
+
+	/** Returns the wrapped {@link UnsupportedFormatException} */
+	@Override
+	public synchronized UnsupportedFormatException getCause() {
+		return (UnsupportedFormatException) super.getCause();
+	}
+}
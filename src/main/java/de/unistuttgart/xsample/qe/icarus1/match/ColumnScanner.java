@@ -0,0 +1,74 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1.match;
+
+import static java.util.Objects.requireNonNull;
+
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint.SymbolConstraint;
+
+/**
+ * Evaluates a query that consists of a single node with only {@link SymbolConstraint#isEncoded() encoded}
+ * constraints directly on the symbol columns of a {@link ColumnarCorpus}.
+ * This bypasses the {@link TargetTree} and matcher graph entirely: a sentence
+ * matches as soon as one of its tokens satisfies all constraints.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ * @see SearchPlanner#createScanner()
+ */
+public class ColumnScanner {
+
+	private final ColumnarCorpus corpus;
+	private final SymbolConstraint[] constraints;
+	/** Symbol ids for all tokens, aligned with {@link #constraints} */
+	private final int[][] columns;
+
+	ColumnScanner(ColumnarCorpus corpus, SymbolConstraint[] constraints) {
+		this.corpus = requireNonNull(corpus);
+		this.constraints = requireNonNull(constraints);
+
+		columns = new int[constraints.length][];
+		for (int i = 0; i < constraints.length; i++) {
+			columns[i] = requireNonNull(constraints[i].getColumn(corpus));
+		}
+	}
+
+	/** Returns {@code true} if any token of the given sentence satisfies all constraints. */
+	public boolean matches(int sentence) {
+		final int begin = corpus.offset(sentence);
+		final int end = begin + corpus.length(sentence);
+		for (int token = begin; token < end; token++) {
+			if(matchesToken(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesToken(int token) {
+		for (int i = 0; i < constraints.length; i++) {
+			if(!constraints[i].matchesSymbol(columns[i][token])) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
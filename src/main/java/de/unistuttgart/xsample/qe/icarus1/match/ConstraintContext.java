@@ -29,10 +29,12 @@ import java.util.Set;
 import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.DirectionConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.DistanceConstraintFactory;
+import de.unistuttgart.xsample.qe.icarus1.match.cs.FeatureConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.FeaturesConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.FormConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.LemmaConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.PosConstraintFactory;
+import de.unistuttgart.xsample.qe.icarus1.match.cs.ProjectivityConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.RelationConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.SentencePropertyConstraintFactory;
 import de.unistuttgart.xsample.qe.icarus1.match.cs.WordPositionConstraintFactory;
@@ -294,6 +296,8 @@ public class ConstraintContext {
 		context.registerFactory(LanguageConstants.WORD_PROPERTY_KEY, WordPropertyConstraintFactory.class);
 		
 		context.registerFactory(LanguageConstants.DEPREL_KEY, RelationConstraintFactory.class);
+		context.registerFactory(ProjectivityConstraintFactory.TOKEN, ProjectivityConstraintFactory.class);
+		context.registerFactory(FeatureConstraintFactory.TOKEN, FeatureConstraintFactory.class);
 		//TODO
 		
 		return context;
@@ -73,6 +73,7 @@ public class DisjunctionMatcher extends Matcher {
 
 	@Override
 	public boolean matches() {
+		final long begin = beginProfiling();
 		
 		boolean matched = false;
 		
@@ -93,6 +94,7 @@ public class DisjunctionMatcher extends Matcher {
 			}
 		}
 			
+		endProfiling(begin);
 		return matched;
 	}
 }
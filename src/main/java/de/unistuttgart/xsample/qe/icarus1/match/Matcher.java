@@ -57,6 +57,9 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 	protected int childCount;
 	protected NodeType type;
 
+	/** Counters for profiling, {@code null} unless profiling is active */
+	protected MatcherStats stats;
+
 	protected boolean exhaustive = false;
 	protected SearchMode searchMode = SearchMode.MATCHES;
 	protected boolean leftToRight = true;
@@ -85,32 +88,33 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 		}
 	}
 
-	public void prepare() {
+	public void prepare(Search search) {
 		if(constraints!=null) {
 			for(SearchConstraint constraint : constraints) {
-				constraint.prepare();
+				constraint.prepare(search);
 			}
 		}
 
 		if(next!=null) {
-			next.prepare();
+			next.prepare(search);
 		}
 		if(alternate!=null) {
-			alternate.prepare();
+			alternate.prepare(search);
 		}
 		if(exclusions!=null) {
 			for(Matcher matcher : exclusions) {
-				matcher.prepare();
+				matcher.prepare(search);
 			}
 		}
 		if(options!=null) {
 			for(Matcher matcher : options) {
-				matcher.prepare();
+				matcher.prepare(search);
 			}
 		}
 	}
 
 	public boolean matches() {
+		final long begin = beginProfiling();
 		int parentAllocation = parent.getAllocation();
 		targetTree.viewNode(parentAllocation);
 		indexIterator.setMax(targetTree.getEdgeCount()-1);
@@ -124,6 +128,9 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 			while(indexIterator.hasNext()) {
 				targetTree.viewNode(parentAllocation);
 				targetTree.viewChild(indexIterator.next());
+				if(stats!=null) {
+					stats.visited++;
+				}
 
 				// Honor locked nodes that are allocated to other matchers!
 				if(targetTree.isNodeLocked()) {
@@ -192,8 +199,24 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 			matched |= alternate.matches();
 		}
 
+		endProfiling(begin);
 		return matched;
 	}
+	
+	/** Returns the current time if profiling is active and counts the call. */
+	protected final long beginProfiling() {
+		if(stats==null) {
+			return 0L;
+		}
+		stats.calls++;
+		return System.nanoTime();
+	}
+	
+	protected final void endProfiling(long begin) {
+		if(stats!=null) {
+			stats.time += System.nanoTime()-begin;
+		}
+	}
 
 	/**
 	 * Returns {@code true} if at least on of the
@@ -233,7 +256,11 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 	protected boolean matchesNext() {
 		if(next!=null) {
 			// Delegate to next matcher
-			return next.matches();
+			final boolean matched = next.matches();
+			if(matched && stats!=null) {
+				stats.matches++;
+			}
+			return matched;
 		} else if(!exclusionMember) {
 			// ONLY cache here if this matcher is not a
 			// member of a sub-tree that serves as exclusion
@@ -247,6 +274,9 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 			//return true;
 		}
 
+		if(stats!=null) {
+			stats.matches++;
+		}
 		// return false
 		return true;
 	}
@@ -255,6 +285,9 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 		if(constraints==null) {
 			return true;
 		}
+		if(stats!=null) {
+			return matchesConstraintsProfiled();
+		}
 
 		for(SearchConstraint constraint : constraints) {
 			if(!constraint.matches(getTargetTree())) {
@@ -265,6 +298,18 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 		return true;
 	}
 
+	private boolean matchesConstraintsProfiled() {
+		for (int i = 0; i < constraints.length; i++) {
+			stats.evaluations[i]++;
+			if(!constraints[i].matches(getTargetTree())) {
+				stats.rejections[i]++;
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	public int getAllocation() {
 		return allocation;
 	}
@@ -275,6 +320,9 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 	}
 
 	protected void allocate() {
+		if(stats!=null) {
+			stats.allocations++;
+		}
 		targetTree.lockNode();
 		allocation = targetTree.getNodeIndex();
 	}
@@ -435,6 +483,10 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 		return descendantCount;
 	}
 
+	MatcherStats getStats() {
+		return stats;
+	}
+
 	public void setExclusionMember(boolean exclusionMember) {
 		this.exclusionMember = exclusionMember;
 	}
@@ -579,6 +631,32 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 		}
 	}
 
+	/** 
+	 * Enables or disables the collection of {@link MatcherStats} for this
+	 * matcher and all matchers reachable from it. Enabling discards
+	 * previously collected counters.
+	 */
+	public void setProfiling(boolean profiling) {
+		stats = profiling ? new MatcherStats(constraints==null ? 0 : constraints.length) : null;
+
+		if(next!=null) {
+			next.setProfiling(profiling);
+		}
+		if(alternate!=null) {
+			alternate.setProfiling(profiling);
+		}
+		if(exclusions!=null) {
+			for(Matcher matcher : exclusions) {
+				matcher.setProfiling(profiling);
+			}
+		}
+		if(options!=null) {
+			for(Matcher option : options) {
+				option.setProfiling(profiling);
+			}
+		}
+	}
+
 	protected void innerClose() {
 		// for subclasses
 	}
@@ -630,6 +708,13 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 		return id-other.id;
 	}
 
+	/**
+	 * Creates a shallow copy of this matcher. All the state that is
+	 * modified during matching (allocation, index iterator and profiling counters) is
+	 * reset for the clone, so that original and clone can safely be 
+	 * used on different threads with different {@link TargetTree} 
+	 * instances.
+	 */
 	@Override
 	public Matcher clone() {
 		Matcher clone = null;
@@ -640,6 +725,13 @@ public class Matcher implements Cloneable, Comparable<Matcher> {
 			throw new IllegalStateException("Cannot clone cloneable super type: "+getClass(), e); //$NON-NLS-1$
 		}
 
+		clone.indexIterator = indexIterator.clone();
+		clone.allocation = -1;
+		clone.targetTree = null;
+		if(stats!=null) {
+			clone.stats = new MatcherStats(stats.evaluations.length);
+		}
+
 		return clone;
 	}
 
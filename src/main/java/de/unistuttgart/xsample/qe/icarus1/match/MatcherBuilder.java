@@ -19,6 +19,7 @@ package de.unistuttgart.xsample.qe.icarus1.match;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -51,6 +52,9 @@ public class MatcherBuilder {
 
 	protected MatcherLinker linker;
 
+	/** Only available for {@link SearchUtils#isOptimizedSearch(Search) optimized} searches */
+	protected SelectivityEstimator estimator;
+
 	public MatcherBuilder(Search search) {
 		if(search==null)
 			throw new NullPointerException("Invalid search"); //$NON-NLS-1$
@@ -71,6 +75,8 @@ public class MatcherBuilder {
 		idMap = new HashMap<>();
 		idGen = new AtomicInteger();
 		nodeMap = new HashMap<>();
+		estimator = SearchUtils.isOptimizedSearch(search) ? 
+				new SelectivityEstimator(search.getCorpus()) : null;
 
 		SearchGraph graph = search.getQuery().getSearchGraph();
 		graph = SearchUtils.instantiate(graph,
@@ -90,6 +96,17 @@ public class MatcherBuilder {
 			optimizeTree(node);
 		}
 
+		// Order siblings so that the most selective ones get matched first
+		if(estimator!=null) {
+			// Disjunctive roots must keep their order
+			if(!isDisjunction) {
+				orderChildren(tree);
+			}
+			for(TreeNode node : tree.getChildren()) {
+				orderTree(node);
+			}
+		}
+
 		// Create all plain matchers
 		for(int i=0; i<tree.getChildCount(); i++) {
 			createMatcher0(null, tree.getChildAt(i), false);
@@ -268,6 +285,88 @@ public class MatcherBuilder {
 		}
 	}
 
+	protected void orderTree(TreeNode tree) {
+		if(!tree.isDisjunction()) {
+			orderChildren(tree);
+		}
+
+		for(int i=0; i<tree.getChildCount(); i++) {
+			orderTree(tree.getChildAt(i));
+		}
+
+		if(tree.getAlternate()!=null) {
+			orderTree(tree.getAlternate());
+		}
+	}
+
+	/**
+	 * Sorts the children of the given node by ascending {@link #estimate(TreeNode) estimate}.
+	 * Since only unnegated and non-disjunctive children are linked in sequence, all 
+	 * other children are treated as equal and the stable sort keeps their order.
+	 * <p>
+	 * A {@link TransitiveMatcher} locks every node on the path to its allocation,
+	 * hiding those nodes from all matchers that run after it. The result then
+	 * depends on the order of siblings, so siblings are left untouched as soon
+	 * as one of their subtrees contains a transitive edge.
+	 */
+	protected void orderChildren(TreeNode tree) {
+		List<TreeNode> children = tree.getChildren();
+		if(children==null || children.size()<2) {
+			return;
+		}
+		for(TreeNode child : children) {
+			if(containsTransitiveEdge(child)) {
+				return;
+			}
+		}
+
+		Map<TreeNode, Double> estimates = new HashMap<>();
+		for(TreeNode child : children) {
+			estimates.put(child, Double.valueOf(isRequired(child) ? estimate(child) : 1.0));
+		}
+
+		children.sort(Comparator.comparing(estimates::get));
+	}
+
+	private static boolean containsTransitiveEdge(TreeNode node) {
+		SearchEdge edge = node.getSearchEdge();
+		if(edge!=null && edge.getEdgeType()==EdgeType.TRANSITIVE) {
+			return true;
+		}
+		for(int i=0; i<node.getChildCount(); i++) {
+			if(containsTransitiveEdge(node.getChildAt(i))) {
+				return true;
+			}
+		}
+		return node.getAlternate()!=null && containsTransitiveEdge(node.getAlternate());
+	}
+
+	private static boolean isRequired(TreeNode node) {
+		return !node.isNegated() && !node.isDisjunction() && node.getAlternate()==null;
+	}
+
+	/**
+	 * Estimates the share of sentences that contain a match for the subtree 
+	 * rooted at the given node, considering only its own constraints and 
+	 * the ones of required descendants.
+	 */
+	protected double estimate(TreeNode node) {
+		SearchEdge edge = node.getSearchEdge();
+		double value = estimator.estimate(node.getSearchNode().getConstraints());
+		if(edge!=null) {
+			value *= estimator.estimate(edge.getConstraints());
+		}
+
+		for(int i=0; i<node.getChildCount(); i++) {
+			TreeNode child = node.getChildAt(i);
+			if(isRequired(child)) {
+				value *= estimate(child);
+			}
+		}
+
+		return value;
+	}
+
 	protected void invert(Collection<TreeNode> nodes) {
 		for(TreeNode node : nodes) {
 			node.setNegated(!node.isNegated());
@@ -411,15 +510,21 @@ public class MatcherBuilder {
 
 		// Load constraints
 		List<SearchConstraint> constraints = new ArrayList<>();
-		if(edge!=null) {
+		if(edge!=null && edge.getConstraints()!=null) {
 			Collections.addAll(constraints, edge.getConstraints());
 		}
-		Collections.addAll(constraints, node.getConstraints());
+		if(node.getConstraints()!=null) {
+			Collections.addAll(constraints, node.getConstraints());
+		}
 		for(Iterator<SearchConstraint> i = constraints.iterator(); i.hasNext();) {
 			if(i.next().isUndefined()) {
 				i.remove();
 			}
 		}
+		// Unsatisfiable or rare constraints first, expensive ones last
+		if(estimator!=null) {
+			constraints.sort(Comparator.comparingDouble(estimator::rank));
+		}
 		matcher.setConstraints(constraints.isEmpty() ? null : constraints.toArray(new SearchConstraint[0]));
 
 		matcher.setExclusionMember(exclusionMember);
@@ -0,0 +1,62 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1.match;
+
+/**
+ * Counters collected by a single {@link Matcher} while profiling is active.
+ * Instances are not thread-safe. Every clone of a matcher graph gets its own
+ * set of counters, which are added up once the clone has finished.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+final class MatcherStats {
+	
+	/** Number of invocations of {@link Matcher#matches()} */
+	long calls;
+	/** Number of candidate nodes the matcher looked at */
+	long visited;
+	/** Number of nodes the matcher got allocated to */
+	long allocations;
+	/** Number of allocations that led to a successful match */
+	long matches;
+	/** Time spent in {@link Matcher#matches()}, including delegation to other matchers */
+	long time;
+	
+	/** Number of times each constraint got evaluated */
+	final long[] evaluations;
+	/** Number of times each constraint rejected a node */
+	final long[] rejections;
+	
+	MatcherStats(int constraintCount) {
+		evaluations = new long[constraintCount];
+		rejections = new long[constraintCount];
+	}
+	
+	void add(MatcherStats other) {
+		calls += other.calls;
+		visited += other.visited;
+		allocations += other.allocations;
+		matches += other.matches;
+		time += other.time;
+		for (int i = 0; i < evaluations.length; i++) {
+			evaluations[i] += other.evaluations[i];
+			rejections[i] += other.rejections[i];
+		}
+	}
+}
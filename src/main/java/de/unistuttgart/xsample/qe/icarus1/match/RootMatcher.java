@@ -31,6 +31,7 @@ public class RootMatcher extends Matcher {
 
 	@Override
 	public boolean matches() {
+		final long begin = beginProfiling();
 
 		int nodeCount = targetTree.size();
 
@@ -44,6 +45,9 @@ public class RootMatcher extends Matcher {
 //		if(minIndex<=maxIndex) {
 			while(indexIterator.hasNext()) {
 				targetTree.viewNode(indexIterator.next());
+				if(stats!=null) {
+					stats.visited++;
+				}
 
 				// Honor locked nodes that are allocated to other matchers!
 				if(targetTree.isNodeLocked()) {
@@ -64,14 +68,15 @@ public class RootMatcher extends Matcher {
 					continue;
 				}
 
-				// Check for structural constraints
-				if(targetTree.getDescendantCount()<descendantCount
-						|| targetTree.getHeight()<height) {
+				// Check for structural constraints, only consulting the tree if needed 
+				// (every node has a height of at least 1)
+				if((descendantCount>0 && targetTree.getDescendantCount()<descendantCount)
+						|| (height>1 && targetTree.getHeight()<height)) {
 					continue;
 				}
 
 				// Check for required number of children
-				if(targetTree.getEdgeCount()<childCount) {
+				if(childCount>0 && targetTree.getEdgeCount()<childCount) {
 					continue;
 				}
 
@@ -115,6 +120,7 @@ public class RootMatcher extends Matcher {
 			}
 		}
 
+		endProfiling(begin);
 		return matched;
 	}
 }
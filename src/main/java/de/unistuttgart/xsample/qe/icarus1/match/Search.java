@@ -18,15 +18,26 @@ package de.unistuttgart.xsample.qe.icarus1.match;
 
 import static de.unistuttgart.xsample.util.XSampleUtils.checkState;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.unistuttgart.xsample.qe.Result;
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.CompactProperties;
 import de.unistuttgart.xsample.qe.icarus1.Options;
 import de.unistuttgart.xsample.qe.icarus1.SentenceData;
+import de.unistuttgart.xsample.qe.icarus1.SentenceDataReader;
+import de.unistuttgart.xsample.qe.icarus1.UncheckedFormatException;
+import de.unistuttgart.xsample.qe.icarus1.UnsupportedFormatException;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongList;
 
@@ -37,19 +48,32 @@ import it.unimi.dsi.fastutil.longs.LongList;
  *
  */
 public class Search {
+	
+	/** Lower bound for the number of tokens handled by a single parallel task */
+	private static final long MIN_CHUNK_TOKENS = 1 << 14;
+	
+	/** Number of tasks to create per worker thread to allow for work stealing */
+	private static final int CHUNKS_PER_WORKER = 8;
+	
+	/** Number of sentences between two checks for cancellation, deadline and progress, must be a power of 2 */
+	private static final int CHECK_INTERVAL = 1 << 8;
 
 	private SearchState state = SearchState.BLANK;
 
 	private Object lock = new Object();
 
 	private final List<SentenceData> target;
+	/** Alternative to {@link #target} for streaming searches */
+	private final SentenceDataReader source;
+	/** Backing storage of {@link #target} if available */
+	private final ColumnarCorpus corpus;
 	private final SearchQuery query;
 
 	private AtomicBoolean cancelled = new AtomicBoolean();
 
 	private CompactProperties properties;
 
-	private int progress = 0;
+	private volatile int progress = 0;
 
 	private final Options parameters;
 
@@ -58,6 +82,30 @@ public class Search {
 	private Matcher rootMatcher;
 	
 	private Result result = new Result();
+	
+	/** Number of sentences visited by the search so far */
+	private int processed = 0;
+	
+	/** Maximum number of hits to collect, {@code 0} for no limit */
+	private int resultLimit;
+	/** Value of {@link System#nanoTime()} at which the search has to stop, only valid if {@link #hasDeadline} */
+	private long deadline;
+	private boolean hasDeadline;
+	
+	/** Number of hits found so far, only maintained if there is a {@link #resultLimit} */
+	private final AtomicInteger hitCount = new AtomicInteger();
+	/** Number of sentences visited so far, updated in steps of {@link #CHECK_INTERVAL} */
+	private final AtomicInteger visited = new AtomicInteger();
+	/** Signals that the search stopped before visiting all sentences */
+	private volatile boolean truncated = false;
+	
+	/** Collect {@link MatcherStats} for a {@link SearchProfile} */
+	private boolean profiling;
+	/** Number of sentences passed to the matchers, only maintained if {@link #profiling} */
+	private final AtomicInteger candidateCount = new AtomicInteger();
+	
+	/** Ascending indices of the only sentences that can contain a match, {@code null} if unrestricted */
+	private int[] restriction;
 
 	public Search(SearchQuery query, Options parameters, List<SentenceData> target) {
 		if(query==null)
@@ -71,6 +119,54 @@ public class Search {
 
 		this.query = query;
 		this.target = target;
+		this.source = null;
+		this.corpus = null;
+		this.parameters = parameters.clone();
+	}
+
+	/**
+	 * Creates a search over all the sentences of the given {@code corpus}.
+	 * Constraints are able to exploit the {@link ColumnarCorpus#getPosSymbols() symbol tables}
+	 * of the corpus and compare annotations by their ids.
+	 */
+	public Search(SearchQuery query, Options parameters, ColumnarCorpus corpus) {
+		if(query==null)
+			throw new NullPointerException("Invalid query"); //$NON-NLS-1$
+		if(corpus==null)
+			throw new NullPointerException("Invalid corpus"); //$NON-NLS-1$
+
+		if(parameters==null) {
+			parameters = Options.emptyOptions;
+		}
+
+		this.query = query;
+		this.target = corpus.sentences();
+		this.source = null;
+		this.corpus = corpus;
+		this.parameters = parameters.clone();
+	}
+
+	/**
+	 * Creates a streaming search that pulls sentences one by one from the 
+	 * given {@code source} and discards them after matching. The reader
+	 * must already have been {@link SentenceDataReader#init(java.io.Reader, Options) initialized}.
+	 * Since the total number of sentences is unknown upfront, no meaningful
+	 * progress can be reported for such a search.
+	 */
+	public Search(SearchQuery query, Options parameters, SentenceDataReader source) {
+		if(query==null)
+			throw new NullPointerException("Invalid query"); //$NON-NLS-1$
+		if(source==null)
+			throw new NullPointerException("Invalid source"); //$NON-NLS-1$
+
+		if(parameters==null) {
+			parameters = Options.emptyOptions;
+		}
+
+		this.query = query;
+		this.target = null;
+		this.source = source;
+		this.corpus = null;
 		this.parameters = parameters.clone();
 	}
 
@@ -97,6 +193,7 @@ public class Search {
 			throw new IllegalStateException("Invalid root matcher created"); //$NON-NLS-1$
 
 		rootMatcher.setLeftToRight(SearchUtils.isLeftToRightSearch(this));
+		rootMatcher.prepare(this);
 	}
 
 	private final void setState(SearchState state) {
@@ -127,9 +224,55 @@ public class Search {
 		return query;
 	}
 
+	/** Returns the target sentences or {@code null} for a {@link #isStreaming() streaming} search. */
 	public final List<SentenceData> getTarget() {
 		return target;
 	}
+	
+	public final boolean isStreaming() {
+		return source!=null;
+	}
+	
+	/** Returns the corpus backing the target sentences or {@code null} if not available. */
+	public final ColumnarCorpus getCorpus() {
+		return corpus;
+	}
+	
+	/** 
+	 * Returns the ascending indices of the sentences this search has been
+	 * {@link #setRestriction(int[]) restricted} to or {@code null}.
+	 */
+	public final int[] getRestriction() {
+		return restriction;
+	}
+	
+	/**
+	 * Restricts this search to the given ascending sentence indices. Callers
+	 * must guarantee that all sentences outside of {@code restriction} fail
+	 * to match the query, e.g. because it has been obtained by evaluating a
+	 * more general query on the same target. Not supported for 
+	 * {@link #isStreaming() streaming} searches.
+	 * 
+	 * @param restriction the candidate sentences or {@code null} to visit all
+	 */
+	public final void setRestriction(int[] restriction) {
+		if(isStreaming())
+			throw new IllegalStateException("Cannot restrict streaming search"); //$NON-NLS-1$
+		if(getState()!=SearchState.BLANK)
+			throw new IllegalStateException("Search already started"); //$NON-NLS-1$
+		if(restriction!=null) {
+			for (int i = 0; i < restriction.length; i++) {
+				if(restriction[i]<0 || restriction[i]>=target.size() || (i>0 && restriction[i]<=restriction[i-1]))
+					throw new IllegalArgumentException("Invalid restriction at index "+i+": "+restriction[i]); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		this.restriction = restriction;
+	}
+	
+	/** Returns the number of sentences visited by this search so far. */
+	public final int getProcessed() {
+		return processed;
+	}
 
 	public final Object getProperty(String key) {
 		return properties==null ? null : properties.get(key);
@@ -209,16 +352,77 @@ public class Search {
 	 * cancellation by invoking {@link #isCancelled()}.
 	 */
 	public final void execute() {
-		if(isDone())
-			throw new IllegalStateException("Cannot reuse search instance"); //$NON-NLS-1$
-
-		setState(SearchState.BLANK, SearchState.RUNNING);
+		synchronized (lock) {
+			// Cancelled before we even started, so report an empty partial result
+			if(isCancelled()) {
+				truncated = true;
+				result.setTruncated(true);
+				return;
+			}
+			if(isDone())
+				throw new IllegalStateException("Cannot reuse search instance"); //$NON-NLS-1$
+	
+			setState(SearchState.BLANK, SearchState.RUNNING);
+		}
 
 		beginTimestamp = Instant.now();
+		
+		resultLimit = Math.max(0, SearchUtils.getResultLimit(this));
+		profiling = SearchUtils.isProfiling(this);
+		final long timeout = SearchUtils.getTimeout(this);
+		hasDeadline = timeout>0;
+		if(hasDeadline) {
+			deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		}
 
-		if(!innerExecute() && isRunning()) {
-			setState(SearchState.RUNNING, SearchState.DONE);
+		innerExecute();
+		
+		synchronized (lock) {
+			// Do not overwrite a cancellation that happened in the meantime
+			if(state==SearchState.RUNNING) {
+				setState(SearchState.DONE);
+			}
+		}
+		
+		endTimestamp = Instant.now();
+	}
+	
+	/** 
+	 * Returns whether the search stopped early due to {@link #cancel() cancellation},
+	 * its {@link SearchParameters#SEARCH_TIMEOUT deadline} or the 
+	 * {@link SearchParameters#SEARCH_RESULT_LIMIT result limit}.
+	 */
+	public final boolean isTruncated() {
+		return truncated;
+	}
+	
+	/**
+	 * Checks whether the search needs to stop before visiting all sentences
+	 * and marks it as {@link #isTruncated() truncated} in that case.
+	 */
+	private boolean checkStop() {
+		if(truncated) {
+			return true;
+		}
+		if(cancelled.get() 
+				|| (hasDeadline && System.nanoTime()-deadline>=0)
+				|| (resultLimit>0 && hitCount.get()>=resultLimit)) {
+			truncated = true;
 		}
+		return truncated;
+	}
+	
+	/** 
+	 * Called every {@link #CHECK_INTERVAL} sentences to report {@code count} 
+	 * newly visited sentences. Updates the progress if the {@code total} 
+	 * number of sentences is known and then checks whether to stop.
+	 */
+	private boolean checkpoint(int count, int total) {
+		final int current = visited.addAndGet(count);
+		if(total>0) {
+			updateProgress((int) (current * 100L / total));
+		}
+		return checkStop();
 	}
 
 	/**
@@ -228,34 +432,274 @@ public class Search {
 	 * execution to take place it can immediately return a
 	 * value of {@code false} to signal an early exit. The search
 	 * will then set its state to {@value SearchState#DONE}.
+	 * <p>
+	 * Cancellation, the deadline and the result limit are checked every 
+	 * {@link #CHECK_INTERVAL} sentences. If the search stops early, the
+	 * result contains the hits found so far and is marked as truncated.
+	 * For parallel searches it is unspecified which hits make it into a
+	 * result that got truncated due to the result limit.
+	 * 
 	 * @return {@code true} if and only if the search operation
 	 * was successfully scheduled.
 	 */
 	private boolean innerExecute() {
 		
 		final TargetTree targetTree = new TargetTree();
-		final LongList matches = new LongArrayList(target.size());
+		targetTree.setLazy(!new SearchPlanner(this, rootMatcher).needsStructure());
+		final LongList matches = isStreaming() ? new LongArrayList() : new LongArrayList(target.size());
 		
 		rootMatcher.setTargetTree(targetTree);
 		rootMatcher.setSearchMode(SearchMode.MATCHES);
 		rootMatcher.setLeftToRight(true);
+		rootMatcher.setProfiling(profiling);
 		
-		for (int i=0; i<target.size(); i++) {
-			SentenceData sentence = target.get(i);
-			targetTree.reload(sentence, Options.emptyOptions);
+		if(isStreaming()) {
+			final int[] lengthBounds = new SearchPlanner(this, rootMatcher).findLengthBounds();
+			SentenceData sentence;
+			while((sentence = nextSentence()) != null) {
+				final int index = processed++;
+				final boolean candidate = lengthBounds==null 
+						|| (sentence.length()>=lengthBounds[0] && sentence.length()<=lengthBounds[1]);
+				if(candidate && match(index, sentence, rootMatcher, targetTree, matches) && limitReached()) {
+					break;
+				}
+				// Total amount of sentences is unknown, so no progress to report
+				if((processed & (CHECK_INTERVAL-1))==0 && checkpoint(CHECK_INTERVAL, 0)) {
+					break;
+				}
+			}
+		} else {
+			final SearchPlanner planner = new SearchPlanner(this, rootMatcher);
+			final int[] candidates = planner.findCandidates();
+			final int size = candidates==null ? target.size() : candidates.length;
+			// Profiling relies on the matcher graph collecting its statistics
+			final ColumnScanner scanner = profiling ? null : planner.createScanner();
+			
+			if(SearchUtils.isParallelSearch(this) && size>1) {
+				executeParallel(candidates, size, scanner, matches);
+			} else {
+				int pending = 0;
+				for (int i=0; i<size; i++) {
+					if(pending==CHECK_INTERVAL) {
+						pending = 0;
+						if(checkpoint(CHECK_INTERVAL, size)) {
+							break;
+						}
+					}
+					final int index = candidates==null ? i : candidates[i];
+					final boolean matched = scanner!=null ? match(index, scanner, matches) 
+							: match(index, target.get(index), rootMatcher, targetTree, matches);
+					pending++;
+					if(matched && limitReached()) {
+						break;
+					}
+				}
+				visited.addAndGet(pending);
+			}
 			
-			if(rootMatcher.matches()) {
-				matches.add(i);
+			if(truncated) {
+				processed = visited.get();
+			} else {
+				// Sentences skipped by the planner count as processed
+				processed = target.size();
 			}
 		}
 		
-		result.setHits(matches.toLongArray());
+		// Parallel tasks can overshoot the limit before noticing it
+		if(resultLimit>0 && matches.size()>resultLimit) {
+			matches.size(resultLimit);
+			truncated = true;
+		}
 		
-		setState(SearchState.RUNNING, SearchState.DONE);
+		if(!truncated) {
+			updateProgress(100);
+		}
+		
+		result.setHits(matches.toLongArray());
+		result.setTruncated(truncated);
 		
 		return !matches.isEmpty();
 	}
 	
+	/** Returns {@code true} if the given sentence matched. */
+	private boolean match(int index, SentenceData sentence, Matcher matcher, TargetTree targetTree, LongList matches) {
+		targetTree.reload(sentence, Options.emptyOptions);
+		if(profiling) {
+			candidateCount.incrementAndGet();
+		}
+		
+		if(matcher.matches()) {
+			addHit(index, matches);
+			return true;
+		}
+		return false;
+	}
+	
+	/** Returns {@code true} if the given sentence matched, evaluated directly on the corpus columns. */
+	private boolean match(int index, ColumnScanner scanner, LongList matches) {
+		if(scanner.matches(index)) {
+			addHit(index, matches);
+			return true;
+		}
+		return false;
+	}
+	
+	private void addHit(int index, LongList matches) {
+		matches.add(index);
+		if(resultLimit>0) {
+			hitCount.incrementAndGet();
+		}
+	}
+	
+	/** Checks the result limit right after a hit, so that we don't need to wait for the next checkpoint */
+	private boolean limitReached() {
+		return resultLimit>0 && hitCount.get()>=resultLimit && checkStop();
+	}
+	
+	/**
+	 * Splits the target range into chunks of roughly equal token count
+	 * and matches them on the shared {@link ForkJoinPool}. Since sentence
+	 * lengths can vary greatly, splitting is done based on token counts
+	 * instead of sentence counts and idle workers can steal remaining chunks.
+	 * 
+	 * @param candidates indices of the sentences to visit or {@code null} to visit all
+	 * @param size number of sentences to visit
+	 * @param scanner shared evaluator for queries that bypass the matcher graph or {@code null}
+	 */
+	private void executeParallel(int[] candidates, int size, ColumnScanner scanner, LongList matches) {
+		final long[] tokens = new long[size+1];
+		for (int i = 0; i < size; i++) {
+			final int index = candidates==null ? i : candidates[i];
+			tokens[i+1] = tokens[i] + target.get(index).length();
+		}
+		
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		final long threshold = Math.max(MIN_CHUNK_TOKENS, 
+				tokens[size] / (pool.getParallelism() * CHUNKS_PER_WORKER));
+		
+		matches.addAll(pool.invoke(new MatchTask(0, size, candidates, tokens, threshold, scanner)));
+	}
+	
+	/**
+	 * Matches a range of sentences, either directly or by splitting it
+	 * in two halves of similar token count. Every task that performs 
+	 * actual matching uses its own clone of the matcher graph and its
+	 * own {@link TargetTree}, unless a {@link ColumnScanner} is shared
+	 * among all tasks. Hits are returned in ascending order.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	private class MatchTask extends RecursiveTask<LongList> {
+
+		private static final long serialVersionUID = -7541232924658290432L;
+		
+		/** Range of sentences, from inclusive, to exclusive */
+		private final int from, to;
+		/** Maps positions in the range to sentence indices, {@code null} for identity */
+		private final int[] candidates;
+		/** Prefix sums of sentence lengths */
+		private final long[] tokens;
+		private final long threshold;
+		private final ColumnScanner scanner;
+		
+		MatchTask(int from, int to, int[] candidates, long[] tokens, long threshold, ColumnScanner scanner) {
+			this.from = from;
+			this.to = to;
+			this.candidates = candidates;
+			this.tokens = tokens;
+			this.threshold = threshold;
+			this.scanner = scanner;
+		}
+
+		@Override
+		protected LongList compute() {
+			if(checkStop()) {
+				return new LongArrayList();
+			}
+			
+			if(to-from>1 && tokens[to]-tokens[from]>threshold) {
+				final int mid = split();
+				final MatchTask left = new MatchTask(from, mid, candidates, tokens, threshold, scanner);
+				final MatchTask right = new MatchTask(mid, to, candidates, tokens, threshold, scanner);
+				right.fork();
+				final LongList hits = left.compute();
+				hits.addAll(right.join());
+				return hits;
+			}
+			
+			Matcher matcher = null;
+			TargetTree targetTree = null;
+			if(scanner==null) {
+				matcher = new MatcherBuilder(Search.this).cloneMatcher(rootMatcher);
+				targetTree = new TargetTree();
+				targetTree.setLazy(rootMatcher.getTargetTree().isLazy());
+				matcher.setTargetTree(targetTree);
+			}
+			
+			final LongList hits = new LongArrayList();
+			final int total = tokens.length-1;
+			int pending = 0;
+			for (int i = from; i < to; i++) {
+				if(pending==CHECK_INTERVAL) {
+					pending = 0;
+					if(checkpoint(CHECK_INTERVAL, total)) {
+						break;
+					}
+				}
+				final int index = candidates==null ? i : candidates[i];
+				final boolean matched = scanner!=null ? match(index, scanner, hits) 
+						: match(index, target.get(index), matcher, targetTree, hits);
+				pending++;
+				if(matched && limitReached()) {
+					break;
+				}
+			}
+			visited.addAndGet(pending);
+			if(profiling) {
+				mergeStats(matcher);
+			}
+			return hits;
+		}
+		
+		/** Find the sentence index that divides the range into halves of similar token count */
+		private int split() {
+			final long center = tokens[from] + (tokens[to]-tokens[from])/2;
+			int mid = Arrays.binarySearch(tokens, from+1, to, center);
+			if(mid<0) {
+				mid = -mid-1;
+			}
+			return Math.max(from+1, Math.min(mid, to-1));
+		}
+	}
+	
+	/** Adds the counters of a cloned matcher graph to the original one */
+	private void mergeStats(Matcher clone) {
+		final List<Matcher> targets = SearchProfile.collect(rootMatcher);
+		final List<Matcher> sources = SearchProfile.collect(clone);
+		synchronized (rootMatcher) {
+			for (int i = 0; i < targets.size(); i++) {
+				targets.get(i).getStats().add(sources.get(i).getStats());
+			}
+		}
+	}
+	
+	/**
+	 * Fetches the next sentence from the streaming source. Since the search
+	 * API does not allow checked exceptions during execution, I/O errors 
+	 * are forwarded as {@link UncheckedIOException} and malformed data as
+	 * {@link UncheckedFormatException}. 
+	 */
+	private SentenceData nextSentence() {
+		try {
+			return source.next();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (UnsupportedFormatException e) {
+			throw new UncheckedFormatException(e);
+		}
+	}
+	
 	/**
 	 * @return the result
 	 */
@@ -263,6 +707,18 @@ public class Search {
 		return result;
 	}
 	
+	/**
+	 * Returns the report on how the individual matchers performed or {@code null}
+	 * if the search has not finished yet or ran without 
+	 * {@link SearchParameters#SEARCH_PROFILE profiling}.
+	 */
+	public SearchProfile getProfile() {
+		if(!profiling || endTimestamp==null) {
+			return null;
+		}
+		return SearchProfile.create(this, rootMatcher, candidateCount.get());
+	}
+	
 	public Duration getDuration() {
 		checkState("not started", beginTimestamp!=null);
 		checkState("not finished", endTimestamp!=null);
@@ -287,4 +743,14 @@ public class Search {
 		int oldProgress = progress;
 		progress = newProgress;
 	}
+	
+	/** 
+	 * Parallel tasks report their progress independently, so we only 
+	 * ever move forward and never beyond 100.
+	 */
+	private void updateProgress(int newProgress) {
+		synchronized (lock) {
+			setProgress(Math.max(progress, Math.min(100, newProgress)));
+		}
+	}
 }
@@ -17,8 +17,13 @@
 package de.unistuttgart.xsample.qe.icarus1.match;
 
 import java.io.Serializable;
+import java.util.BitSet;
+import java.util.regex.Pattern;
 
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.LanguageUtils;
+import de.unistuttgart.xsample.qe.icarus1.PostingsIndex;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
 
 
 /**
@@ -39,6 +44,12 @@ public class SearchConstraint implements Serializable, Cloneable {
 	private boolean active = true;
 
 	private SearchOperator operator;
+	
+	/** Compiled expression for {@link SearchOperator#MATCHES regex} operators, set during preparation */
+	private transient Pattern pattern;
+	
+	/** Reusable matchers for {@link #pattern}, one per thread since prepared constraints are shared */
+	private transient ThreadLocal<java.util.regex.Matcher> regexMatchers;
 
 	public SearchConstraint(String token, Object value, SearchOperator operator) {
 		init();
@@ -91,7 +102,21 @@ public class SearchConstraint implements Serializable, Cloneable {
 	 * @see de.ims.icarus.search_tools.SearchConstraint#matches(java.lang.Object)
 	 */
 	public boolean matches(Object value) {
-		return operator.apply(getInstance(value), getConstraint());
+		return matchesInstance(getInstance(value));
+	}
+	
+	/** Checks an instance as obtained via {@link #getInstance(Object)} against this constraint */
+	protected boolean matchesInstance(Object instance) {
+		if(pattern!=null) {
+			return matchesPattern(instance);
+		}
+		return operator.apply(instance, getConstraint());
+	}
+	
+	/** Same semantics as {@link SearchOperator#MATCHES} and {@link SearchOperator#MATCHES_NOT} */
+	private boolean matchesPattern(Object value) {
+		final boolean found = value!=null && regexMatchers.get().reset(value.toString()).find();
+		return operator==SearchOperator.MATCHES_NOT ? !found : found;
 	}
 
 	protected Object getConstraint() {
@@ -137,8 +162,28 @@ public class SearchConstraint implements Serializable, Cloneable {
 				token, operator.getSymbol(), value);
 	}
 
-	public void prepare() {
-		// nothing to do here
+	/**
+	 * Called once before the given {@code search} starts matching. Subclasses 
+	 * can use this hook to translate their value into a more efficient form.
+	 * Note that prepared constraints are shared between all threads of a 
+	 * parallel search and must not be modified afterwards.
+	 * <p>
+	 * The default implementation compiles the expression of 
+	 * {@link SearchOperator#MATCHES regex} constraints once, so that matching
+	 * neither recompiles it nor contends for a shared matcher cache.
+	 */
+	public void prepare(Search search) {
+		final Object constraint = getConstraint();
+		if((operator==SearchOperator.MATCHES || operator==SearchOperator.MATCHES_NOT)
+				&& constraint!=null && !constraint.toString().isEmpty()) {
+			// Do not catch PatternSyntaxException, an invalid expression must fail the search
+			final Pattern pattern = Pattern.compile(constraint.toString());
+			regexMatchers = ThreadLocal.withInitial(() -> pattern.matcher("")); //$NON-NLS-1$
+			this.pattern = pattern;
+		} else {
+			regexMatchers = null;
+			pattern = null;
+		}
 	}
 
 	public void setValue(Object value) {
@@ -253,4 +298,232 @@ public class SearchConstraint implements Serializable, Cloneable {
 			return (CaseInsensitiveConstraint) super.clone();
 		}
 	}
+	
+	/**
+	 * Constraint on a string annotation that is stored as {@link SymbolTable symbol} 
+	 * ids when searching a {@link ColumnarCorpus}. In that case the value of an 
+	 * {@link SearchOperator#EQUALS equality} constraint is translated into its id
+	 * once during {@link #prepare(Search) preparation} and subsequent checks only 
+	 * compare ids. {@link SearchOperator#MATCHES Regex} and {@link SearchOperator#CONTAINS
+	 * containment} constraints are evaluated once for every distinct value in the 
+	 * symbol table instead, so that checking a token becomes a single bit lookup.
+	 * All other operators and searches without a backing corpus use the regular 
+	 * string based evaluation.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static abstract class SymbolConstraint extends SearchConstraint {
+
+		private static final long serialVersionUID = 4125785457404227838L;
+		
+		/** Flag to signal that matching should be done via symbol ids */
+		private transient boolean encoded = false;
+		private transient boolean negated = false;
+		private transient int symbol = SymbolTable.UNKNOWN_ID;
+		/** Ids of all matching symbols if the operator has been evaluated on the entire vocabulary */
+		private transient BitSet symbols;
+		/** Result for tokens without a value, i.e. {@link SymbolTable#NULL_ID} */
+		private transient boolean matchesNull;
+
+		public SymbolConstraint(String token, Object value, SearchOperator operator) {
+			super(token, value, operator);
+		}
+
+		public SymbolConstraint(String token, Object value, SearchOperator operator, Object specifier) {
+			super(token, value, operator, specifier);
+		}
+		
+		/** Fetch the symbol table for this constraint's annotation from the given corpus */
+		protected abstract SymbolTable getSymbols(ColumnarCorpus corpus);
+		
+		/** Fetch the symbol id of the annotation for the current node in the given tree */
+		protected abstract int getSymbol(TargetTree tree);
+		
+		/** 
+		 * Signals that values are compared in lowercase, so that the constraint
+		 * needs to be evaluated on the {@link SymbolTable#getLowercaseSymbols() folded}
+		 * vocabulary.
+		 */
+		protected boolean isCaseInsensitive() {
+			return false;
+		}
+		
+		/**
+		 * Signals that the constraint value is compared to the symbols themselves,
+		 * so that equality can be checked by comparing a single symbol id.
+		 */
+		protected boolean comparesSymbols() {
+			return !isCaseInsensitive();
+		}
+		
+		/** Key of the annotation layer in the {@link ColumnarCorpus} this constraint reads */
+		protected String getAnnotationKey() {
+			return getToken();
+		}
+		
+		/** Fetch the inverted index over the symbols of this constraint's annotation */
+		protected PostingsIndex getPostings(ColumnarCorpus corpus) {
+			return corpus.getPostings(getAnnotationKey());
+		}
+		
+		/** Fetch the symbol ids of this constraint's annotation for all tokens in the corpus */
+		public int[] getColumn(ColumnarCorpus corpus) {
+			return corpus.getColumn(getAnnotationKey());
+		}
+		
+		@Override
+		public void prepare(Search search) {
+			super.prepare(search);
+			
+			final ColumnarCorpus corpus = search.getCorpus();
+			final SearchOperator operator = getOperator();
+			final Object constraint = getConstraint();
+			
+			symbols = null;
+			encoded = false;
+			if(corpus==null || !(constraint instanceof String)) {
+				return;
+			}
+			
+			final boolean equality = operator==SearchOperator.EQUALS || operator==SearchOperator.EQUALS_NOT;
+			if(equality && comparesSymbols()) {
+				// Unknown values yield an id that never matches
+				symbol = getSymbols(corpus).getId((String) constraint);
+				negated = operator==SearchOperator.EQUALS_NOT;
+				encoded = true;
+			} else if(equality || operator==SearchOperator.MATCHES || operator==SearchOperator.MATCHES_NOT
+					|| operator==SearchOperator.CONTAINS || operator==SearchOperator.CONTAINS_NOT) {
+				symbols = evaluate(corpus);
+				matchesNull = matchesInstance(null);
+				negated = false;
+				encoded = true;
+			}
+		}
+		
+		/** 
+		 * Evaluates this constraint once for every symbol in the annotation's 
+		 * table and returns the ids of all matching symbols.
+		 */
+		protected BitSet evaluate(ColumnarCorpus corpus) {
+			final SymbolTable table = getSymbols(corpus);
+			if(!isCaseInsensitive()) {
+				return evaluate(table);
+			}
+			
+			// Every symbol matches if its lowercase variant does
+			final BitSet lowercaseSymbols = evaluate(table.getLowercaseSymbols());
+			final int[] lowercaseIds = table.getLowercaseIds();
+			final BitSet symbols = new BitSet(table.size());
+			for (int id = 0; id < table.size(); id++) {
+				if(lowercaseSymbols.get(lowercaseIds[id])) {
+					symbols.set(id);
+				}
+			}
+			return symbols;
+		}
+		
+		/** Evaluates this constraint once for every value in the given table */
+		private BitSet evaluate(SymbolTable table) {
+			final BitSet symbols = new BitSet(table.size());
+			for (int id = 0; id < table.size(); id++) {
+				if(matchesInstance(table.getSymbol(id))) {
+					symbols.set(id);
+				}
+			}
+			return symbols;
+		}
+		
+		/** Returns whether this constraint has been prepared to compare symbol ids. */
+		public boolean isEncoded() {
+			return encoded;
+		}
+		
+		/** Returns whether an {@link #isEncoded() encoded} constraint matches tokens with a different symbol. */
+		public boolean isNegated() {
+			return negated;
+		}
+		
+		/**
+		 * Returns the ascending list of sentences that contain at least one token
+		 * matching this constraint, or {@code null} if the postings of the given
+		 * corpus cannot restrict the sentences to be visited.
+		 */
+		public int[] findSentences(ColumnarCorpus corpus) {
+			final PostingsIndex postings = encoded ? getPostings(corpus) : null;
+			if(postings==null) {
+				return null;
+			}
+			if(symbols==null) {
+				return negated ? null : postings.postings(symbol);
+			}
+			// Tokens without a value are not covered by any posting list
+			return matchesNull ? null : postings.postings(symbols);
+		}
+		
+		/** Returns the id of the value for an {@link #isEncoded() encoded} constraint. */
+		public int getSymbolId() {
+			return symbol;
+		}
+		
+		/** Checks a symbol id of this constraint's annotation against an {@link #isEncoded() encoded} constraint */
+		public boolean matchesSymbol(int id) {
+			if(symbols!=null) {
+				return id<0 ? matchesNull : symbols.get(id);
+			}
+			return (id==symbol) != negated;
+		}
+		
+		@Override
+		public boolean matches(Object value) {
+			if(encoded) {
+				return matchesSymbol(getSymbol((TargetTree)value));
+			}
+			return super.matches(value);
+		}
+	}
+	
+	/**
+	 * Case-insensitive variant of {@link SymbolConstraint}. When searching a 
+	 * {@link ColumnarCorpus}, all operators are evaluated on the lowercase 
+	 * vocabulary that the corpus shares across searches. Matching a token then
+	 * only looks up its symbol id instead of lowercasing the actual value.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static abstract class CaseInsensitiveSymbolConstraint extends SymbolConstraint {
+
+		private static final long serialVersionUID = -2472014783318920127L;
+	
+		protected Object lowercaseValue;
+
+		public CaseInsensitiveSymbolConstraint(String token, Object value, SearchOperator operator) {
+			super(token, value, operator);
+		}
+
+		public CaseInsensitiveSymbolConstraint(String token, Object value, SearchOperator operator, Object specifier) {
+			super(token, value, operator, specifier);
+		}
+	
+		@Override
+		protected Object getConstraint() {
+			return lowercaseValue;
+		}
+	
+		@Override
+		public void setValue(Object value) {
+			super.setValue(value);
+			lowercaseValue = String.valueOf(value).toLowerCase();
+		}
+	
+		public Object getLowercaseValue() {
+			return lowercaseValue;
+		}
+		
+		@Override
+		protected boolean isCaseInsensitive() {
+			return true;
+		}
+	}
 }
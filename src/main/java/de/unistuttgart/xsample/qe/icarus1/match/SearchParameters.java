@@ -33,18 +33,32 @@ public final class SearchParameters {
 
 	public static final String SEARCH_RESULT_LIMIT = "searchResultLimit"; //$NON-NLS-1$
 
+	/** Wall-clock limit for executing a search in milliseconds, {@code 0} for no limit */
+	public static final String SEARCH_TIMEOUT = "searchTimeout"; //$NON-NLS-1$
+
+	/** Minimum number of tokens in a matching sentence, {@code 0} for no limit */
 	public static final String SEARCH_MIN_LENGTH = "searchMinLength"; //$NON-NLS-1$
 
+	/** Maximum number of tokens in a matching sentence, {@code 0} for no limit */
 	public static final String SEARCH_MAX_LENGTH = "searchMaxLength"; //$NON-NLS-1$
 
 	public static final String SEARCH_NON_PROJECTIVE = "searchNonProjective"; //$NON-NLS-1$
 
+	/** Distribute matching of in-memory targets over the shared {@link java.util.concurrent.ForkJoinPool} */
+	public static final String SEARCH_PARALLEL = "searchParallel"; //$NON-NLS-1$
+
+	/** Collect per-matcher counters and make them available as {@link SearchProfile} */
+	public static final String SEARCH_PROFILE = "searchProfile"; //$NON-NLS-1$
+
 	public static final SearchMode DEFAULT_SEARCH_MODE = SearchMode.MATCHES;
 	public static final Orientation DEFAULT_SEARCH_ORIENTATION = Orientation.LEFT_TO_RIGHT;
 	public static final boolean DEFAULT_SEARCH_CASESENSITIVE = true;
 	public static final boolean DEFAULT_OPTIMIZE_SEARCH = false;
 	public static final int DEFAULT_SEARCH_RESULT_LIMIT = 0;
+	public static final long DEFAULT_SEARCH_TIMEOUT = 0;
 	public static final int DEFAULT_SEARCH_MIN_LENGTH = 0;
 	public static final int DEFAULT_SEARCH_MAX_LENGTH = 0;
 	public static final boolean DEFAULT_SEARCH_NON_PROJECTIVE = false;
+	public static final boolean DEFAULT_SEARCH_PARALLEL = false;
+	public static final boolean DEFAULT_SEARCH_PROFILE = false;
 }
@@ -0,0 +1,334 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1.match;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
+import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
+import de.unistuttgart.xsample.qe.icarus1.PostingsIndex;
+import de.unistuttgart.xsample.qe.icarus1.SentenceData;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint.CaseInsensitiveConstraint;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint.SymbolConstraint;
+import de.unistuttgart.xsample.qe.icarus1.match.cs.SentencePropertyConstraintFactory;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Narrows down the set of sentences a {@link Search} needs to visit, based
+ * on the compiled matcher graph and the indices available for the target corpus.
+ * <p>
+ * A matcher is considered mandatory if every successful match of the query 
+ * has to include it, i.e. if neither the matcher itself nor any of its
+ * ancestors is part of a disjunction or serves as exclusion. Every sentence
+ * that matches the query must then contain values for all the equality 
+ * constraints of mandatory matchers, so the intersection of their posting 
+ * lists is a superset of the actual result.
+ * <p>
+ * The same holds for bounds on the sentence length, which are either set
+ * explicitly via {@link SearchParameters#SEARCH_MIN_LENGTH} and 
+ * {@link SearchParameters#SEARCH_MAX_LENGTH} or stem from comparisons on the
+ * {@link LanguageConstants#SIZE_KEY size} sentence property.
+ * <p>
+ * Finally every mandatory matcher imposes a minimum on the height, number of
+ * descendants and number of children of the node it gets allocated to. Sentences
+ * whose tree shape summaries in the {@link ColumnarCorpus} fall short of those
+ * requirements are skipped altogether.
+ * <p>
+ * If the search has been {@link Search#setRestriction(int[]) restricted} to a
+ * known superset of its result, e.g. the hits of a more general query, only
+ * sentences from that set are considered in the first place.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class SearchPlanner {
+	
+	private final Search search;
+	private final Matcher rootMatcher;
+
+	public SearchPlanner(Search search, Matcher rootMatcher) {
+		if(search==null)
+			throw new NullPointerException("Invalid search"); //$NON-NLS-1$
+		if(rootMatcher==null)
+			throw new NullPointerException("Invalid root matcher"); //$NON-NLS-1$
+		
+		this.search = search;
+		this.rootMatcher = rootMatcher;
+	}
+	
+	/**
+	 * Returns the ascending list of sentence indices that might contain a match
+	 * or {@code null} if no restriction is possible and all sentences need to be
+	 * visited. Constraints need to be {@link Matcher#prepare(Search) prepared}
+	 * before calling this method.
+	 */
+	@Nullable
+	public int[] findCandidates() {
+		final int[] restriction = search.getRestriction();
+		final ColumnarCorpus corpus = search.getCorpus();
+		if(corpus==null) {
+			final int[] candidates = filterByLength(search.getTarget());
+			if(restriction==null) {
+				return candidates;
+			}
+			return candidates==null ? restriction : PostingsIndex.intersect(restriction, candidates);
+		}
+		
+		int[] candidates = restriction;
+		if(candidates!=null && candidates.length==0) {
+			return candidates;
+		}
+		
+		final int[] lengthBounds = findLengthBounds();
+		if(lengthBounds!=null) {
+			final int[] sentences = corpus.sentencesWithLength(lengthBounds[0], lengthBounds[1]);
+			candidates = candidates==null ? sentences : PostingsIndex.intersect(candidates, sentences);
+			if(candidates.length==0) {
+				return candidates;
+			}
+			if(candidates.length==corpus.size()) {
+				candidates = null;
+			}
+		}
+		
+		candidates = filterByShape(corpus, candidates);
+		if(candidates!=null && candidates.length==0) {
+			return candidates;
+		}
+		
+		for(Matcher matcher = rootMatcher; matcher!=null; matcher = matcher.getNext()) {
+			final SearchConstraint[] constraints = matcher.getConstraints();
+			if(constraints==null || !isMandatory(matcher)) {
+				continue;
+			}
+			
+			for(SearchConstraint constraint : constraints) {
+				if(!(constraint instanceof SymbolConstraint)) {
+					continue;
+				}
+				final int[] sentences = ((SymbolConstraint) constraint).findSentences(corpus);
+				if(sentences==null) {
+					continue;
+				}
+				candidates = candidates==null ? sentences : PostingsIndex.intersect(candidates, sentences);
+				
+				if(candidates.length==0) {
+					return candidates;
+				}
+			}
+		}
+		
+		return candidates;
+	}
+
+	/**
+	 * Returns {@code true} unless the query consists of a single plain node, 
+	 * whose matching only inspects individual tokens. For such queries the 
+	 * {@link TargetTree} can postpone building the tree structure until a 
+	 * constraint actually needs it.
+	 * 
+	 * @see TargetTree#setLazy(boolean)
+	 */
+	public boolean needsStructure() {
+		return rootMatcher.getClass()!=RootMatcher.class
+				|| rootMatcher.getNext()!=null
+				|| rootMatcher.getExclusions()!=null
+				|| rootMatcher.getChildCount()>0;
+	}
+	
+	/**
+	 * Creates a {@link ColumnScanner} if the query can be evaluated directly on
+	 * the symbol columns of the target corpus, i.e. if it consists of a single
+	 * plain node of {@link NodeType#GENERAL general} type whose constraints are
+	 * all {@link SymbolConstraint#isEncoded() encoded}. Returns {@code null} for
+	 * any other query or if the search does not target a {@link ColumnarCorpus}.
+	 * Constraints need to be {@link Matcher#prepare(Search) prepared} before 
+	 * calling this method.
+	 */
+	@Nullable
+	public ColumnScanner createScanner() {
+		final ColumnarCorpus corpus = search.getCorpus();
+		if(corpus==null || needsStructure() 
+				|| rootMatcher.getAlternate()!=null
+				|| rootMatcher.isExclusionMember()
+				|| rootMatcher.getBefore()!=null
+				|| rootMatcher.getAfter()!=null
+				|| rootMatcher.getNode().getNodeType()!=NodeType.GENERAL) {
+			return null;
+		}
+		
+		final SearchConstraint[] constraints = rootMatcher.getConstraints();
+		if(constraints==null) {
+			return new ColumnScanner(corpus, new SymbolConstraint[0]);
+		}
+		
+		final SymbolConstraint[] symbolConstraints = new SymbolConstraint[constraints.length];
+		for (int i = 0; i < constraints.length; i++) {
+			if(!(constraints[i] instanceof SymbolConstraint)) {
+				return null;
+			}
+			final SymbolConstraint constraint = (SymbolConstraint) constraints[i];
+			if(!constraint.isEncoded() || constraint.getColumn(corpus)==null) {
+				return null;
+			}
+			symbolConstraints[i] = constraint;
+		}
+		
+		return new ColumnScanner(corpus, symbolConstraints);
+	}
+
+	/**
+	 * Removes all sentences whose tree shape cannot accommodate the structural
+	 * requirements of the mandatory matchers. Returns the given {@code candidates}
+	 * if the query imposes no such requirements.
+	 */
+	@Nullable
+	private int[] filterByShape(ColumnarCorpus corpus, @Nullable int[] candidates) {
+		int height = 0, descendantCount = 0, childCount = 0;
+		for(Matcher matcher = rootMatcher; matcher!=null; matcher = matcher.getNext()) {
+			if(matcher instanceof ProxyRootMatcher || !isMandatory(matcher)) {
+				continue;
+			}
+			height = Math.max(height, matcher.getHeight());
+			descendantCount = Math.max(descendantCount, matcher.getDescendantCount());
+			childCount = Math.max(childCount, matcher.getChildCount());
+		}
+		
+		// Every node has height 1 and an isolated node satisfies all remaining checks
+		if(height<=1 && descendantCount==0 && childCount==0) {
+			return candidates;
+		}
+		
+		final int size = candidates==null ? corpus.size() : candidates.length;
+		final IntList result = new IntArrayList(size);
+		for (int i = 0; i < size; i++) {
+			final int sentence = candidates==null ? i : candidates[i];
+			if(corpus.maxHeight(sentence)>=height
+					&& corpus.maxDescendants(sentence)>=descendantCount
+					&& corpus.maxFanOut(sentence)>=childCount) {
+				result.add(sentence);
+			}
+		}
+		
+		return result.size()==corpus.size() ? null : result.toIntArray();
+	}
+
+	/** Fallback for targets without a {@link ColumnarCorpus}, which only checks sentence lengths. */
+	@Nullable
+	private int[] filterByLength(@Nullable List<SentenceData> target) {
+		final int[] lengthBounds = target==null ? null : findLengthBounds();
+		if(lengthBounds==null) {
+			return null;
+		}
+		final IntList candidates = new IntArrayList();
+		for (int i = 0; i < target.size(); i++) {
+			final int length = target.get(i).length();
+			if(length>=lengthBounds[0] && length<=lengthBounds[1]) {
+				candidates.add(i);
+			}
+		}
+		return candidates.toIntArray();
+	}
+	
+	/**
+	 * Returns the inclusive range of sentence lengths that can contain a match 
+	 * as {@code [min, max]} with {@link Integer#MAX_VALUE} denoting an open upper 
+	 * bound, or {@code null} if the length is not restricted at all.
+	 */
+	@Nullable
+	public int[] findLengthBounds() {
+		long min = Math.max(0, SearchUtils.getMinLength(search));
+		long max = SearchUtils.getMaxLength(search);
+		if(max<=0) {
+			max = Integer.MAX_VALUE;
+		}
+		
+		for(Matcher matcher = rootMatcher; matcher!=null; matcher = matcher.getNext()) {
+			final SearchConstraint[] constraints = matcher.getConstraints();
+			if(constraints==null || !isMandatory(matcher)) {
+				continue;
+			}
+			
+			for(SearchConstraint constraint : constraints) {
+				if(!isLengthConstraint(constraint)) {
+					continue;
+				}
+				final long value = ((Number) constraint.getValue()).longValue();
+				final SearchOperator operator = constraint.getOperator();
+				if(operator==SearchOperator.EQUALS) {
+					min = Math.max(min, value);
+					max = Math.min(max, value);
+				} else if(operator==SearchOperator.LESS_THAN) {
+					max = Math.min(max, value-1);
+				} else if(operator==SearchOperator.LESS_OR_EQUAL) {
+					max = Math.min(max, value);
+				} else if(operator==SearchOperator.GREATER_THAN) {
+					min = Math.max(min, value+1);
+				} else if(operator==SearchOperator.GREATER_OR_EQUAL) {
+					min = Math.max(min, value);
+				}
+			}
+		}
+		
+		// Mandatory matchers lock distinct nodes, so a match needs at least that many tokens
+		min = Math.max(min, countMandatoryNodes());
+		
+		if(min<=1 && max==Integer.MAX_VALUE) {
+			return null;
+		}
+		if(min>max) {
+			// Contradicting bounds, no sentence can match
+			return new int[] {1, 0};
+		}
+		return new int[] {(int) min, (int) Math.max(0, max)};
+	}
+	
+	private int countMandatoryNodes() {
+		int count = 0;
+		for(Matcher matcher = rootMatcher; matcher!=null; matcher = matcher.getNext()) {
+			if(!(matcher instanceof ProxyRootMatcher) && isMandatory(matcher)) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/** 
+	 * Only numeric comparisons can be pushed down. Case-insensitive constraints 
+	 * compare the textual representation of the length instead.
+	 */
+	private static boolean isLengthConstraint(SearchConstraint constraint) {
+		return SentencePropertyConstraintFactory.TOKEN.equals(constraint.getToken())
+				&& LanguageConstants.SIZE_KEY.equals(String.valueOf(constraint.getSpecifier()))
+				&& constraint.getValue() instanceof Number
+				&& !(constraint instanceof CaseInsensitiveConstraint);
+	}
+
+	private static boolean isMandatory(Matcher matcher) {
+		for(Matcher m = matcher; m!=null; m = m.getParent()) {
+			if(m.isExclusionMember() || m.getAlternate()!=null 
+					|| m instanceof DisjunctionMatcher) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1.match;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Report on where a {@link Search} spent its effort, available if the search 
+ * ran with {@link SearchParameters#SEARCH_PROFILE profiling} enabled. Lists
+ * all matchers of the compiled graph in the order they get evaluated, along
+ * with the counters of their individual constraints.
+ * <p>
+ * Times are inclusive, i.e. the time of a matcher also contains the time of
+ * all the matchers it delegated to while being allocated.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public final class SearchProfile {
+	
+	private final String query;
+	private final long sentences;
+	private final long candidates;
+	private final long hits;
+	private final Duration duration;
+	private final List<MatcherProfile> matchers;
+
+	SearchProfile(String query, long sentences, long candidates, long hits, 
+			Duration duration, List<MatcherProfile> matchers) {
+		this.query = query;
+		this.sentences = sentences;
+		this.candidates = candidates;
+		this.hits = hits;
+		this.duration = requireNonNull(duration);
+		this.matchers = Collections.unmodifiableList(matchers);
+	}
+	
+	/** Creates the report from the counters currently stored in the matcher graph */
+	static SearchProfile create(Search search, Matcher rootMatcher, long candidates) {
+		final Map<Matcher, Integer> depths = new IdentityHashMap<>();
+		final List<MatcherProfile> matchers = new ArrayList<>();
+		for(Matcher matcher : collect(rootMatcher)) {
+			final Matcher parent = matcher.getParent();
+			final int depth = parent==null ? 0 : depths.getOrDefault(parent, Integer.valueOf(-1)).intValue()+1;
+			depths.put(matcher, Integer.valueOf(depth));
+			matchers.add(new MatcherProfile(matcher, depth));
+		}
+		
+		return new SearchProfile(search.getQuery().getQueryString(), search.getProcessed(), candidates, 
+				search.getResult().getSize(), search.getDuration(), matchers);
+	}
+	
+	/**
+	 * Returns all matchers reachable from {@code rootMatcher} in a fixed order.
+	 * Clones of a matcher graph produce the same order, so that their counters
+	 * can be matched up by position.
+	 */
+	static List<Matcher> collect(Matcher rootMatcher) {
+		final List<Matcher> buffer = new ArrayList<>();
+		collect0(rootMatcher, buffer, new IdentityHashMap<>());
+		return buffer;
+	}
+	
+	private static void collect0(Matcher matcher, List<Matcher> buffer, Map<Matcher, Boolean> visited) {
+		if(matcher==null || visited.put(matcher, Boolean.TRUE)!=null) {
+			return;
+		}
+		buffer.add(matcher);
+		if(matcher.getExclusions()!=null) {
+			for(Matcher exclusion : matcher.getExclusions()) {
+				collect0(exclusion, buffer, visited);
+			}
+		}
+		if(matcher.getOptions()!=null) {
+			for(Matcher option : matcher.getOptions()) {
+				collect0(option, buffer, visited);
+			}
+		}
+		collect0(matcher.getAlternate(), buffer, visited);
+		collect0(matcher.getNext(), buffer, visited);
+	}
+	
+	public String getQuery() { return query; }
+	
+	/** Number of sentences in the target */
+	public long getSentences() { return sentences; }
+	
+	/** Number of sentences that survived planning and got passed to the matchers */
+	public long getCandidates() { return candidates; }
+	
+	public long getHits() { return hits; }
+	
+	public Duration getDuration() { return duration; }
+	
+	public List<MatcherProfile> getMatchers() { return matchers; }
+	
+	/** Renders the report as indented plain text, one line per matcher and constraint. */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(200);
+		sb.append(String.format("Profile of '%s': %d hits from %d candidates out of %d sentences in %d ms", 
+				query, Long.valueOf(hits), Long.valueOf(candidates), Long.valueOf(sentences), 
+				Long.valueOf(duration.toMillis())));
+		for(MatcherProfile matcher : matchers) {
+			sb.append(System.lineSeparator());
+			matcher.appendTo(sb);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Counters of a single matcher, summed up over all threads of a parallel search.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static final class MatcherProfile {
+		private final int id;
+		private final int depth;
+		private final String type;
+		private final boolean exclusion;
+		private final long calls;
+		private final long visited;
+		private final long allocations;
+		private final long matches;
+		private final long time;
+		private final List<ConstraintProfile> constraints;
+		
+		MatcherProfile(Matcher matcher, int depth) {
+			this.depth = depth;
+			id = matcher.getId();
+			type = matcher.getClass().getSimpleName();
+			exclusion = matcher.isExclusionMember();
+			
+			final MatcherStats stats = matcher.getStats();
+			final SearchConstraint[] source = matcher.getConstraints();
+			final List<ConstraintProfile> constraints = new ArrayList<>();
+			if(stats==null) {
+				calls = visited = allocations = matches = time = 0;
+			} else {
+				calls = stats.calls;
+				visited = stats.visited;
+				allocations = stats.allocations;
+				matches = stats.matches;
+				time = stats.time;
+				for (int i = 0; i < stats.evaluations.length; i++) {
+					constraints.add(new ConstraintProfile(source[i], stats.evaluations[i], stats.rejections[i]));
+				}
+			}
+			this.constraints = Collections.unmodifiableList(constraints);
+		}
+		
+		public int getId() { return id; }
+		
+		/** Nesting level in the query tree, {@code 0} for root matchers */
+		public int getDepth() { return depth; }
+		
+		/** Simple class name of the matcher implementation */
+		public String getType() { return type; }
+		
+		/** Returns whether the matcher is part of a negated sub-tree */
+		public boolean isExclusion() { return exclusion; }
+		
+		/** Number of times the matcher got asked for a match */
+		public long getCalls() { return calls; }
+		
+		/** Number of candidate nodes the matcher looked at */
+		public long getVisited() { return visited; }
+		
+		/** Number of nodes that passed all checks and got allocated */
+		public long getAllocations() { return allocations; }
+		
+		/** Number of allocations that led to a successful match */
+		public long getMatches() { return matches; }
+		
+		/** Number of allocations that had to be released without success */
+		public long getBacktracks() { 
+			// Disjunctions delegate without allocating anything themselves
+			return Math.max(0, allocations-matches); 
+		}
+		
+		/** Inclusive time spent in the matcher in nanoseconds */
+		public long getTime() { return time; }
+		
+		public List<ConstraintProfile> getConstraints() { return constraints; }
+		
+		void appendTo(StringBuilder sb) {
+			for (int i = 0; i <= depth; i++) {
+				sb.append("  ");
+			}
+			sb.append(String.format("#%d %s%s: calls=%d, visited=%d, allocations=%d, backtracks=%d, time=%d ms", 
+					Integer.valueOf(id), type, exclusion ? " (exclusion)" : "", Long.valueOf(calls), 
+					Long.valueOf(visited), Long.valueOf(allocations), Long.valueOf(getBacktracks()), 
+					Long.valueOf(TimeUnit.NANOSECONDS.toMillis(time))));
+			for(ConstraintProfile constraint : constraints) {
+				sb.append(System.lineSeparator());
+				for (int i = 0; i <= depth+1; i++) {
+					sb.append("  ");
+				}
+				sb.append(String.format("%s: evaluations=%d, rejections=%d", constraint.getLabel(),
+						Long.valueOf(constraint.getEvaluations()), Long.valueOf(constraint.getRejections())));
+			}
+		}
+	}
+	
+	/**
+	 * Counters of a single constraint, listed in evaluation order.
+	 * 
+	 * @author Markus Gärtner
+	 *
+	 */
+	public static final class ConstraintProfile {
+		private final String label;
+		private final long evaluations;
+		private final long rejections;
+		
+		ConstraintProfile(SearchConstraint constraint, long evaluations, long rejections) {
+			final Object specifier = constraint.getSpecifier();
+			label = constraint.getToken() + (specifier==null ? "" : "$"+specifier) 
+					+ constraint.getOperator().getSymbol() + constraint.getValue();
+			this.evaluations = evaluations;
+			this.rejections = rejections;
+		}
+		
+		/** Textual form of the constraint, e.g. {@code pos=NN} */
+		public String getLabel() { return label; }
+		
+		public long getEvaluations() { return evaluations; }
+		
+		public long getRejections() { return rejections; }
+	}
+}
@@ -25,9 +25,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
+import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
 import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.match.cs.FeatureConstraintFactory;
+import de.unistuttgart.xsample.qe.icarus1.match.cs.ProjectivityConstraintFactory;
 
 
 /**
@@ -53,6 +57,30 @@ public final class SearchUtils {
 		return search.getParameters().getBoolean(SearchParameters.OPTIMIZE_SEARCH, SearchParameters.DEFAULT_OPTIMIZE_SEARCH);
 	}
 
+	public static boolean isParallelSearch(Search search) {
+		return search.getParameters().getBoolean(SearchParameters.SEARCH_PARALLEL, SearchParameters.DEFAULT_SEARCH_PARALLEL);
+	}
+
+	public static boolean isProfiling(Search search) {
+		return search.getParameters().getBoolean(SearchParameters.SEARCH_PROFILE, SearchParameters.DEFAULT_SEARCH_PROFILE);
+	}
+
+	public static int getResultLimit(Search search) {
+		return search.getParameters().getInteger(SearchParameters.SEARCH_RESULT_LIMIT, SearchParameters.DEFAULT_SEARCH_RESULT_LIMIT);
+	}
+
+	public static long getTimeout(Search search) {
+		return search.getParameters().getLong(SearchParameters.SEARCH_TIMEOUT, SearchParameters.DEFAULT_SEARCH_TIMEOUT);
+	}
+
+	public static int getMinLength(Search search) {
+		return search.getParameters().getInteger(SearchParameters.SEARCH_MIN_LENGTH, SearchParameters.DEFAULT_SEARCH_MIN_LENGTH);
+	}
+
+	public static int getMaxLength(Search search) {
+		return search.getParameters().getInteger(SearchParameters.SEARCH_MAX_LENGTH, SearchParameters.DEFAULT_SEARCH_MAX_LENGTH);
+	}
+
 	public static boolean isCaseSensitiveSearch(Search search) {
 		return search.getParameters().getBoolean(SearchParameters.SEARCH_CASESENSITIVE, SearchParameters.DEFAULT_SEARCH_CASESENSITIVE);
 	}
@@ -340,6 +368,215 @@ public final class SearchUtils {
 		return graph==null || graph.getRootNodes()==null || graph.getRootNodes().length==0;
 	}
 
+	/**
+	 * Checks whether every sentence matched by {@code refined} is guaranteed
+	 * to also be matched by {@code base}. This is the case if {@code refined}
+	 * contains an image of {@code base} that only adds constraints to its 
+	 * nodes and edges, while any additional nodes or edges can only narrow
+	 * down the result further.
+	 * <p>
+	 * The check is conservative and rejects all graphs with disjunctions in 
+	 * {@code base}. Since additionally allocated nodes are invisible to
+	 * exclusions, a {@code base} graph with negated parts only admits added
+	 * constraints on its positive nodes and edges.
+	 */
+	public static boolean isSpecialization(SearchGraph refined, SearchGraph base) {
+		if(isEmpty(refined) || isEmpty(base)) {
+			return false;
+		}
+		if(refined.getRootOperator()==SearchGraph.OPERATOR_DISJUNCTION
+				|| base.getRootOperator()==SearchGraph.OPERATOR_DISJUNCTION) {
+			return false;
+		}
+
+		final SearchNode[] baseNodes = base.getNodes();
+		final SearchNode[] refinedNodes = refined.getNodes();
+		if(baseNodes.length>refinedNodes.length) {
+			return false;
+		}
+
+		final Set<SearchNode> baseOptional = collectRegion(base, true);
+		if(!baseOptional.isEmpty()) {
+			return false;
+		}
+		final Set<SearchNode> baseExcluded = collectRegion(base, false);
+		if(!baseExcluded.isEmpty() && (baseNodes.length!=refinedNodes.length 
+				|| edgeCount(base)!=edgeCount(refined))) {
+			return false;
+		}
+
+		final Embedding embedding = new Embedding(baseNodes, refinedNodes, baseExcluded,
+				collectRegion(refined, false), collectRegion(refined, true));
+		return embedding.map(0);
+	}
+
+	private static int edgeCount(SearchGraph graph) {
+		return graph.getEdges()==null ? 0 : graph.getEdges().length;
+	}
+
+	/**
+	 * Collects all nodes that are part of a disjunction ({@code optional}) or an
+	 * exclusion, including their dominated sub-trees.
+	 */
+	private static Set<SearchNode> collectRegion(SearchGraph graph, boolean optional) {
+		final Set<SearchNode> region = new HashSet<>();
+		for(SearchNode node : graph.getNodes()) {
+			final boolean start = optional ? node.getNodeType()==NodeType.DISJUNCTION : node.isNegated();
+			if(start) {
+				collectRegion(node, region, optional);
+			}
+			if(!optional) {
+				for(int i=0; i<node.getOutgoingEdgeCount(); i++) {
+					SearchEdge edge = node.getOutgoingEdgeAt(i);
+					if(edge.isNegated()) {
+						collectRegion(edge.getTarget(), region, optional);
+					}
+				}
+			}
+		}
+		return region;
+	}
+
+	private static void collectRegion(SearchNode node, Set<SearchNode> region, boolean optional) {
+		if(!region.add(node)) {
+			return;
+		}
+		for(int i=0; i<node.getOutgoingEdgeCount(); i++) {
+			SearchEdge edge = node.getOutgoingEdgeAt(i);
+			if(regularEdges.contains(edge.getEdgeType())) {
+				collectRegion(edge.getTarget(), region, optional);
+			}
+		}
+	}
+
+	/** Returns the active constraints that actually restrict matching. */
+	private static List<SearchConstraint> effectiveConstraints(SearchConstraint[] constraints) {
+		if(constraints==null) {
+			return Collections.emptyList();
+		}
+		final List<SearchConstraint> result = new ArrayList<>(constraints.length);
+		for(SearchConstraint constraint : constraints) {
+			if(constraint.isActive() && !constraint.isUndefined()) {
+				result.add(constraint);
+			}
+		}
+		return result;
+	}
+
+	private static boolean isSameConstraint(SearchConstraint c1, SearchConstraint c2) {
+		return Objects.equals(c1.getToken(), c2.getToken())
+				&& c1.getOperator()==c2.getOperator()
+				&& Objects.equals(c1.getSpecifier(), c2.getSpecifier())
+				&& Objects.equals(c1.getValue(), c2.getValue())
+				&& c1.getClass()==c2.getClass();
+	}
+
+	/** 
+	 * Returns {@code true} if {@code refined} contains all the constraints of 
+	 * {@code base} and, if {@code exact} is set, nothing else.
+	 */
+	private static boolean containsConstraints(SearchConstraint[] refined, SearchConstraint[] base, boolean exact) {
+		final List<SearchConstraint> refinedConstraints = effectiveConstraints(refined);
+		final List<SearchConstraint> baseConstraints = effectiveConstraints(base);
+		if(exact && refinedConstraints.size()!=baseConstraints.size()) {
+			return false;
+		}
+		for(SearchConstraint constraint : baseConstraints) {
+			if(!refinedConstraints.stream().anyMatch(c -> isSameConstraint(c, constraint))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Backtracking search for an injective mapping of base nodes to refined 
+	 * nodes that preserves all edges of the base graph.
+	 */
+	private static class Embedding {
+		private final SearchNode[] baseNodes, refinedNodes;
+		private final Set<SearchNode> baseExcluded, refinedExcluded, refinedOptional;
+		private final Map<SearchNode, SearchNode> mapping = new HashMap<>();
+		private final Set<SearchNode> used = new HashSet<>();
+
+		Embedding(SearchNode[] baseNodes, SearchNode[] refinedNodes, Set<SearchNode> baseExcluded,
+				Set<SearchNode> refinedExcluded, Set<SearchNode> refinedOptional) {
+			this.baseNodes = baseNodes;
+			this.refinedNodes = refinedNodes;
+			this.baseExcluded = baseExcluded;
+			this.refinedExcluded = refinedExcluded;
+			this.refinedOptional = refinedOptional;
+		}
+
+		boolean map(int index) {
+			if(index==baseNodes.length) {
+				return true;
+			}
+			final SearchNode node = baseNodes[index];
+			for(SearchNode candidate : refinedNodes) {
+				if(used.contains(candidate) || !isCompatible(node, candidate)) {
+					continue;
+				}
+				mapping.put(node, candidate);
+				used.add(candidate);
+				if(edgesPreserved(node) && map(index+1)) {
+					return true;
+				}
+				mapping.remove(node);
+				used.remove(candidate);
+			}
+			return false;
+		}
+
+		private boolean isCompatible(SearchNode node, SearchNode candidate) {
+			final boolean excluded = baseExcluded.contains(node);
+			if(excluded!=refinedExcluded.contains(candidate)
+					|| node.isNegated()!=candidate.isNegated()
+					|| refinedOptional.contains(candidate)) {
+				return false;
+			}
+			if(node.getNodeType()!=candidate.getNodeType() && (excluded || node.getNodeType()!=NodeType.GENERAL)) {
+				return false;
+			}
+			return containsConstraints(candidate.getConstraints(), node.getConstraints(), excluded);
+		}
+
+		/** Checks all base edges between {@code node} and already mapped nodes */
+		private boolean edgesPreserved(SearchNode node) {
+			for(int i=0; i<node.getOutgoingEdgeCount(); i++) {
+				if(!isPreserved(node.getOutgoingEdgeAt(i))) {
+					return false;
+				}
+			}
+			for(int i=0; i<node.getIncomingEdgeCount(); i++) {
+				if(!isPreserved(node.getIncomingEdgeAt(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isPreserved(SearchEdge edge) {
+			final SearchNode source = mapping.get(edge.getSource());
+			final SearchNode target = mapping.get(edge.getTarget());
+			if(source==null || target==null) {
+				// Checked once the other end gets mapped
+				return true;
+			}
+			final boolean exact = baseExcluded.contains(edge.getSource()) || baseExcluded.contains(edge.getTarget());
+			for(int i=0; i<source.getOutgoingEdgeCount(); i++) {
+				SearchEdge candidate = source.getOutgoingEdgeAt(i);
+				if(candidate.getTarget()==target
+						&& candidate.getEdgeType()==edge.getEdgeType()
+						&& candidate.isNegated()==edge.isNegated()
+						&& containsConstraints(candidate.getConstraints(), edge.getConstraints(), exact)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
 	private static void collectInactive0(List<SearchConstraint> buffer, SearchConstraint[] constraints) {
 		if(constraints==null) {
 			return;
@@ -377,6 +614,107 @@ public final class SearchUtils {
 		return result;
 	}
 
+	/**
+	 * Collects the keys of all the annotations (as defined in {@link LanguageConstants})
+	 * that are accessed while evaluating the given {@code graph}. Heads are only 
+	 * required if the graph describes a structure beyond individual tokens.
+	 * Returns {@code null} if the graph contains constraints that might access 
+	 * arbitrary annotations, meaning that all annotations must be available.
+	 */
+	public static Set<String> getRequiredAnnotations(SearchGraph graph) {
+		if(isEmpty(graph)) {
+			return null;
+		}
+
+		final Set<String> keys = new HashSet<>();
+
+		final SearchNode[] nodes = graph.getNodes();
+		if(nodes.length>1 || edgeCount(graph)>0 || nodes[0].getNodeType()!=NodeType.GENERAL) {
+			keys.add(LanguageConstants.HEAD_KEY);
+		}
+
+		for(SearchNode node : nodes) {
+			if(!collectAnnotations0(keys, node.getConstraints())) {
+				return null;
+			}
+		}
+		if(graph.getEdges()!=null) {
+			for(SearchEdge edge : graph.getEdges()) {
+				if(!collectAnnotations0(keys, edge.getConstraints())) {
+					return null;
+				}
+			}
+		}
+
+		return keys;
+	}
+
+	private static boolean collectAnnotations0(Set<String> buffer, SearchConstraint[] constraints) {
+		if(constraints==null) {
+			return true;
+		}
+
+		for(SearchConstraint constraint : constraints) {
+			final String token = constraint.getToken();
+			switch (token) {
+			case LanguageConstants.FORM_KEY:
+			case LanguageConstants.POS_KEY:
+			case LanguageConstants.LEMMA_KEY:
+			case LanguageConstants.FEATURES_KEY:
+			case LanguageConstants.DEPREL_KEY:
+				buffer.add(token);
+				break;
+
+			case FeatureConstraintFactory.TOKEN:
+				buffer.add(LanguageConstants.FEATURES_KEY);
+				break;
+
+			case LanguageConstants.DIRECTION_KEY:
+			case LanguageConstants.DISTANCE_KEY:
+			case ProjectivityConstraintFactory.TOKEN:
+				buffer.add(LanguageConstants.HEAD_KEY);
+				break;
+
+			case LanguageConstants.INDEX_KEY:
+				break;
+
+			case LanguageConstants.WORD_PROPERTY_KEY: {
+				final String key = String.valueOf(constraint.getSpecifier());
+				switch (key) {
+				case LanguageConstants.FORM_KEY:
+				case LanguageConstants.POS_KEY:
+				case LanguageConstants.LEMMA_KEY:
+				case LanguageConstants.FEATURES_KEY:
+				case LanguageConstants.DEPREL_KEY:
+				case LanguageConstants.HEAD_KEY:
+					buffer.add(key);
+					break;
+
+				case LanguageConstants.SIZE_KEY:
+				case LanguageConstants.LENGTH_KEY:
+					buffer.add(LanguageConstants.FORM_KEY);
+					break;
+
+				default:
+					return false;
+				}
+			} break;
+
+			case LanguageConstants.SENTENCE_PROPERTY_KEY: {
+				final String key = String.valueOf(constraint.getSpecifier());
+				if(!LanguageConstants.SIZE_KEY.equals(key) && !LanguageConstants.INDEX_KEY.equals(key)) {
+					return false;
+				}
+			} break;
+
+			default:
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	public static boolean isUndefined(SearchConstraint[] constraints) {
 		if(constraints==null) {
 			return true;
@@ -411,7 +749,7 @@ public final class SearchUtils {
 		if(search==null)
 			throw new NullPointerException("Invalid search"); //$NON-NLS-1$
 
-		if(search.getTarget()==null) {
+		if(search.getTarget()==null && !search.isStreaming()) {
 			return false;
 		}
 		if(search.getQuery()==null) {
@@ -0,0 +1,145 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe.icarus1.match;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
+import de.unistuttgart.xsample.qe.icarus1.PostingsIndex;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint.CaseInsensitiveSymbolConstraint;
+
+/**
+ * Estimates how likely individual constraints are to be satisfied, so that
+ * the {@link MatcherBuilder} can test cheap and selective constraints first.
+ * <p>
+ * Statistics are taken from the {@link PostingsIndex postings} of the target
+ * corpus: the share of sentences containing a value serves as estimate for 
+ * equality constraints on indexed annotations. Without a corpus or for other
+ * constraints fixed default values are used. Estimates only determine the
+ * order in which matchers and constraints get evaluated.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class SelectivityEstimator {
+	
+	/** Assumed selectivity for constraints without statistics */
+	public static final double DEFAULT_SELECTIVITY = 0.5;
+	/** Assumed selectivity for negated equality constraints */
+	public static final double NEGATED_SELECTIVITY = 0.9;
+	/** Penalty for operators that are considerably more expensive to evaluate than equality */
+	public static final double EXPENSIVE_OPERATOR_PENALTY = 4.0;
+
+	@Nullable
+	private final ColumnarCorpus corpus;
+	
+	/** Case-insensitive estimates require a scan of the vocabulary, so we keep them */
+	private final Map<SearchConstraint, Double> cache = new IdentityHashMap<>();
+	
+	public SelectivityEstimator(@Nullable ColumnarCorpus corpus) {
+		this.corpus = corpus;
+	}
+	
+	/**
+	 * Returns the estimated share of sentences satisfying the given constraint, 
+	 * ranging from {@code 0} (never satisfied) to {@code 1} (always satisfied).
+	 */
+	public double estimate(SearchConstraint constraint) {
+		Double value = cache.get(constraint);
+		if(value==null) {
+			value = Double.valueOf(estimate0(constraint));
+			cache.put(constraint, value);
+		}
+		return value.doubleValue();
+	}
+	
+	/** Returns the combined estimate for all the given constraints, assuming independence. */
+	public double estimate(@Nullable SearchConstraint[] constraints) {
+		double value = 1.0;
+		if(constraints!=null) {
+			for(SearchConstraint constraint : constraints) {
+				value *= estimate(constraint);
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns a ranking value for the given constraint where lower values
+	 * signal constraints that should be evaluated first.
+	 */
+	public double rank(SearchConstraint constraint) {
+		double rank = estimate(constraint);
+		if(isExpensive(constraint.getOperator())) {
+			rank *= EXPENSIVE_OPERATOR_PENALTY;
+		}
+		return rank;
+	}
+	
+	private static boolean isExpensive(SearchOperator operator) {
+		return operator==SearchOperator.MATCHES || operator==SearchOperator.MATCHES_NOT
+				|| operator==SearchOperator.CONTAINS || operator==SearchOperator.CONTAINS_NOT;
+	}
+	
+	private double estimate0(SearchConstraint constraint) {
+		final SearchOperator operator = constraint.getOperator();
+		if(operator!=SearchOperator.EQUALS && operator!=SearchOperator.EQUALS_NOT) {
+			return DEFAULT_SELECTIVITY;
+		}
+		if(operator==SearchOperator.EQUALS_NOT) {
+			return NEGATED_SELECTIVITY;
+		}
+		
+		if(corpus==null || corpus.size()==0 || !(constraint.getValue() instanceof String)) {
+			return DEFAULT_SELECTIVITY;
+		}
+		
+		final SymbolTable symbols = corpus.getSymbols(constraint.getToken());
+		final PostingsIndex postings = corpus.getPostings(constraint.getToken());
+		if(symbols==null || postings==null) {
+			return DEFAULT_SELECTIVITY;
+		}
+		
+		long frequency = 0;
+		if(constraint instanceof CaseInsensitiveSymbolConstraint) {
+			// Sum up all case variants, which might count sentences multiple times
+			final String value = (String) ((CaseInsensitiveSymbolConstraint)constraint).getLowercaseValue();
+			final int lowercaseId = symbols.getLowercaseSymbols().getId(value);
+			final int[] lowercaseIds = symbols.getLowercaseIds();
+			for (int id = 0; id < lowercaseIds.length && lowercaseId>=0; id++) {
+				if(lowercaseIds[id]==lowercaseId) {
+					frequency += postings.frequency(id);
+				}
+			}
+		} else {
+			final int id = symbols.getId((String) constraint.getValue());
+			if(id>=0) {
+				frequency = postings.frequency(id);
+			}
+		}
+		
+		return Math.min(1.0, (double)frequency / corpus.size());
+	}
+}
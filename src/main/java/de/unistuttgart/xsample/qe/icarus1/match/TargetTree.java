@@ -18,6 +18,7 @@ package de.unistuttgart.xsample.qe.icarus1.match;
 
 import java.util.Arrays;
 
+import de.unistuttgart.xsample.qe.icarus1.EncodedSentenceData;
 import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
 import de.unistuttgart.xsample.qe.icarus1.Options;
 import de.unistuttgart.xsample.qe.icarus1.SentenceData;
@@ -27,6 +28,11 @@ import it.unimi.dsi.fastutil.ints.IntList;
 
 /**
  * Rooted tree view on dependency data structures.
+ * <p>
+ * In {@link #setLazy(boolean) lazy} mode the edge lists, roots, heights and
+ * descendant counts of a sentence are only computed on the first access to
+ * any of them. Queries that only inspect individual tokens then never pay for
+ * building the tree structure.
  *
  * @author Markus Gärtner
  * @version $Id$
@@ -47,6 +53,8 @@ public class TargetTree {
 	private int size;
 
 	private SentenceData data;
+	/** Same as {@link #data} if the sentence provides symbol ids, {@code null} otherwise */
+	private EncodedSentenceData encoded;
 
 	private int nodePointer = -1;
 
@@ -54,6 +62,16 @@ public class TargetTree {
 	private int edgePointer = -1;
 
 	private int bufferSize = 200;
+	
+	/** Postpone building the structure until it is actually needed */
+	private boolean lazy = false;
+	/** Signals that {@link #edges}, {@link #heads}, {@link #roots}, {@link #heights} and {@link #descendantCounts} are valid */
+	private boolean structureReady = false;
+	
+	// Buffers for projectivity, only allocated once a query asks for it
+	private boolean[] projective;
+	private int[] ranks, sizes, order, leftRuns, rightRuns;
+	private boolean projectivityReady = false;
 
 	private static final int LIST_START_SIZE = 3;
 
@@ -69,6 +87,9 @@ public class TargetTree {
 		heads = new int[bufferSize];
 
 		roots = new IntArrayList();
+		
+		projective = null;
+		ranks = sizes = order = leftRuns = rightRuns = null;
 	}
 
 	public void close() {
@@ -78,9 +99,28 @@ public class TargetTree {
 		descendantCounts = null;
 		heads = null;
 		roots = null;
+		
+		projective = null;
+		ranks = sizes = order = leftRuns = rightRuns = null;
 
 		data = null;
+		encoded = null;
 		size = 0;
+		structureReady = false;
+		projectivityReady = false;
+	}
+	
+	public boolean isLazy() {
+		return lazy;
+	}
+	
+	/**
+	 * Defines whether the tree structure of subsequently {@link #reload(SentenceData, Options) loaded}
+	 * sentences is built immediately or only when first needed. Token data and
+	 * head lookups are always available right away.
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
 	}
 	
 	public void reload(SentenceData source, Options options) {
@@ -88,10 +128,9 @@ public class TargetTree {
 			throw new NullPointerException("Invalid source data"); //$NON-NLS-1$
 		
 		data = source;
+		encoded = source instanceof EncodedSentenceData ? (EncodedSentenceData) source : null;
 
 		size = fetchSize();
-		int head;
-		int[] list, tmp;
 
 		if(size<edges.length) {
 			// If buffer is sufficient reset all data
@@ -101,6 +140,33 @@ public class TargetTree {
 			bufferSize = Math.max(size, bufferSize*2);
 			buildBuffer();
 		}
+		
+		structureReady = false;
+		projectivityReady = false;
+		
+		if(lazy) {
+			// Only node locks are needed for matching individual tokens
+			for (int i = 0; i < size; i++) {
+				if(locks[i]==null) {
+					locks[i] = new boolean[LIST_START_SIZE];
+				}
+			}
+		} else {
+			buildStructure();
+		}
+	}
+	
+	private void ensureStructure() {
+		if(!structureReady) {
+			buildStructure();
+		}
+	}
+	
+	private void buildStructure() {
+		int head;
+		int[] list, tmp;
+		
+		roots.clear();
 
 		// reset internal stuff
 		for (int i = 0; i < size; i++) {
@@ -131,10 +197,13 @@ public class TargetTree {
 					// number of arraycopy calls per data)
 					list = new int[LIST_START_SIZE];
 					edges[head] = list;
-					locks[head] = new boolean[LIST_START_SIZE];
+					if(locks[head]==null) {
+						locks[head] = new boolean[LIST_START_SIZE];
+					}
 				} else if (list[0] >= list.length - 1) {
 					tmp = new int[list.length + list.length];
-					locks[head] = new boolean[tmp.length];
+					// Lazy construction can happen while nodes are already locked
+					locks[head] = Arrays.copyOf(locks[head], tmp.length);
 					System.arraycopy(list, 0, tmp, 0, list.length);
 					list = tmp;
 					edges[head] = list;
@@ -165,6 +234,8 @@ public class TargetTree {
 		for(int root : roots) {
 			prepareDescendants0(root);
 		}
+		
+		structureReady = true;
 	}
 
 	private void prepareDescendants0(int index) {
@@ -190,6 +261,126 @@ public class TargetTree {
 		}
 	}
 
+	/**
+	 * Computes the projectivity of all edges of the current sentence in linear
+	 * time. An edge from {@code h} to {@code d} is projective if {@code h} 
+	 * dominates all tokens between the two. Based on the pre-order ranks of 
+	 * a depth-first traversal, dominance reduces to an interval check. For
+	 * every node {@code h} we then determine the maximal ranges to its left 
+	 * and right that consist only of tokens dominated by {@code h}. A single
+	 * sweep in each direction does this with a stack of all nodes whose range 
+	 * is still open, which always forms a chain of ancestors of the current token.
+	 * An edge is projective exactly if its dependent lies within those ranges.
+	 * <p>
+	 * Tokens without a head (root or undefined) count as projective.
+	 */
+	private void ensureProjectivity() {
+		if(projectivityReady) {
+			return;
+		}
+		ensureStructure();
+		
+		if(projective==null) {
+			final int capacity = edges.length;
+			projective = new boolean[capacity];
+			ranks = new int[capacity];
+			sizes = new int[capacity];
+			order = new int[capacity];
+			leftRuns = new int[capacity];
+			rightRuns = new int[capacity];
+		}
+		
+		// Pre-order ranks for all sub-trees, including those below undefined heads
+		Arrays.fill(ranks, 0, size, -1);
+		final int[] stack = leftRuns; // only used as buffer until the sweeps 
+		int rank = 0;
+		for (int i = 0; i < size; i++) {
+			if(heads[i]>=0) {
+				continue;
+			}
+			int top = 0;
+			stack[top++] = i;
+			while(top>0) {
+				final int node = stack[--top];
+				ranks[node] = rank;
+				order[rank++] = node;
+				final int[] list = edges[node];
+				if(list!=null) {
+					for (int j = list[0]; j > 0; j--) {
+						stack[top++] = list[j];
+					}
+				}
+			}
+		}
+		// Sub-tree sizes in reverse pre-order, children are always done before their parent
+		for (int r = rank-1; r >= 0; r--) {
+			final int node = order[r];
+			int value = 1;
+			final int[] list = edges[node];
+			if(list!=null) {
+				for (int j = 1; j <= list[0]; j++) {
+					value += sizes[list[j]];
+				}
+			}
+			sizes[node] = value;
+		}
+		
+		// Right sweep, reusing the order buffer as stack
+		int top = 0;
+		for (int q = 0; q < size; q++) {
+			while(top>0 && !dominates(order[top-1], q)) {
+				rightRuns[order[--top]] = q-1;
+			}
+			order[top++] = q;
+		}
+		while(top>0) {
+			rightRuns[order[--top]] = size-1;
+		}
+		
+		// Left sweep
+		for (int q = size-1; q >= 0; q--) {
+			while(top>0 && !dominates(order[top-1], q)) {
+				leftRuns[order[--top]] = q+1;
+			}
+			order[top++] = q;
+		}
+		while(top>0) {
+			leftRuns[order[--top]] = 0;
+		}
+		
+		for (int d = 0; d < size; d++) {
+			final int h = heads[d];
+			if(h<0) {
+				projective[d] = true;
+			} else {
+				projective[d] = d>h ? rightRuns[h]>=d : leftRuns[h]<=d;
+			}
+		}
+		
+		projectivityReady = true;
+	}
+	
+	/** Returns whether {@code node} dominates or equals {@code index}, only valid during {@link #ensureProjectivity()} */
+	private boolean dominates(int node, int index) {
+		final int r = ranks[node];
+		final int q = ranks[index];
+		return r!=-1 && q>=r && q<r+sizes[node];
+	}
+
+	/**
+	 * Returns whether the edge from the head of the current node to the
+	 * current node is projective. Tokens without a head are always
+	 * considered projective. The projectivity of all edges is computed 
+	 * on demand, the first time this method is called for a sentence.
+	 */
+	public boolean isProjective() {
+		if(nodePointer==-1)
+			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
+
+		ensureProjectivity();
+		return projective[nodePointer];
+	}
+
 	/**
 	 * @see de.ims.icarus.search_tools.tree.TargetTree#getNodeIndex()
 	 */
@@ -211,6 +402,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
 
+		ensureStructure();
 		int[] list = edges[nodePointer];
 
 		return list==null ? 0 : list[0];
@@ -223,6 +415,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
 
+		ensureStructure();
 		int[] list = edges[nodePointer];
 
 		if(list==null || index<0 || index>=list[0])
@@ -239,6 +432,7 @@ public class TargetTree {
 		if(nodeIndex<0 || nodeIndex>=size)
 			throw new IndexOutOfBoundsException("Node index out of bounds: "+nodeIndex); //$NON-NLS-1$
 
+		ensureStructure();
 		int[] list = edges[nodeIndex];
 
 		if(list==null || edgeIndex<0 || edgeIndex>=list[0])
@@ -276,7 +470,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
 
-		return heads[nodePointer]==LanguageConstants.DATA_HEAD_ROOT;
+		return head(nodePointer)==LanguageConstants.DATA_HEAD_ROOT;
 	}
 
 	/**
@@ -286,7 +480,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
 
-		return heads[nodePointer];
+		return head(nodePointer);
 	}
 
 	/**
@@ -307,6 +501,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
 
+		ensureStructure();
 		int[] list = edges[nodePointer];
 
 		if(list==null || index<0 || index>=list[0])
@@ -323,6 +518,7 @@ public class TargetTree {
 		if(nodeIndex<0 || nodeIndex>=size)
 			throw new IndexOutOfBoundsException("Node index out of bounds: "+nodeIndex); //$NON-NLS-1$
 
+		ensureStructure();
 		int[] list = edges[nodeIndex];
 
 		if(list==null || index<0 || index>=list[0])
@@ -337,10 +533,10 @@ public class TargetTree {
 	public void viewParent() {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
-		if(heads[nodePointer]==-1)
+		if(head(nodePointer)==-1)
 			throw new IllegalStateException("Current node is the root node"); //$NON-NLS-1$
 
-		nodePointer = heads[nodePointer];
+		nodePointer = head(nodePointer);
 		edgePointer = -1;
 	}
 
@@ -377,6 +573,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
 
+		ensureStructure();
 		return heights[nodePointer];
 	}
 
@@ -387,6 +584,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
 
+		ensureStructure();
 		return descendantCounts[nodePointer];
 	}
 
@@ -484,8 +682,8 @@ public class TargetTree {
 		locks[index][0] = false;
 		int[] list = edges[index];
 
-		// Unlock all edges for this node!
-		if(list!=null) {
+		// Unlock all edges for this node! Without structure no edges could have been locked.
+		if(structureReady && list!=null) {
 			boolean[] lock = locks[index];
 			for(int i=1; i<=list[0]; i++) {
 				lock[i] = false;
@@ -497,6 +695,7 @@ public class TargetTree {
 	 * @see de.ims.icarus.search_tools.tree.TargetTree#unlockChildren(int)
 	 */
 	public void unlockChildren(int index) {
+		ensureStructure();
 		int[] list = edges[index];
 
 		if(list!=null) {
@@ -597,6 +796,11 @@ public class TargetTree {
 	private int fetchHead(int index) {
 		return data.getHead(index);
 	}
+	
+	/** Head lookup that does not require the structure to be built */
+	private int head(int index) {
+		return structureReady ? heads[index] : fetchHead(index);
+	}
 
 
 
@@ -633,6 +837,43 @@ public class TargetTree {
 		return data.getFeatures(nodePointer);
 	}
 
+	// SYMBOL METHODS, only available for encoded sentences
+
+	public int getFormId() {
+		if(nodePointer==-1)
+			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
+
+		return encoded.getFormId(nodePointer);
+	}
+
+	public int getPosId() {
+		if(nodePointer==-1)
+			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
+
+		return encoded.getPosId(nodePointer);
+	}
+
+	public int getLemmaId() {
+		if(nodePointer==-1)
+			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
+
+		return encoded.getLemmaId(nodePointer);
+	}
+
+	public int getFeaturesId() {
+		if(nodePointer==-1)
+			throw new IllegalStateException("Current scope is not on a node"); //$NON-NLS-1$
+
+		return encoded.getFeaturesId(nodePointer);
+	}
+
+	public int getRelationId() {
+		if(nodePointer==-1)
+			throw new IllegalStateException("Scope on edge but node pointer cleared"); //$NON-NLS-1$
+
+		return encoded.getRelationId(nodePointer);
+	}
+
 	// EDGE METHODS
 
 	public String getRelation() {
@@ -650,7 +891,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Scope on edge but node pointer cleared"); //$NON-NLS-1$
 
-		int head = heads[nodePointer];
+		int head = head(nodePointer);
 
 		return head==LanguageConstants.DATA_HEAD_ROOT ?
 				LanguageConstants.DATA_UNDEFINED_VALUE : Math.abs(head-nodePointer);
@@ -662,7 +903,7 @@ public class TargetTree {
 		if(nodePointer==-1)
 			throw new IllegalStateException("Scope on edge but node pointer cleared"); //$NON-NLS-1$
 
-		int head = heads[nodePointer];
+		int head = head(nodePointer);
 
 		if(head==LanguageConstants.DATA_HEAD_ROOT) {
 			return LanguageConstants.DATA_UNDEFINED_VALUE;
@@ -55,6 +55,7 @@ public class TransitiveMatcher extends Matcher {
 
 	@Override
 	public boolean matches() {
+		final long begin = beginProfiling();
 		int parentAllocation = parent.getAllocation();
 
 		//FIXME switch to the isLegalIndex(int) method  and traverse space instead of premature restriction
@@ -76,6 +77,7 @@ public class TransitiveMatcher extends Matcher {
 			matched = alternate.matches();
 		}
 
+		endProfiling(begin);
 		return matched;
 	}
 
@@ -92,6 +94,9 @@ public class TransitiveMatcher extends Matcher {
 		while(indexIterator.hasNext()) {
 			targetTree.viewNode(index);
 			targetTree.viewChild(indexIterator.next());
+			if(stats!=null) {
+				stats.visited++;
+			}
 
 			// Check for precedence constraints
 			if(targetTree.getNodeIndex()<minIndex
@@ -162,6 +167,14 @@ public class TransitiveMatcher extends Matcher {
 		recycleIterator(iterator);
 	}
 
+	@Override
+	public TransitiveMatcher clone() {
+		TransitiveMatcher clone = (TransitiveMatcher) super.clone();
+		clone.iteratorCache = new Stack<>();
+		clone.matched = false;
+		return clone;
+	}
+
 	protected boolean isDone() {
 		return matched && (exclusionMember || !exhaustive);
 	}
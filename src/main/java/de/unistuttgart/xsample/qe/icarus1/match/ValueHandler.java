@@ -78,6 +78,13 @@ public abstract class ValueHandler {
 
 		@Override
 		public Object labelToValue(Object label) {
+			// The query parser delivers unquoted numbers as Double
+			if(label instanceof Number) {
+				double value = ((Number)label).doubleValue();
+				if(value!=Math.rint(value))
+					throw new NumberFormatException("Not an integer value: "+label); //$NON-NLS-1$
+				return Integer.valueOf((int)value);
+			}
 			return LanguageUtils.parseIntegerLabel((String)label);
 		}
 
@@ -0,0 +1,171 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.unistuttgart.xsample.qe.icarus1.match.cs;
+
+import java.util.BitSet;
+
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
+import de.unistuttgart.xsample.qe.icarus1.FeatureIndex;
+import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
+import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchOperator;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
+import de.unistuttgart.xsample.qe.icarus1.match.TargetTree;
+
+/**
+ * Constraint on a single feature within the feature bundle of a token. 
+ * The specifier denotes the feature key and the constraint value is 
+ * compared to the value assigned to that key, e.g. {@code feature$Case=Dat}.
+ * Tokens whose bundle lacks the key are treated as having no value.
+ * <p>
+ * When searching a {@link ColumnarCorpus} the constraint is evaluated once
+ * for every distinct bundle via the {@link FeatureIndex} of the corpus and
+ * can use the postings of the bundles to skip sentences.
+ * 
+ * @author Markus Gärtner
+ * @version $Id$
+ *
+ */
+public class FeatureConstraintFactory extends AbstractConstraintFactory {
+
+	public static final String TOKEN = "feature"; //$NON-NLS-1$
+
+	public FeatureConstraintFactory() {
+		super(TOKEN, NODE_CONSTRAINT_TYPE);
+	}
+
+	/**
+	 * @see de.ims.icarus.search_tools.ConstraintFactory#createConstraint(java.lang.Object, de.ims.icarus.search_tools.SearchOperator, java.lang.Object, de.ims.icarus.util.Options)
+	 */
+	@Override
+	public SearchConstraint createConstraint(Object value,
+			SearchOperator operator, Object specifier, Options options) {
+		if(options.get(SearchParameters.SEARCH_CASESENSITIVE, SearchParameters.DEFAULT_SEARCH_CASESENSITIVE))
+			return new FeatureConstraint(value, operator, specifier);
+		else
+			return new FeatureCIConstraint(value, operator, specifier);
+	}
+
+	@Override
+	public SearchOperator[] getSupportedOperators() {
+		return new SearchOperator[] {
+			SearchOperator.EQUALS,
+			SearchOperator.EQUALS_NOT,
+			SearchOperator.CONTAINS,
+			SearchOperator.CONTAINS_NOT,
+			SearchOperator.MATCHES,
+			SearchOperator.MATCHES_NOT,
+		};
+	}
+
+	private static class FeatureConstraint extends SearchConstraint.SymbolConstraint {
+
+		private static final long serialVersionUID = -5025880316410329157L;
+
+		public FeatureConstraint(Object value, SearchOperator operator, Object specifier) {
+			super(TOKEN, value, operator, specifier);
+		}
+
+		public String getKey() {
+			return String.valueOf(getSpecifier());
+		}
+
+		@Override
+		public Object getInstance(Object value) {
+			return FeatureIndex.getFeature(((TargetTree)value).getFeatures(), getKey());
+		}
+
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getFeatureSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getFeaturesId();
+		}
+
+		@Override
+		protected boolean comparesSymbols() {
+			return false;
+		}
+
+		@Override
+		protected String getAnnotationKey() {
+			return LanguageConstants.FEATURES_KEY;
+		}
+
+		@Override
+		protected BitSet evaluate(ColumnarCorpus corpus) {
+			return corpus.getFeatureIndex().findBundles(getKey(), this::matchesInstance);
+		}
+
+		@Override
+		public FeatureConstraint clone() {
+			return new FeatureConstraint(getValue(), getOperator(), getSpecifier());
+		}
+	}
+
+	private static class FeatureCIConstraint extends SearchConstraint.CaseInsensitiveSymbolConstraint {
+
+		private static final long serialVersionUID = 7216262290427164905L;
+
+		public FeatureCIConstraint(Object value, SearchOperator operator, Object specifier) {
+			super(TOKEN, value, operator, specifier);
+		}
+
+		public String getKey() {
+			return String.valueOf(getSpecifier());
+		}
+
+		@Override
+		public Object getInstance(Object value) {
+			return lowercase(FeatureIndex.getFeature(((TargetTree)value).getFeatures(), getKey()));
+		}
+		
+		private static String lowercase(String value) {
+			return value==null ? null : value.toLowerCase();
+		}
+
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getFeatureSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getFeaturesId();
+		}
+
+		@Override
+		protected String getAnnotationKey() {
+			return LanguageConstants.FEATURES_KEY;
+		}
+
+		@Override
+		protected BitSet evaluate(ColumnarCorpus corpus) {
+			return corpus.getFeatureIndex().findBundles(getKey(), value -> matchesInstance(lowercase(value)));
+		}
+
+		@Override
+		public FeatureCIConstraint clone() {
+			return (FeatureCIConstraint) super.clone();
+		}
+	}
+}
@@ -16,7 +16,9 @@
  */
 package de.unistuttgart.xsample.qe.icarus1.match.cs;
 
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchOperator;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
@@ -59,7 +61,7 @@ public class FeaturesConstraintFactory extends AbstractConstraintFactory {
 		};
 	}
 
-	private static class FeaturesConstraint extends SearchConstraint {
+	private static class FeaturesConstraint extends SearchConstraint.SymbolConstraint {
 
 		private static final long serialVersionUID = -3346450454270312183L;
 
@@ -72,13 +74,23 @@ public class FeaturesConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getFeatures();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getFeatureSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getFeaturesId();
+		}
+
 		@Override
 		public SearchConstraint clone() {
 			return new FeaturesConstraint(getValue(), getOperator());
 		}
 	}
 
-	private static class FeaturesCIConstraint extends SearchConstraint.CaseInsensitiveConstraint {
+	private static class FeaturesCIConstraint extends SearchConstraint.CaseInsensitiveSymbolConstraint {
 
 		private static final long serialVersionUID = -3346450454270312183L;
 
@@ -91,6 +103,16 @@ public class FeaturesConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getFeatures().toLowerCase();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getFeatureSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getFeaturesId();
+		}
+
 		@Override
 		public FeaturesCIConstraint clone() {
 			return new FeaturesCIConstraint(getValue(), getOperator());
@@ -16,7 +16,9 @@
  */
 package de.unistuttgart.xsample.qe.icarus1.match.cs;
 
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchOperator;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
@@ -47,7 +49,7 @@ public class FormConstraintFactory extends AbstractConstraintFactory {
 			return new FormCIConstraint(value, operator);
 	}
 
-	private static class FormConstraint extends SearchConstraint {
+	private static class FormConstraint extends SearchConstraint.SymbolConstraint {
 
 		private static final long serialVersionUID = 2843300705315175039L;
 
@@ -60,13 +62,23 @@ public class FormConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getForm();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getFormSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getFormId();
+		}
+
 		@Override
 		public SearchConstraint clone() {
 			return new FormConstraint(getValue(), getOperator());
 		}
 	}
 
-	private static class FormCIConstraint extends SearchConstraint.CaseInsensitiveConstraint {
+	private static class FormCIConstraint extends SearchConstraint.CaseInsensitiveSymbolConstraint {
 
 		private static final long serialVersionUID = -7737708296328734303L;
 
@@ -79,6 +91,16 @@ public class FormConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getForm().toLowerCase();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getFormSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getFormId();
+		}
+
 		@Override
 		public FormCIConstraint clone() {
 			return new FormCIConstraint(getValue(), getOperator());
@@ -16,7 +16,9 @@
  */
 package de.unistuttgart.xsample.qe.icarus1.match.cs;
 
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchOperator;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
@@ -47,7 +49,7 @@ public class LemmaConstraintFactory extends AbstractConstraintFactory {
 			return new LemmaCIConstraint(value, operator);
 	}
 
-	private static class LemmaConstraint extends SearchConstraint {
+	private static class LemmaConstraint extends SearchConstraint.SymbolConstraint {
 
 		private static final long serialVersionUID = -2816057046153547371L;
 
@@ -60,13 +62,23 @@ public class LemmaConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getLemma();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getLemmaSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getLemmaId();
+		}
+
 		@Override
 		public SearchConstraint clone() {
 			return new LemmaConstraint(getValue(), getOperator());
 		}
 	}
 
-	private static class LemmaCIConstraint extends SearchConstraint.CaseInsensitiveConstraint {
+	private static class LemmaCIConstraint extends SearchConstraint.CaseInsensitiveSymbolConstraint {
 
 		private static final long serialVersionUID = -8582367322352411091L;
 
@@ -79,6 +91,16 @@ public class LemmaConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getLemma().toLowerCase();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getLemmaSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getLemmaId();
+		}
+
 		@Override
 		public LemmaCIConstraint clone() {
 			return new LemmaCIConstraint(getValue(), getOperator());
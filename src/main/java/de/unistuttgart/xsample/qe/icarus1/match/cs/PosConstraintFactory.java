@@ -16,7 +16,9 @@
  */
 package de.unistuttgart.xsample.qe.icarus1.match.cs;
 
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchOperator;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
@@ -47,7 +49,7 @@ public class PosConstraintFactory extends AbstractConstraintFactory {
 			return new PosCIConstraint(value, operator);
 	}
 
-	private static class PosConstraint extends SearchConstraint {
+	private static class PosConstraint extends SearchConstraint.SymbolConstraint {
 
 		private static final long serialVersionUID = 18977116270797226L;
 
@@ -60,13 +62,23 @@ public class PosConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getPos();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getPosSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getPosId();
+		}
+
 		@Override
 		public SearchConstraint clone() {
 			return new PosConstraint(getValue(), getOperator());
 		}
 	}
 
-	private static class PosCIConstraint extends SearchConstraint.CaseInsensitiveConstraint {
+	private static class PosCIConstraint extends SearchConstraint.CaseInsensitiveSymbolConstraint {
 
 		private static final long serialVersionUID = 4933479883479834272L;
 
@@ -79,6 +91,16 @@ public class PosConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getPos().toLowerCase();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getPosSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getPosId();
+		}
+
 		@Override
 		public PosCIConstraint clone() {
 			return (PosCIConstraint) super.clone();
@@ -91,7 +91,7 @@ public class ProjectivityConstraintFactory extends AbstractConstraintFactory {
 
 		@Override
 		public Object getInstance(Object value) {
-			return ((TargetTree)value).isFlagSet(LanguageConstants.FLAG_PROJECTIVE);
+			return ((TargetTree)value).isProjective();
 		}
 
 		@Override
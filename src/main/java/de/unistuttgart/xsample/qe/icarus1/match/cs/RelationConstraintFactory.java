@@ -25,7 +25,9 @@
  */
 package de.unistuttgart.xsample.qe.icarus1.match.cs;
 
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
 import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SymbolTable;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchConstraint;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchOperator;
 import de.unistuttgart.xsample.qe.icarus1.match.SearchParameters;
@@ -56,7 +58,7 @@ public class RelationConstraintFactory extends AbstractConstraintFactory {
 			return new RelationCIConstraint(value, operator);
 	}
 
-	private static class RelationConstraint extends SearchConstraint {
+	private static class RelationConstraint extends SearchConstraint.SymbolConstraint {
 
 		private static final long serialVersionUID = 1716609613318759367L;
 
@@ -69,13 +71,23 @@ public class RelationConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getRelation();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getRelationSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getRelationId();
+		}
+
 		@Override
 		public RelationConstraint clone() {
 			return (RelationConstraint) super.clone();
 		}
 	}
 
-	private static class RelationCIConstraint extends SearchConstraint.CaseInsensitiveConstraint {
+	private static class RelationCIConstraint extends SearchConstraint.CaseInsensitiveSymbolConstraint {
 
 		private static final long serialVersionUID = -3611860983057645172L;
 
@@ -88,6 +100,16 @@ public class RelationConstraintFactory extends AbstractConstraintFactory {
 			return ((TargetTree)value).getRelation().toLowerCase();
 		}
 
+		@Override
+		protected SymbolTable getSymbols(ColumnarCorpus corpus) {
+			return corpus.getRelationSymbols();
+		}
+
+		@Override
+		protected int getSymbol(TargetTree tree) {
+			return tree.getRelationId();
+		}
+
 		@Override
 		public RelationCIConstraint clone() {
 			return (RelationCIConstraint) super.clone();
@@ -33,6 +33,7 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.PrimitiveIterator;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -161,11 +162,11 @@ public class XSampleUtils {
 		requireNonNull(result);
 		checkArgument("Result is empty", !result.isEmpty());
 		List<XmpFragment> fragments = new ArrayList<>();
-		long[] hits = result.getHits();
-		XmpFragment current = XmpFragment.of(hits[0]+1);
+		PrimitiveIterator.OfLong hits = result.getBitmap().iterator();
+		XmpFragment current = XmpFragment.of(hits.nextLong()+1);
 		
-		for (int i = 1; i < hits.length; i++) {
-			long value = hits[i]+1;
+		while(hits.hasNext()) {
+			long value = hits.nextLong()+1;
 			if(!current.append(value)) {
 				fragments.add(current);
 				current = XmpFragment.of(value);
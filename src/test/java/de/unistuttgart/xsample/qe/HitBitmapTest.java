@@ -0,0 +1,190 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class HitBitmapTest {
+	
+	/** Mix of sparse, dense and contiguous chunks, including negative values */
+	private static LongSortedSet randomValues(long seed) {
+		Random random = new Random(seed);
+		LongSortedSet values = new LongAVLTreeSet();
+		for (int i = 0; i < 500; i++) {
+			values.add(random.nextInt(1_000_000) - 100_000L);
+		}
+		for (int i = 0; i < 20_000; i++) {
+			values.add(300_000L + random.nextInt(40_000));
+		}
+		for (long v = 700_000; v < 900_000; v++) {
+			values.add(v);
+		}
+		values.add(Long.MAX_VALUE);
+		return values;
+	}
+	
+	private static HitBitmap of(LongSortedSet values) {
+		return HitBitmap.of(values.toLongArray());
+	}
+
+	@Test
+	void testEmpty() {
+		assertThat(HitBitmap.of()).isSameAs(HitBitmap.EMPTY);
+		assertThat(HitBitmap.EMPTY.isEmpty()).isTrue();
+		assertThat(HitBitmap.EMPTY.toArray()).isEmpty();
+		assertThat(HitBitmap.EMPTY.iterator().hasNext()).isFalse();
+		assertThat(HitBitmap.EMPTY.slice(0, 10)).isSameAs(HitBitmap.EMPTY);
+	}
+
+	@Test
+	void testRoundTrip() {
+		LongSortedSet values = randomValues(1);
+		HitBitmap bitmap = of(values);
+		
+		assertThat(bitmap.cardinality()).isEqualTo(values.size());
+		assertThat(bitmap.toArray()).containsExactly(values.toLongArray());
+		assertThat(bitmap.first()).isEqualTo(values.firstLong());
+		assertThat(bitmap.last()).isEqualTo(Long.MAX_VALUE);
+		
+		long[] iterated = new long[values.size()];
+		int i = 0;
+		for(PrimitiveIterator.OfLong it = bitmap.iterator(); it.hasNext();) {
+			iterated[i++] = it.nextLong();
+		}
+		assertThat(iterated).containsExactly(values.toLongArray());
+		
+		assertThat(bitmap.contains(800_000)).isTrue();
+		assertThat(bitmap.contains(900_000)).isFalse();
+	}
+
+	@Test
+	void testUnsorted() {
+		assertThatIllegalArgumentException().isThrownBy(() -> HitBitmap.of(1, 3, 2));
+		assertThatIllegalArgumentException().isThrownBy(() -> HitBitmap.of(1, 1));
+	}
+
+	@Test
+	void testRangeCardinality() {
+		LongSortedSet values = randomValues(2);
+		HitBitmap bitmap = of(values);
+		
+		long[][] ranges = {{0, 100}, {-100_000, 1_000_000}, {299_990, 310_000}, {750_000, 750_000}, 
+				{899_999, 900_001}, {5, 4}, {Long.MIN_VALUE, Long.MAX_VALUE}};
+		for (long[] range : ranges) {
+			long expected = range[0]>range[1] ? 0 : values.subSet(range[0], range[1]).size() 
+					+ (values.contains(range[1]) ? 1 : 0);
+			assertThat(bitmap.cardinality(range[0], range[1])).as("%d-%d", range[0], range[1]).isEqualTo(expected);
+			if(range[0]<=range[1]) {
+				assertThat(bitmap.slice(range[0], range[1]).toArray()).as("%d-%d", range[0], range[1])
+					.containsExactly(LongStream.of(values.toLongArray())
+							.filter(v -> v>=range[0] && v<=range[1]).toArray());
+			}
+		}
+	}
+
+	@Test
+	void testSetOperations() {
+		LongSortedSet values1 = randomValues(3);
+		LongSortedSet values2 = randomValues(4);
+		HitBitmap bitmap1 = of(values1);
+		HitBitmap bitmap2 = of(values2);
+		
+		LongSortedSet union = new LongAVLTreeSet(values1);
+		union.addAll(values2);
+		LongSortedSet intersection = new LongAVLTreeSet(values1);
+		intersection.retainAll(values2);
+		
+		assertThat(bitmap1.or(bitmap2).toArray()).containsExactly(union.toLongArray());
+		assertThat(bitmap1.and(bitmap2).toArray()).containsExactly(intersection.toLongArray());
+		assertThat(bitmap1.and(HitBitmap.EMPTY).isEmpty()).isTrue();
+		assertThat(bitmap1.or(HitBitmap.EMPTY)).isEqualTo(bitmap1);
+	}
+
+	@Test
+	void testQuotaInterval() {
+		HitBitmap hits = HitBitmap.of(3, 10, 11, 12, 40, 41, 100_000, 100_001);
+		HitBitmap quota = HitBitmap.range(11, 40).or(HitBitmap.range(100_001, 200_000));
+		
+		assertThat(hits.and(quota).toArray()).containsExactly(11, 12, 40, 100_001);
+	}
+
+	@Test
+	void testBuilderRanges() {
+		HitBitmap bitmap = new HitBitmap.Builder()
+				.add(-5)
+				.addRange(60_000, 70_000)
+				.addRange(70_001, 70_010)
+				.add(1L<<40)
+				.build();
+		
+		assertThat(bitmap.cardinality()).isEqualTo(1 + 10_011 + 1);
+		assertThat(bitmap.cardinality(65_536, 70_010)).isEqualTo(4_475);
+		assertThat(bitmap.contains(65_535)).isTrue();
+		assertThat(bitmap.contains(70_011)).isFalse();
+		assertThatIllegalArgumentException().isThrownBy(() -> new HitBitmap.Builder().add(5).addRange(3, 8));
+	}
+
+	@Test
+	void testSerialization() throws Exception {
+		HitBitmap bitmap = of(randomValues(5));
+		
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+			out.writeObject(bitmap);
+		}
+		// Contiguous spans are stored as runs, much smaller than 8 bytes per value
+		assertThat((long) buffer.size()).isLessThan(bitmap.cardinality());
+		
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+			HitBitmap copy = (HitBitmap) in.readObject();
+			assertThat(copy).isEqualTo(bitmap);
+			assertThat(copy.toArray()).containsExactly(bitmap.toArray());
+		}
+	}
+	
+	@Test
+	void testResult() {
+		Result result = new Result();
+		result.setBitmap(HitBitmap.range(5, 100_000));
+		
+		assertThat(result.getSize()).isEqualTo(99_996);
+		assertThat(result.getHits()).hasSize(99_996).startsWith(5, 6);
+		result.clear();
+		assertThat(result.isEmpty()).isTrue();
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import de.unistuttgart.xsample.qe.QueryException.QueryErrorCode;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class QueryCacheTest {
+	
+	private static QueryCache.Key key(String query) {
+		return new QueryCache.Key(query, "{}", Long.valueOf(1), Long.valueOf(2), Long.valueOf(3), 100);
+	}
+	
+	private static QueryResult result(long...hits) {
+		Result result = new Result();
+		result.setHits(hits);
+		return new QueryResult(result, 10);
+	}
+
+	@Test
+	void testHit() throws Exception {
+		QueryCache cache = new QueryCache();
+		AtomicInteger calls = new AtomicInteger();
+		
+		QueryResult r1 = cache.get(key("[pos=NN]"), () -> { calls.incrementAndGet(); return result(1, 2, 3); });
+		QueryResult r2 = cache.get(key("[pos=NN]"), () -> { calls.incrementAndGet(); return result(4); });
+		
+		assertThat(calls).hasValue(1);
+		assertThat(r2.getResult().getHits()).containsExactly(1, 2, 3);
+		assertThat(r2.getSegments()).isEqualTo(10);
+		// Every caller must be able to assign its own corpus id
+		assertThat(r2.getResult()).isNotSameAs(r1.getResult());
+	}
+
+	@Test
+	void testPeek() throws Exception {
+		QueryCache cache = new QueryCache();
+		assertThat(cache.peek(key("[pos=NN]"))).isNull();
+		
+		cache.get(key("[pos=NN]"), () -> result(1, 2));
+		assertThat(cache.peek(key("[pos=NN]")).getResult().getHits()).containsExactly(1, 2);
+		assertThat(cache.peek(key("[pos=VB]"))).isNull();
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	@Test
+	void testDistinctKeys() throws Exception {
+		QueryCache cache = new QueryCache();
+		cache.get(key("[pos=NN]"), () -> result(1));
+		QueryResult r = cache.get(new QueryCache.Key("[pos=NN]", "{}", Long.valueOf(1), Long.valueOf(2), 
+				Long.valueOf(3), 101), () -> result(2));
+		
+		assertThat(r.getResult().getHits()).containsExactly(2);
+		assertThat(cache.size()).isEqualTo(2);
+	}
+
+	@Test
+	void testEvictionByEntries() throws Exception {
+		QueryCache cache = new QueryCache(2, 100);
+		cache.get(key("a"), () -> result(1));
+		cache.get(key("b"), () -> result(2));
+		// Touch "a" so that "b" becomes the eldest entry
+		cache.get(key("a"), () -> result(-1));
+		cache.get(key("c"), () -> result(3));
+		
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get(key("a"), () -> result(-1)).getResult().getHits()).containsExactly(1);
+		assertThat(cache.get(key("b"), () -> result(-2)).getResult().getHits()).containsExactly(-2);
+	}
+
+	@Test
+	void testEvictionByHits() throws Exception {
+		QueryCache cache = new QueryCache(100, 4);
+		cache.get(key("a"), () -> result(1, 2));
+		cache.get(key("b"), () -> result(3, 4));
+		cache.get(key("c"), () -> result(5, 6));
+		
+		assertThat(cache.getTotalHits()).isEqualTo(4);
+		assertThat(cache.size()).isEqualTo(2);
+		
+		// Oversized results are returned but never stored
+		cache.get(key("d"), () -> result(1, 2, 3, 4, 5));
+		assertThat(cache.size()).isEqualTo(2);
+	}
+
+	@Test
+	void testFailureNotCached() throws Exception {
+		QueryCache cache = new QueryCache();
+		assertThatExceptionOfType(QueryException.class).isThrownBy(() -> cache.get(key("a"), 
+				() -> { throw new QueryException("test", QueryErrorCode.IO_ERROR); }));
+		
+		assertThat(cache.size()).isEqualTo(0);
+		assertThat(cache.get(key("a"), () -> result(1)).getResult().getHits()).containsExactly(1);
+	}
+
+	@Test
+	void testCoalescing() throws Exception {
+		final QueryCache cache = new QueryCache();
+		final int threads = 8;
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<QueryResult> first = executor.submit(() -> cache.get(key("a"), () -> {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return result(7);
+			}));
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+			
+			List<Future<QueryResult>> others = new ArrayList<>();
+			for (int i = 0; i < threads-1; i++) {
+				others.add(executor.submit(() -> cache.get(key("a"), () -> {
+					calls.incrementAndGet();
+					return result(-1);
+				})));
+			}
+			release.countDown();
+			
+			assertThat(first.get(5, TimeUnit.SECONDS).getResult().getHits()).containsExactly(7);
+			for(Future<QueryResult> future : others) {
+				assertThat(future.get(5, TimeUnit.SECONDS).getResult().getHits()).containsExactly(7);
+			}
+			assertThat(calls).hasValue(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void testTruncatedNotShared() throws Exception {
+		final QueryCache cache = new QueryCache();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<QueryResult> first = executor.submit(() -> cache.get(key("a"), () -> {
+				started.countDown();
+				release.await();
+				QueryResult result = result(7);
+				result.getResult().setTruncated(true);
+				return result;
+			}));
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+			
+			Future<QueryResult> second = executor.submit(() -> cache.get(key("a"), () -> result(7, 8)));
+			release.countDown();
+			
+			assertThat(first.get(5, TimeUnit.SECONDS).isTruncated()).isTrue();
+			QueryResult result = second.get(5, TimeUnit.SECONDS);
+			assertThat(result.isTruncated()).isFalse();
+			assertThat(result.getResult().getHits()).containsExactly(7, 8);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.unistuttgart.xsample.qe.QueryException.QueryErrorCode;
+import de.unistuttgart.xsample.qe.icarus1.CompactSentenceData;
+import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
+import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SentenceData;
+import de.unistuttgart.xsample.qe.icarus1.match.ConstraintContext;
+import de.unistuttgart.xsample.qe.icarus1.match.Search;
+import de.unistuttgart.xsample.qe.icarus1.match.SearchQuery;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class QueryEngineTest {
+	
+	private ExecutorService executor;
+	
+	@BeforeEach
+	void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+	
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	private static QueryResult result(long...hits) {
+		Result result = new Result();
+		result.setHits(hits);
+		return new QueryResult(result, 10);
+	}
+	
+	private static Search search() throws Exception {
+		String[] tokens = {"x"};
+		List<SentenceData> corpus = Collections.singletonList(new CompactSentenceData(tokens, tokens, tokens, 
+				tokens, tokens, new short[] {LanguageConstants.DATA_HEAD_ROOT}, new long[1]));
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());
+		query.parseQueryString("[form=x]");
+		Search search = new Search(query, Options.emptyOptions, corpus);
+		search.init();
+		return search;
+	}
+
+	@Test
+	void testManifestOrder() throws Exception {
+		CountDownLatch secondDone = new CountDownLatch(1);
+		List<Callable<QueryResult>> parts = Arrays.asList(
+				// First part finishes last
+				() -> { secondDone.await(); return result(1); },
+				() -> { secondDone.countDown(); return result(2); },
+				() -> result(3));
+		
+		List<QueryResult> results = QueryEngine.execute(executor, parts, new QueryEngine.RunningSearches());
+		
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).getResult().getHits()).containsExactly(1);
+		assertThat(results.get(1).getResult().getHits()).containsExactly(2);
+		assertThat(results.get(2).getResult().getHits()).containsExactly(3);
+	}
+
+	@Test
+	void testFailureCancelsRunningSearches() throws Exception {
+		QueryEngine.RunningSearches searches = new QueryEngine.RunningSearches();
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Search search = search();
+		
+		List<Callable<QueryResult>> parts = Arrays.asList(
+				() -> result(1),
+				() -> { 
+					started.await(); 
+					throw new QueryException("test", QueryErrorCode.IO_ERROR); 
+				},
+				() -> {
+					// Emulates a long running search that only stops when cancelled
+					searches.searchStarted(search);
+					started.countDown();
+					try {
+						long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+						while(!search.isCancelled() && System.nanoTime()<deadline) {
+							Thread.sleep(5);
+						}
+						cancelled.set(search.isCancelled());
+					} finally {
+						searches.searchFinished(search);
+					}
+					return result(2);
+				});
+		
+		assertThatExceptionOfType(QueryException.class)
+			.isThrownBy(() -> QueryEngine.execute(executor, parts, searches))
+			.satisfies(e -> assertThat(e.getCode()).isEqualTo(QueryErrorCode.IO_ERROR));
+		
+		executor.shutdown();
+		assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(cancelled).isTrue();
+		
+		// Searches starting after the failure are cancelled right away
+		Search late = search();
+		searches.searchStarted(late);
+		assertThat(late.isCancelled()).isTrue();
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import de.unistuttgart.xsample.qe.QueryException.QueryErrorCode;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class QueryJobTest {
+	
+	private static QueryResult result(long...hits) {
+		Result result = new Result();
+		result.setHits(hits);
+		return new QueryResult(result, 10);
+	}
+
+	@Test
+	void testDone() throws Exception {
+		QueryJob job = new QueryJob("1", 2);
+		assertThat(job.getState()).isEqualTo(QueryJob.State.RUNNING);
+		assertThat(job.getProgress()).isEqualTo(0);
+		
+		job.run(1, () -> result(3));
+		assertThat(job.isFinished()).isFalse();
+		assertThat(job.getProgress()).isEqualTo(50);
+		assertThatIllegalStateException().isThrownBy(job::getResults);
+		
+		job.run(0, () -> result(1, 2));
+		assertThat(job.getState()).isEqualTo(QueryJob.State.DONE);
+		assertThat(job.getProgress()).isEqualTo(100);
+		assertThat(job.getFinished()).isNotNull();
+		assertThat(job.getResults()).hasSize(2);
+		assertThat(job.getResults().get(0).getResult().getHits()).containsExactly(1, 2);
+		assertThat(job.getResults().get(1).getResult().getHits()).containsExactly(3);
+	}
+
+	@Test
+	void testEmpty() throws Exception {
+		QueryJob job = new QueryJob("1", 0);
+		assertThat(job.getState()).isEqualTo(QueryJob.State.DONE);
+		assertThat(job.getResults()).isEmpty();
+	}
+
+	@Test
+	void testFailure() throws Exception {
+		QueryJob job = new QueryJob("1", 3);
+		AtomicBoolean called = new AtomicBoolean();
+		
+		job.run(0, () -> result(1));
+		job.run(1, () -> { throw new QueryException("test", QueryErrorCode.IO_ERROR); });
+		// Remaining parts must not start after a failure
+		job.run(2, () -> { called.set(true); return result(2); });
+		
+		assertThat(job.getState()).isEqualTo(QueryJob.State.FAILED);
+		assertThat(job.getError().getCode()).isEqualTo(QueryErrorCode.IO_ERROR);
+		assertThat(called).isFalse();
+		assertThat(job.cancel()).isFalse();
+	}
+
+	@Test
+	void testCancel() throws Exception {
+		QueryJob job = new QueryJob("1", 2);
+		job.run(0, () -> result(1));
+		
+		assertThat(job.cancel()).isTrue();
+		assertThat(job.getState()).isEqualTo(QueryJob.State.CANCELLED);
+		
+		// Late results of already running parts are discarded
+		job.run(1, () -> result(2));
+		assertThat(job.getState()).isEqualTo(QueryJob.State.CANCELLED);
+		assertThatIllegalStateException().isThrownBy(job::getResults);
+	}
+}
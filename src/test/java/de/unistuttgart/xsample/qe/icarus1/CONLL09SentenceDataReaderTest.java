@@ -26,8 +26,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -57,4 +59,43 @@ class CONLL09SentenceDataReaderTest {
 		assertThat(sentences.get(1).length()).isEqualTo(36);
 	}
 
+	@Test
+	void testSharedValues() throws IOException, UnsupportedFormatException {
+		final InputStream in = CONLL09SentenceDataReaderTest.class.getResourceAsStream("icarus.conll09");
+		final CONLL09SentenceDataReader reader = new CONLL09SentenceDataReader(false);
+		
+		List<SentenceData> sentences = reader.readAll(new InputStreamReader(in, StandardCharsets.UTF_8), Options.emptyOptions);
+		
+		SentenceData first = sentences.get(0);
+		assertThat(first.getPos(0)).isEqualTo("NN").isSameAs(first.getPos(3));
+		// Values are shared across sentences as well
+		assertThat(sentences.get(4).getForm(6)).isEqualTo("Icarus").isSameAs(first.getForm(0));
+	}
+
+	@Test
+	void testProjection() throws IOException, UnsupportedFormatException {
+		final CONLL09SentenceDataReader reader = new CONLL09SentenceDataReader(false);
+		List<SentenceData> full = reader.readAll(new InputStreamReader(
+				CONLL09SentenceDataReaderTest.class.getResourceAsStream("icarus.conll09"), StandardCharsets.UTF_8), 
+				Options.emptyOptions);
+		List<SentenceData> projected = reader.readAll(new InputStreamReader(
+				CONLL09SentenceDataReaderTest.class.getResourceAsStream("icarus.conll09"), StandardCharsets.UTF_8), 
+				new Options(CONLL09SentenceDataReader.ANNOTATIONS_OPTION, Collections.singleton(LanguageConstants.POS_KEY)));
+		
+		assertThat(projected).hasSameSizeAs(full);
+		for (int s = 0; s < full.size(); s++) {
+			SentenceData expected = full.get(s);
+			SentenceData actual = projected.get(s);
+			assertThat(actual.length()).isEqualTo(expected.length());
+			assertThat(actual.getIndex()).isEqualTo(expected.getIndex());
+			for (int i = 0; i < expected.length(); i++) {
+				assertThat(actual.getPos(i)).isEqualTo(expected.getPos(i));
+				assertThat(actual.getForm(i)).isEmpty();
+				assertThat(actual.getLemma(i)).isEmpty();
+				assertThat(actual.getRelation(i)).isEmpty();
+				assertThat(actual.getHead(i)).isEqualTo(LanguageConstants.DATA_UNDEFINED_VALUE);
+			}
+		}
+	}
+
 }
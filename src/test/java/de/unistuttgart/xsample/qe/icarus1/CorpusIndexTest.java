@@ -0,0 +1,260 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.unistuttgart.xsample.qe.icarus1.match.TargetTree;
+import de.unistuttgart.xsample.util.XSampleUtils;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class CorpusIndexTest {
+	
+	private static final long SOURCE_SIZE = 1234;
+	
+	private List<SentenceData> loadSentences() throws Exception {
+		final InputStream in = CorpusIndexTest.class.getResourceAsStream("icarus.conll09");
+		final CONLL09SentenceDataReader reader = new CONLL09SentenceDataReader(false);
+		return reader.readAll(new InputStreamReader(in, StandardCharsets.UTF_8), Options.emptyOptions);
+	}
+	
+	private ColumnarCorpus build(List<SentenceData> sentences) {
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		sentences.forEach(builder::add);
+		return builder.build();
+	}
+	
+	private static void assertSameContent(List<SentenceData> expected, List<SentenceData> actual) {
+		assertThat(actual).hasSameSizeAs(expected);
+		for (int s = 0; s < expected.size(); s++) {
+			SentenceData e = expected.get(s);
+			SentenceData a = actual.get(s);
+			assertThat(a.length()).isEqualTo(e.length());
+			for (int i = 0; i < e.length(); i++) {
+				assertThat(a.getForm(i)).isEqualTo(e.getForm(i));
+				assertThat(a.getLemma(i)).isEqualTo(e.getLemma(i));
+				assertThat(a.getPos(i)).isEqualTo(e.getPos(i));
+				assertThat(a.getFeatures(i)).isEqualTo(e.getFeatures(i));
+				assertThat(a.getRelation(i)).isEqualTo(e.getRelation(i));
+				assertThat(a.getHead(i)).isEqualTo(e.getHead(i));
+				assertThat(a.getFlags(i)).isEqualTo(e.getFlags(i));
+			}
+		}
+	}
+
+	@Test
+	void testColumnarView() throws Exception {
+		List<SentenceData> sentences = loadSentences();
+		ColumnarCorpus corpus = build(sentences);
+		
+		assertThat(corpus.size()).isEqualTo(10);
+		assertThat(corpus.length(0)).isEqualTo(7);
+		assertThat(corpus.length(1)).isEqualTo(36);
+		assertSameContent(sentences, corpus.sentences());
+	}
+
+	@Test
+	void testLengths() throws Exception {
+		ColumnarCorpus corpus = build(loadSentences());
+		
+		assertThat(corpus.maxLength()).isEqualTo(36);
+		assertThat(corpus.sentencesWithLength(7, 8)).containsExactly(0, 2, 4);
+		assertThat(corpus.sentencesWithLength(30, Integer.MAX_VALUE)).containsExactly(1, 6, 7);
+		assertThat(corpus.sentencesWithLength(0, Integer.MAX_VALUE)).hasSize(10);
+		assertThat(corpus.sentencesWithLength(9, 15)).isEmpty();
+		assertThat(corpus.sentencesWithLength(1, 0)).isEmpty();
+	}
+
+	@Test
+	void testShapes() throws Exception {
+		List<SentenceData> sentences = loadSentences();
+		ColumnarCorpus corpus = build(sentences);
+		
+		assertThat(corpus.maxHeight(0)).isEqualTo(4);
+		assertThat(corpus.maxFanOut(0)).isEqualTo(3);
+		assertThat(corpus.maxDescendants(0)).isEqualTo(6);
+		assertThat(corpus.maxFanOut(2)).isEqualTo(4);
+		
+		TargetTree tree = new TargetTree();
+		for (int s = 0; s < sentences.size(); s++) {
+			tree.reload(sentences.get(s), Options.emptyOptions);
+			int height = 0, fanOut = 0, descendants = 0;
+			for (int i = 0; i < tree.size(); i++) {
+				tree.viewNode(i);
+				height = Math.max(height, tree.getHeight());
+				fanOut = Math.max(fanOut, tree.getEdgeCount());
+				descendants = Math.max(descendants, tree.getDescendantCount());
+			}
+			assertThat(corpus.maxHeight(s)).as("height %d", s).isEqualTo(height);
+			assertThat(corpus.maxFanOut(s)).as("fan-out %d", s).isEqualTo(fanOut);
+			assertThat(corpus.maxDescendants(s)).as("descendants %d", s).isEqualTo(descendants);
+		}
+	}
+
+	@Test
+	void testSymbols() throws Exception {
+		List<SentenceData> sentences = loadSentences();
+		ColumnarCorpus corpus = build(sentences);
+		SymbolTable pos = corpus.getPosSymbols();
+		
+		EncodedSentenceData first = corpus.getSentence(0);
+		assertThat(first.getPosId(0)).isEqualTo(first.getPosId(3)).isEqualTo(pos.getId("NN"));
+		assertThat(pos.getSymbol(first.getPosId(1))).isEqualTo("VBD");
+		assertThat(pos.getId("XYZ")).isEqualTo(SymbolTable.UNKNOWN_ID);
+		assertThat(pos.getId(null)).isEqualTo(SymbolTable.NULL_ID);
+		assertThat(pos.size()).isLessThan(corpus.tokenCount());
+	}
+
+	@Test
+	void testLowercaseSymbols() throws Exception {
+		ColumnarCorpus corpus = build(loadSentences());
+		SymbolTable forms = corpus.getFormSymbols();
+		SymbolTable lowercase = forms.getLowercaseSymbols();
+		int[] lowercaseIds = forms.getLowercaseIds();
+		
+		assertThat(forms.getLowercaseSymbols()).isSameAs(lowercase);
+		assertThat(lowercaseIds).hasSize(forms.size());
+		assertThat(lowercase.size()).isLessThan(forms.size());
+		for (int id = 0; id < forms.size(); id++) {
+			assertThat(lowercase.getSymbol(lowercaseIds[id])).isEqualTo(forms.getSymbol(id).toLowerCase());
+		}
+		assertThat(lowercaseIds[forms.getId("He")]).isEqualTo(lowercaseIds[forms.getId("he")]);
+	}
+
+	@Test
+	void testPostings() throws Exception {
+		List<SentenceData> sentences = loadSentences();
+		ColumnarCorpus corpus = build(sentences);
+		SymbolTable forms = corpus.getFormSymbols();
+		PostingsIndex postings = corpus.getPostings(LanguageConstants.FORM_KEY);
+		
+		assertThat(postings.size()).isEqualTo(forms.size());
+		for (int symbol = 0; symbol < forms.size(); symbol++) {
+			String form = forms.getSymbol(symbol);
+			int[] expected = IntStream.range(0, sentences.size())
+					.filter(s -> IntStream.range(0, sentences.get(s).length())
+							.anyMatch(i -> form.equals(sentences.get(s).getForm(i))))
+					.toArray();
+			assertThat(postings.postings(symbol)).as(form).containsExactly(expected);
+			assertThat(postings.frequency(symbol)).isEqualTo(expected.length);
+		}
+		assertThat(postings.postings(forms.getId("Icarus"))).containsExactly(0, 4, 6, 7, 9);
+		assertThat(postings.postings(SymbolTable.UNKNOWN_ID)).isEmpty();
+		BitSet symbols = new BitSet();
+		symbols.set(forms.getId("Icarus"));
+		symbols.set(forms.getId("He"));
+		assertThat(postings.postings(symbols)).containsExactly(0, 3, 4, 6, 7, 9);
+		assertThat(postings.postings(new BitSet())).isEmpty();
+		assertThat(PostingsIndex.intersect(new int[] {1, 3, 5, 7}, new int[] {0, 3, 4, 7, 8})).containsExactly(3, 7);
+	}
+
+	@Test
+	void testRoundTrip(@TempDir Path dir) throws Exception {
+		List<SentenceData> sentences = loadSentences();
+		ColumnarCorpus corpus = build(sentences);
+		SecretKey key = XSampleUtils.makeKey();
+		Path file = dir.resolve("corpus.idx");
+		
+		CorpusIndex.store(corpus, SOURCE_SIZE, file, XSampleUtils.encrypt(key));
+		ColumnarCorpus loaded = CorpusIndex.load(file, XSampleUtils.decrypt(key), SOURCE_SIZE);
+		
+		assertThat(loaded).isNotNull();
+		assertThat(loaded.tokenCount()).isEqualTo(corpus.tokenCount());
+		assertSameContent(sentences, loaded.sentences());
+		assertThat(loaded.getPostings(LanguageConstants.POS_KEY).postings(loaded.getPosSymbols().getId("NNP")))
+			.containsExactly(corpus.getPostings(LanguageConstants.POS_KEY).postings(corpus.getPosSymbols().getId("NNP")));
+		for (int s = 0; s < corpus.size(); s++) {
+			assertThat(loaded.maxHeight(s)).isEqualTo(corpus.maxHeight(s));
+			assertThat(loaded.maxFanOut(s)).isEqualTo(corpus.maxFanOut(s));
+			assertThat(loaded.maxDescendants(s)).isEqualTo(corpus.maxDescendants(s));
+		}
+		SymbolTable forms = loaded.getFormSymbols();
+		assertThat(forms.getLowercaseIds()).containsExactly(corpus.getFormSymbols().getLowercaseIds());
+		assertThat(forms.getLowercaseSymbols().size()).isEqualTo(corpus.getFormSymbols().getLowercaseSymbols().size());
+		assertThat(forms.getLowercaseIds()[forms.getId("He")]).isEqualTo(forms.getLowercaseIds()[forms.getId("he")]);
+	}
+
+	@Test
+	void testFeatureRoundTrip() throws Exception {
+		String[] tokens = {"x", "y"};
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		builder.add(new CompactSentenceData(tokens, tokens, tokens, new String[] {"Case=Dat|Number=Sing", "_"}, 
+				tokens, new short[] {LanguageConstants.DATA_HEAD_ROOT, 0}, new long[2]));
+		builder.add(new CompactSentenceData(tokens, tokens, tokens, new String[] {"Number=Plur|Case=Nom", "Foo"}, 
+				tokens, new short[] {LanguageConstants.DATA_HEAD_ROOT, 0}, new long[2]));
+		ColumnarCorpus corpus = builder.build();
+		
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		CorpusIndex.write(corpus, SOURCE_SIZE, new DataOutputStream(buffer));
+		ColumnarCorpus loaded = CorpusIndex.read(new DataInputStream(
+				new ByteArrayInputStream(buffer.toByteArray())), SOURCE_SIZE);
+		
+		assertThat(loaded).isNotNull();
+		FeatureIndex expected = corpus.getFeatureIndex();
+		FeatureIndex actual = loaded.getFeatureIndex();
+		assertThat(actual.size()).isEqualTo(expected.size());
+		assertThat(actual.getKeys().size()).isEqualTo(expected.getKeys().size());
+		for (int bundle = 0; bundle < expected.size(); bundle++) {
+			assertThat(actual.featureCount(bundle)).isEqualTo(expected.featureCount(bundle));
+			for(String key : new String[] {"Case", "Number", "Foo", "Mood"}) {
+				assertThat(actual.getValue(bundle, key)).isEqualTo(expected.getValue(bundle, key));
+			}
+		}
+		assertThat(actual.findBundles("Case", "Nom"::equals).stream())
+			.containsExactly(loaded.getFeatureSymbols().getId("Number=Plur|Case=Nom"));
+	}
+
+	@Test
+	void testStaleIndex(@TempDir Path dir) throws Exception {
+		ColumnarCorpus corpus = build(loadSentences());
+		SecretKey key = XSampleUtils.makeKey();
+		Path file = dir.resolve("corpus.idx");
+		
+		CorpusIndex.store(corpus, SOURCE_SIZE, file, XSampleUtils.encrypt(key));
+		
+		assertThat(CorpusIndex.load(file, XSampleUtils.decrypt(key), SOURCE_SIZE+1)).isNull();
+	}
+
+	@Test
+	void testMissingIndex(@TempDir Path dir) throws Exception {
+		SecretKey key = XSampleUtils.makeKey();
+		assertThat(CorpusIndex.load(dir.resolve("corpus.idx"), XSampleUtils.decrypt(key), SOURCE_SIZE)).isNull();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class FeatureIndexTest {
+
+	@Test
+	void testFeatureIndex() throws Exception {
+		SymbolTable bundles = new SymbolTable();
+		String[] values = {"Case=Dat|Number=Sing", "_", "Number=Plur|Case=Acc", "Foo", "Case=Nom|Case=Gen", ""};
+		for(String value : values) {
+			bundles.intern(value);
+		}
+		FeatureIndex index = FeatureIndex.build(bundles);
+		
+		assertThat(index.size()).isEqualTo(values.length);
+		assertThat(index.getKeys().size()).isEqualTo(3);
+		assertThat(index.featureCount(0)).isEqualTo(2);
+		assertThat(index.featureCount(1)).isZero();
+		assertThat(index.featureCount(4)).isEqualTo(1);
+		assertThat(index.featureCount(SymbolTable.NULL_ID)).isZero();
+		assertThat(index.getValue(0, "Case")).isEqualTo("Dat");
+		assertThat(index.getValue(2, "Case")).isEqualTo("Acc");
+		assertThat(index.getValue(2, "Number")).isEqualTo("Plur");
+		assertThat(index.getValue(3, "Foo")).isEmpty();
+		assertThat(index.getValue(4, "Case")).isEqualTo("Nom");
+		assertThat(index.getValue(1, "Case")).isNull();
+		assertThat(index.getValue(0, "Mood")).isNull();
+		
+		for (int bundle = 0; bundle < values.length; bundle++) {
+			for(String key : new String[] {"Case", "Number", "Foo", "Mood"}) {
+				assertThat(index.getValue(bundle, key)).as("%s in %s", key, values[bundle])
+					.isEqualTo(FeatureIndex.getFeature(values[bundle], key));
+			}
+		}
+		
+		assertThat(index.findBundles("Case", "Dat"::equals).stream()).containsExactly(0);
+		assertThat(index.findBundles("Case", value -> value==null).stream()).containsExactly(1, 3, 5);
+		assertThat(index.findBundles("Mood", value -> value!=null).isEmpty()).isTrue();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe.icarus1;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class StringPoolTest {
+
+	@Test
+	void testCanonical() throws Exception {
+		StringPool pool = new StringPool();
+		String s1 = pool.get(new StringBuilder("Icarus"));
+		String s2 = pool.get(new SubSequence("The Icarus myth", 4, 6));
+		
+		assertThat(s1).isEqualTo("Icarus").isSameAs(s2);
+		assertThat(pool.get("icarus")).isNotSameAs(s1);
+		assertThat(pool.size()).isEqualTo(2);
+	}
+
+	@Test
+	void testGrowth() throws Exception {
+		StringPool pool = new StringPool();
+		String[] values = new String[5000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = pool.get(new StringBuilder().append(i));
+		}
+		
+		assertThat(pool.size()).isEqualTo(values.length);
+		for (int i = 0; i < values.length; i++) {
+			assertThat(pool.get(String.valueOf(i))).isSameAs(values[i]);
+		}
+	}
+
+	@Test
+	void testMaxSize() throws Exception {
+		StringPool pool = new StringPool(1);
+		String s = pool.get("a");
+		
+		assertThat(pool.get(new StringBuilder("b"))).isEqualTo("b");
+		assertThat(pool.size()).isEqualTo(1);
+		assertThat(pool.get(new StringBuilder("a"))).isSameAs(s);
+	}
+}
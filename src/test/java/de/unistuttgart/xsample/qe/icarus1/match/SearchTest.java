@@ -20,21 +20,35 @@
 package de.unistuttgart.xsample.qe.icarus1.match;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import de.unistuttgart.xsample.qe.Result;
 import de.unistuttgart.xsample.qe.icarus1.CONLL09SentenceDataReader;
+import de.unistuttgart.xsample.qe.icarus1.ColumnarCorpus;
+import de.unistuttgart.xsample.qe.icarus1.CompactSentenceData;
+import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
 import de.unistuttgart.xsample.qe.icarus1.Options;
 import de.unistuttgart.xsample.qe.icarus1.SentenceData;
+import de.unistuttgart.xsample.qe.icarus1.SentenceDataReader;
+import de.unistuttgart.xsample.qe.icarus1.UncheckedFormatException;
+import de.unistuttgart.xsample.qe.icarus1.UnsupportedFormatException;
+import de.unistuttgart.xsample.qe.icarus1.match.cs.FeatureConstraintFactory;
 
 /**
  * @author Markus Gärtner
@@ -52,7 +66,48 @@ class SearchTest {
 		return Stream.of(
 				Arguments.of(Options.emptyOptions, "[form=Icarus]", new long[] {0, 4, 6, 7, 9}),
 				Arguments.of(new Options(SearchParameters.SEARCH_CASESENSITIVE, true), 
-						"[form=He]", new long[] {3, 4})
+						"[form=He]", new long[] {3, 4}),
+				Arguments.of(new Options(SearchParameters.SEARCH_PARALLEL, true), 
+						"[form=Icarus]", new long[] {0, 4, 6, 7, 9}),
+				Arguments.of(Options.emptyOptions, "[pos=NN [pos=DT]]", new long[] {0, 1, 2, 5, 6, 7, 8, 9}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [pos=NNP]]", new long[] {1, 2, 3, 6, 8, 9}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [lemma=icarus,relation=SBJ]]", new long[] {0, 6, 7, 9}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [lemma!=icarus,relation=SBJ]]", new long[] {1, 2, 3, 4, 5, 7, 8, 9}),
+				Arguments.of(Options.emptyOptions, "[pos=XYZ]", new long[0]),
+				Arguments.of(Options.emptyOptions, "[form~\"ed$\"]", new long[] {1, 3, 6, 7, 8, 9}),
+				Arguments.of(new Options(SearchParameters.SEARCH_PARALLEL, true), 
+						"[form~\"ed$\"]", new long[] {1, 3, 6, 7, 8, 9}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [relation=SBJ,form!~\"us$\"]]", new long[] {1, 3, 4, 5, 7, 8}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD {[pos=NNP,relation=SBJ][pos=PRP,relation=SBJ]}]", 
+						new long[] {1, 2, 3, 4, 5, 6, 7, 8, 9}),
+				Arguments.of(new Options(SearchParameters.OPTIMIZE_SEARCH, true), 
+						"[pos=VBD [form=\".\"][pos=NNP,relation=SBJ]]", new long[] {1, 2, 6, 8, 9}),
+				Arguments.of(new Options(SearchParameters.OPTIMIZE_SEARCH, true), 
+						"[pos=VBD [relation=SBJ,form!~\"us$\"]]", new long[] {1, 3, 4, 5, 7, 8}),
+				Arguments.of(new Options(SearchParameters.OPTIMIZE_SEARCH, true, SearchParameters.SEARCH_CASESENSITIVE, true), 
+						"[pos=VBD [lemma=icarus,relation=SBJ]]", new long[] {0, 6, 7, 9}),
+				Arguments.of(new Options(SearchParameters.SEARCH_MIN_LENGTH, 10, SearchParameters.SEARCH_MAX_LENGTH, 30), 
+						"[form=Icarus]", new long[] {9}),
+				Arguments.of(Options.emptyOptions, "[pos=NN,sentenceProperty$size<=8]", new long[] {0, 2}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [sentenceProperty$size>30,relation=SBJ]]", new long[] {1, 6, 7}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [pos=NN [pos=IN [pos=NNP]]]]", new long[] {0}),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [] [] [] []]", new long[] {2, 3, 5, 6, 7, 8, 9}),
+				Arguments.of(Options.emptyOptions, "[[[[[]]]]]", new long[] {1, 3, 4, 5, 6, 7, 8, 9}),
+				Arguments.of(Options.emptyOptions, "[pos#RB]", new long[] {1, 3, 6, 7, 9}),
+				Arguments.of(Options.emptyOptions, "[pos~\"^W\"]", new long[] {8, 9}),
+				Arguments.of(Options.emptyOptions, "[lemma#ing,pos~\"^VB\"]", new long[] {8}),
+				Arguments.of(Options.emptyOptions, "[pos!~\"^[A-Z]\"]", new long[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}),
+				Arguments.of(new Options(SearchParameters.SEARCH_CASESENSITIVE, false), 
+						"[form=HE]", new long[] {1, 3, 4, 7}),
+				Arguments.of(new Options(SearchParameters.SEARCH_CASESENSITIVE, false), 
+						"[form=The]", new long[] {0, 1, 5, 6, 7, 8, 9}),
+				Arguments.of(new Options(SearchParameters.SEARCH_CASESENSITIVE, false), 
+						"[form~\"^IC\"]", new long[] {0, 4, 6, 7, 9}),
+				Arguments.of(new Options(SearchParameters.SEARCH_CASESENSITIVE, false, SearchParameters.OPTIMIZE_SEARCH, true), 
+						"[pos#vb,form~\"^W\"]", new long[] {0, 1}),
+				Arguments.of(Options.emptyOptions, "[[projectivity=false]]", new long[0]),
+				Arguments.of(Options.emptyOptions, "[pos=VBD [projectivity=true,relation=SBJ]]", 
+						new long[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9})
 		);
 	}
 
@@ -72,6 +127,464 @@ class SearchTest {
 		
 		Result result = search.getResult();
 		assertThat(result.getHits()).containsExactly(hits);
+		assertThat(result.isTruncated()).isFalse();
+		assertThat(search.getProgress()).isEqualTo(100);
+	}
+	
+	private Search search(String queryString, Options options, List<SentenceData> corpus) throws Exception {
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());		
+		query.parseQueryString(queryString);
+		Search search = new Search(query, options, corpus);
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.isDone()).isTrue();
+		return search;
+	}
+
+	@Test
+	void testResultLimit() throws Exception {
+		List<SentenceData> corpus = loadCorpus();
+		
+		long[] all = search("[pos=NN]", Options.emptyOptions, corpus).getResult().getHits();
+		assertThat(all.length).isGreaterThan(3);
+		
+		Search search = search("[pos=NN]", new Options(SearchParameters.SEARCH_RESULT_LIMIT, 3), corpus);
+		assertThat(search.isTruncated()).isTrue();
+		assertThat(search.getResult().isTruncated()).isTrue();
+		assertThat(search.getResult().getHits()).containsExactly(Arrays.copyOf(all, 3));
+	}
+
+	@Test
+	void testResultLimitNotReached() throws Exception {
+		Search search = search("[form=Icarus]", new Options(SearchParameters.SEARCH_RESULT_LIMIT, 10), loadCorpus());
+		assertThat(search.isTruncated()).isFalse();
+		assertThat(search.getResult().getHits()).containsExactly(0, 4, 6, 7, 9);
+	}
+
+	@Test
+	void testResultLimitParallel() throws Exception {
+		List<SentenceData> corpus = new ArrayList<>();
+		List<SentenceData> base = loadCorpus();
+		for (int i = 0; i < 1000; i++) {
+			corpus.addAll(base);
+		}
+		
+		long[] all = search("[pos=NN]", Options.emptyOptions, corpus).getResult().getHits();
+		
+		Search search = search("[pos=NN]", new Options(SearchParameters.SEARCH_RESULT_LIMIT, 50, 
+				SearchParameters.SEARCH_PARALLEL, true), corpus);
+		assertThat(search.getResult().isTruncated()).isTrue();
+		// Any subset of the complete result is valid for parallel searches
+		assertThat(search.getResult().getHits()).hasSize(50).isSorted();
+		assertThat(all).contains(search.getResult().getHits());
+	}
+
+	@Test
+	void testProfile() throws Exception {
+		List<SentenceData> corpus = loadCorpus();
+		
+		assertThat(search("[pos=VBD [lemma=icarus,relation=SBJ]]", Options.emptyOptions, corpus).getProfile()).isNull();
+		
+		Search search = search("[pos=VBD [lemma=icarus,relation=SBJ]]", 
+				new Options(SearchParameters.SEARCH_PROFILE, true), corpus);
+		SearchProfile profile = search.getProfile();
+		assertThat(profile).isNotNull();
+		assertThat(profile.getHits()).isEqualTo(4);
+		assertThat(profile.getCandidates()).isEqualTo(10);
+		assertThat(profile.toString()).contains("lemma=icarus", "relation=SBJ");
+		
+		List<SearchProfile.MatcherProfile> matchers = profile.getMatchers();
+		assertThat(matchers).hasSize(2);
+		SearchProfile.MatcherProfile root = matchers.get(0);
+		assertThat(root.getDepth()).isZero();
+		assertThat(root.getCalls()).isEqualTo(10);
+		assertThat(root.getMatches()).isEqualTo(4);
+		// Matching stops at the first successful root node
+		assertThat(root.getVisited()).isPositive()
+			.isLessThanOrEqualTo(corpus.stream().mapToInt(SentenceData::length).sum());
+		
+		SearchProfile.MatcherProfile child = matchers.get(1);
+		assertThat(child.getDepth()).isEqualTo(1);
+		assertThat(child.getCalls()).isEqualTo(root.getAllocations());
+		assertThat(child.getMatches()).isEqualTo(4);
+		assertThat(child.getConstraints()).hasSize(2).allSatisfy(constraint -> 
+				assertThat(constraint.getRejections()).isLessThanOrEqualTo(constraint.getEvaluations()));
+		// Only nodes passing the first constraint get to the second one
+		SearchProfile.ConstraintProfile first = child.getConstraints().get(0);
+		assertThat(child.getConstraints().get(1).getEvaluations())
+			.isEqualTo(first.getEvaluations()-first.getRejections());
+	}
+
+	@Test
+	void testProfileParallel() throws Exception {
+		List<SentenceData> corpus = new ArrayList<>();
+		List<SentenceData> base = loadCorpus();
+		for (int i = 0; i < 1000; i++) {
+			corpus.addAll(base);
+		}
+		
+		String query = "[pos=VBD [pos=NNP] [relation=OBJ]]";
+		SearchProfile sequential = search(query, new Options(SearchParameters.SEARCH_PROFILE, true), corpus).getProfile();
+		SearchProfile parallel = search(query, new Options(SearchParameters.SEARCH_PROFILE, true, 
+				SearchParameters.SEARCH_PARALLEL, true), corpus).getProfile();
+		
+		assertThat(parallel.getHits()).isEqualTo(sequential.getHits());
+		assertThat(parallel.getMatchers()).hasSameSizeAs(sequential.getMatchers());
+		for (int i = 0; i < sequential.getMatchers().size(); i++) {
+			SearchProfile.MatcherProfile expected = sequential.getMatchers().get(i);
+			SearchProfile.MatcherProfile actual = parallel.getMatchers().get(i);
+			assertThat(actual.getCalls()).isEqualTo(expected.getCalls());
+			assertThat(actual.getVisited()).isEqualTo(expected.getVisited());
+			assertThat(actual.getAllocations()).isEqualTo(expected.getAllocations());
+			assertThat(actual.getMatches()).isEqualTo(expected.getMatches());
+		}
+	}
+
+	static Stream<Arguments> transitiveSiblingsProvider() {
+		return Stream.of(
+				Arguments.of("[[(edgeType=transitive),pos=IN] [pos=TO]]"),
+				Arguments.of("[[pos=IN] [(edgeType=transitive),pos=CC]]"),
+				Arguments.of("[[(edgeType=transitive),pos=PRP []] [pos=NNS]]"),
+				Arguments.of("[[(edgeType=transitive),pos=DT] [pos=CC] [pos=IN]]"),
+				Arguments.of("[pos=VBD [pos=NN [pos=DT]] [(edgeType=transitive),pos=NNP]]"),
+				Arguments.of("[lemma!=nope [feature$Number#\"lu\"] [(edgeType=transitive),sentenceProperty$size!=5 "
+						+ "[features!~\"Sing$\" []] []]]")
+		);
+	}
+	
+	/** Transitive matchers lock their entire path, so siblings must not be reordered */
+	@ParameterizedTest
+	@MethodSource("transitiveSiblingsProvider")
+	void testOptimizeTransitiveSiblings(String queryString) throws Exception {
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		loadCorpus().forEach(builder::add);
+		ColumnarCorpus corpus = builder.build();
+		
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());
+		query.parseQueryString(queryString);
+		
+		Search search = new Search(query, Options.emptyOptions, corpus);
+		assertThat(search.init()).isTrue();
+		search.execute();
+		long[] expected = search.getResult().getHits();
+		
+		search = new Search(query, new Options(SearchParameters.OPTIMIZE_SEARCH, true), corpus);
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.getResult().getHits()).containsExactly(expected);
+	}
+	
+	private static SearchGraph parse(String queryString) throws Exception {
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());		
+		query.parseQueryString(queryString);
+		return query.getSearchGraph();
+	}
+	
+	static Stream<Arguments> specializationProvider() {
+		return Stream.of(
+				Arguments.of("[pos=VBD]", "[pos=VBD]", true),
+				Arguments.of("[pos=VBD,form=was]", "[pos=VBD]", true),
+				Arguments.of("[pos=VBD [pos=NNP]]", "[pos=VBD]", true),
+				Arguments.of("[pos=VBD [pos=NNP]]", "[pos=NNP]", true),
+				Arguments.of("[pos=VBD [pos=NNP,relation=SBJ]]", "[pos=VBD [pos=NNP]]", true),
+				Arguments.of("[pos=VBD [pos=NNP] [!pos=DT]]", "[pos=VBD [pos=NNP]]", true),
+				Arguments.of("[pos=VBD,form=was [!pos=NNP]]", "[pos=VBD [!pos=NNP]]", true),
+				Arguments.of("[pos=VBD]", "[pos=VBD,form=was]", false),
+				Arguments.of("[pos=VBD]", "[pos=VBD [pos=NNP]]", false),
+				Arguments.of("[pos=VBD [pos=NN]]", "[pos=VBD [pos=NNP]]", false),
+				Arguments.of("[pos=VBD [pos=NN [pos=NNP]]]", "[pos=VBD [pos=NNP]]", false),
+				Arguments.of("[pos=VBD [pos=NNP] [!pos=NNP]]", "[pos=VBD [!pos=NNP]]", false),
+				Arguments.of("[pos=VBD [!pos=NNP,relation=SBJ]]", "[pos=VBD [!pos=NNP]]", false),
+				Arguments.of("[pos=VBD {[pos=NNP][pos=PRP]}]", "[pos=NNP]", false),
+				Arguments.of("[pos=VBD [pos=NNP]]", "[pos=VBD {[pos=NNP][pos=PRP]}]", false),
+				Arguments.of("[pos!=VBD]", "[pos=VBD]", false)
+		);
+	}
+	
+	@ParameterizedTest
+	@MethodSource("specializationProvider")
+	void testSpecialization(String refined, String base, boolean expected) throws Exception {
+		assertThat(SearchUtils.isSpecialization(parse(refined), parse(base))).isEqualTo(expected);
+	}
+	
+	@Test
+	void testRestriction() throws Exception {
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		loadCorpus().forEach(builder::add);
+		ColumnarCorpus corpus = builder.build();
+		
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());
+		query.parseQueryString("[pos=VBD [lemma=icarus,relation=SBJ]]");
+		Search search = new Search(query, Options.emptyOptions, corpus);
+		// Hits of the more general "[pos=VBD [relation=SBJ]]"
+		search.setRestriction(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.getResult().getHits()).containsExactly(0, 6, 7, 9);
+		
+		search = new Search(query, Options.emptyOptions, corpus);
+		search.setRestriction(new int[] {1, 6, 9});
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.getResult().getHits()).containsExactly(6, 9);
+		assertThat(search.getProcessed()).isEqualTo(10);
+	}
+	
+	static Stream<Arguments> refinementProvider() {
+		return Stream.of(
+				Arguments.of("[pos=VBD [lemma=icarus,relation=SBJ]]", "[pos=VBD [relation=SBJ]]"),
+				Arguments.of("[[(edgeType=transitive),pos=CC] [pos=CC,relation!=NMOD]]", 
+						"[[(edgeType=transitive),pos=CC] [pos=CC]]"),
+				Arguments.of("[[(edgeType=transitive),pos=JJ] [pos=TO,relation!=SBJ]]", 
+						"[[(edgeType=transitive),pos=JJ] [pos=TO]]"),
+				Arguments.of("[lemma!=nope [feature$Number#\"lu\",relation!=NMOD] [(edgeType=transitive),sentenceProperty$size!=5 "
+						+ "[features!~\"Sing$\" []] []]]", 
+						"[lemma!=nope [feature$Number#\"lu\"] [(edgeType=transitive),sentenceProperty$size!=5 "
+						+ "[features!~\"Sing$\" []] []]]")
+		);
+	}
+	
+	/** Restricting a refined query to the hits of its base query must not change the result */
+	@ParameterizedTest
+	@MethodSource("refinementProvider")
+	void testRestrictionOptimized(String refined, String base) throws Exception {
+		assertThat(SearchUtils.isSpecialization(parse(refined), parse(base))).isTrue();
+		
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		loadCorpus().forEach(builder::add);
+		ColumnarCorpus corpus = builder.build();
+		// Same search settings as the QueryEngine uses
+		Options options = new Options(SearchParameters.SEARCH_PARALLEL, true, 
+				SearchParameters.OPTIMIZE_SEARCH, true);
+		
+		long[] baseHits = search(base, options, corpus, null).getResult().getHits();
+		long[] expected = search(refined, options, corpus, null).getResult().getHits();
+		int[] restriction = Arrays.stream(baseHits).mapToInt(hit -> (int) hit).toArray();
+		
+		assertThat(baseHits).contains(expected);
+		assertThat(search(refined, options, corpus, restriction).getResult().getHits()).containsExactly(expected);
+	}
+	
+	private static Search search(String queryString, Options options, ColumnarCorpus corpus, 
+			int[] restriction) throws Exception {
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());
+		query.parseQueryString(queryString);
+		Search search = new Search(query, options, corpus);
+		search.setRestriction(restriction);
+		assertThat(search.init()).isTrue();
+		search.execute();
+		return search;
+	}
+	
+	static Stream<Arguments> scannerProvider() {
+		return Stream.of(
+				Arguments.of("[pos=NN]", true),
+				Arguments.of("[pos!=VBD]", true),
+				Arguments.of("[pos#vb,form~\"^W\"]", true),
+				Arguments.of("[feature$Case=Dat]", true),
+				Arguments.of("[]", true),
+				Arguments.of("[form~\"ed$\",sentenceProperty$size<=8]", false),
+				Arguments.of("[wordProperty$length>3]", false),
+				Arguments.of("[pos=VBD [relation=SBJ]]", false)
+		);
+	}
+	
+	@ParameterizedTest
+	@MethodSource("scannerProvider")
+	void testColumnScanner(String queryString, boolean scannable) throws Exception {
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		List<SentenceData> sentences = loadCorpus();
+		sentences.forEach(builder::add);
+		ColumnarCorpus corpus = builder.build();
+		
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());
+		query.parseQueryString(queryString);
+		Search search = new Search(query, Options.emptyOptions, corpus);
+		assertThat(search.init()).isTrue();
+		Matcher matcher = new MatcherBuilder(search).createRootMatcher();
+		matcher.prepare(search);
+		assertThat(new SearchPlanner(search, matcher).createScanner()!=null).isEqualTo(scannable);
+		
+		// Scanning the columns must not change the result, regardless of scheduling
+		long[] expected = search(queryString, Options.emptyOptions, sentences).getResult().getHits();
+		search.execute();
+		assertThat(search.getResult().getHits()).containsExactly(expected);
+		
+		search = new Search(query, new Options(SearchParameters.SEARCH_PARALLEL, true), corpus);
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.getResult().getHits()).containsExactly(expected);
+	}
+	
+	static Stream<Arguments> annotationsProvider() {
+		return Stream.of(
+				Arguments.of("[pos=NN]", new String[] {LanguageConstants.POS_KEY}),
+				Arguments.of("[form~\"ed$\",sentenceProperty$size<=8]", new String[] {LanguageConstants.FORM_KEY}),
+				Arguments.of("[pos=VBD [lemma=icarus,relation=SBJ]]", new String[] {LanguageConstants.POS_KEY, 
+						LanguageConstants.LEMMA_KEY, LanguageConstants.DEPREL_KEY, LanguageConstants.HEAD_KEY}),
+				Arguments.of("[[[]]]", new String[] {LanguageConstants.HEAD_KEY}),
+				Arguments.of("[wordProperty$length>3]", new String[] {LanguageConstants.FORM_KEY}),
+				Arguments.of("[wordProperty$speaker=x]", null)
+		);
+	}
+	
+	@ParameterizedTest
+	@MethodSource("annotationsProvider")
+	void testRequiredAnnotations(String queryString, String[] expected) throws Exception {
+		Set<String> annotations = SearchUtils.getRequiredAnnotations(parse(queryString));
+		if(expected==null) {
+			assertThat(annotations).isNull();
+		} else {
+			assertThat(annotations).containsExactlyInAnyOrder(expected);
+		}
+	}
+	
+	/** Two tokens per sentence with the second one attached to the first */
+	private static List<SentenceData> featureCorpus() {
+		String[][] features = {
+				{"Case=Dat|Number=Sing", "_"},
+				{"Case=Nom|Number=Plur", "Number=Sing"},
+				{"_", "_"},
+				{"Case=dat|Gender=Fem", "Case=Acc"},
+		};
+		List<SentenceData> corpus = new ArrayList<>();
+		for(String[] bundles : features) {
+			String[] tokens = {"x", "y"};
+			corpus.add(new CompactSentenceData(tokens, tokens, tokens, bundles, tokens, 
+					new short[] {LanguageConstants.DATA_HEAD_ROOT, 0}, new long[2]));
+		}
+		return corpus;
+	}
+	
+	static Stream<Arguments> featureQueryProvider() {
+		return Stream.of(
+				Arguments.of(Options.emptyOptions, "[feature$Case=Dat]", new long[] {0}),
+				Arguments.of(Options.emptyOptions, "[feature$Case!=Dat]", new long[] {0, 1, 2, 3}),
+				Arguments.of(Options.emptyOptions, "[feature$Number=Sing]", new long[] {0, 1}),
+				Arguments.of(Options.emptyOptions, "[feature$Number~\"^P\"]", new long[] {1}),
+				Arguments.of(Options.emptyOptions, "[feature$Gender#e]", new long[] {3}),
+				Arguments.of(Options.emptyOptions, "[feature$Mood=Ind]", new long[0]),
+				Arguments.of(Options.emptyOptions, "[feature$Case=dat [feature$Case=Acc]]", new long[] {3}),
+				Arguments.of(new Options(SearchParameters.SEARCH_CASESENSITIVE, false), 
+						"[feature$Case=DAT]", new long[] {0, 3})
+		);
+	}
+	
+	@ParameterizedTest
+	@MethodSource("featureQueryProvider")
+	void testFeatures(Options options, String queryString, long[] hits) throws Exception {
+		List<SentenceData> sentences = featureCorpus();
+		assertThat(search(queryString, options, sentences).getResult().getHits()).containsExactly(hits);
+		
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		sentences.forEach(builder::add);
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());		
+		query.parseQueryString(queryString);
+		Search search = new Search(query, options, builder.build());
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.getResult().getHits()).containsExactly(hits);
+	}
+	
+	@Test
+	void testCloneCaseInsensitiveFeature() {
+		ConstraintFactory factory = ConstraintContext.defaultContext().getFactory(FeatureConstraintFactory.TOKEN);
+		SearchConstraint constraint = factory.createConstraint("DAT", SearchOperator.EQUALS, "Case", 
+				new Options(SearchParameters.SEARCH_CASESENSITIVE, false));
+		SearchConstraint clone = constraint.clone();
+		
+		assertThat(clone).isInstanceOf(SearchConstraint.CaseInsensitiveSymbolConstraint.class)
+			.isNotSameAs(constraint).hasSameClassAs(constraint);
+		assertThat(((SearchConstraint.CaseInsensitiveSymbolConstraint)clone).getLowercaseValue()).isEqualTo("dat");
+		assertThat(clone.getSpecifier()).isEqualTo("Case");
+		assertThat(clone.getOperator()).isSameAs(SearchOperator.EQUALS);
+		assertThat(clone.isActive()).isFalse();
+	}
+	
+	@ParameterizedTest
+	@MethodSource("queryResultProvider")
+	void testDummyCorpusColumnar(Options options, String queryString, long[] hits) throws Exception {
+		ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+		loadCorpus().forEach(builder::add);
+		ColumnarCorpus corpus = builder.build();
+		
+		ConstraintContext context = ConstraintContext.defaultContext();
+		SearchQuery query = new SearchQuery(context);		
+		query.parseQueryString(queryString);
+		Search search = new Search(query, options, corpus);
+		
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.isDone()).isTrue();
+		
+		Result result = search.getResult();
+		assertThat(result.getHits()).containsExactly(hits);
+	}
+
+	@ParameterizedTest
+	@MethodSource("queryResultProvider")
+	void testDummyCorpusStreaming(Options options, String queryString, long[] hits) throws Exception {
+		final InputStream in = SearchTest.class.getResourceAsStream("/de/unistuttgart/xsample/qe/icarus1/icarus.conll09");
+		
+		ConstraintContext context = ConstraintContext.defaultContext();
+		SearchQuery query = new SearchQuery(context);		
+		query.parseQueryString(queryString);
+		
+		// Only read the columns required by the query
+		Set<String> annotations = SearchUtils.getRequiredAnnotations(query.getSearchGraph());
+		final CONLL09SentenceDataReader reader = new CONLL09SentenceDataReader(true);
+		reader.init(new InputStreamReader(in, StandardCharsets.UTF_8), annotations==null ? null 
+				: new Options(CONLL09SentenceDataReader.ANNOTATIONS_OPTION, annotations));
+		
+		Search search = new Search(query, options, reader);
+		
+		assertThat(search.init()).isTrue();
+		search.execute();
+		assertThat(search.isDone()).isTrue();
+		assertThat(search.getProcessed()).isEqualTo(10);
+		
+		Result result = search.getResult();
+		assertThat(result.getHits()).containsExactly(hits);
+	}
+
+	@Test
+	void testStreamingUnsupportedFormat() throws Exception {
+		SentenceDataReader reader = new SentenceDataReader() {
+			@Override
+			public void init(Reader reader, Options options) {
+				// no-op
+			}
+			@Override
+			public SentenceData next() throws UnsupportedFormatException {
+				throw new UnsupportedFormatException("Malformed sentence");
+			}
+			@Override
+			public void close() {
+				// no-op
+			}
+		};
+		
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());
+		query.parseQueryString("[pos=NN]");
+		Search search = new Search(query, Options.emptyOptions, reader);
+		assertThat(search.init()).isTrue();
+		
+		// Malformed data must stay distinguishable from I/O errors
+		assertThatExceptionOfType(UncheckedFormatException.class).isThrownBy(search::execute)
+			.withCauseInstanceOf(UnsupportedFormatException.class);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"[sentenceProperty$size<7.5]",
+			"[sentenceProperty$size=7.5]",
+			"[pos=NN,sentenceProperty$size>=29.9]",
+	})
+	void testFractionalSize(String rawQuery) {
+		SearchQuery query = new SearchQuery(ConstraintContext.defaultContext());
+		// Sentence lengths are integral, truncating the bound would change the query
+		assertThatExceptionOfType(UnsupportedFormatException.class).isThrownBy(
+				() -> query.parseQueryString(rawQuery));
 	}
 
 }
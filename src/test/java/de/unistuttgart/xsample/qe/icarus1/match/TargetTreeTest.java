@@ -0,0 +1,121 @@
+/*
+ * XSample Server
+ * Copyright (C) 2020-2022 Markus Gärtner <markus.gaertner@ims.uni-stuttgart.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package de.unistuttgart.xsample.qe.icarus1.match;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.unistuttgart.xsample.qe.icarus1.CONLL09SentenceDataReader;
+import de.unistuttgart.xsample.qe.icarus1.CompactSentenceData;
+import de.unistuttgart.xsample.qe.icarus1.LanguageConstants;
+import de.unistuttgart.xsample.qe.icarus1.LanguageUtils;
+import de.unistuttgart.xsample.qe.icarus1.Options;
+import de.unistuttgart.xsample.qe.icarus1.SentenceData;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+class TargetTreeTest {
+	
+	private List<SentenceData> loadSentences() throws Exception {
+		final InputStream in = TargetTreeTest.class.getResourceAsStream("/de/unistuttgart/xsample/qe/icarus1/icarus.conll09");
+		final CONLL09SentenceDataReader reader = new CONLL09SentenceDataReader(false);
+		return reader.readAll(new InputStreamReader(in, StandardCharsets.UTF_8), Options.emptyOptions);
+	}
+
+	@Test
+	void testLazyStructure() throws Exception {
+		List<SentenceData> sentences = loadSentences();
+		TargetTree eager = new TargetTree();
+		TargetTree lazy = new TargetTree();
+		lazy.setLazy(true);
+		
+		for (SentenceData sentence : sentences) {
+			eager.reload(sentence, Options.emptyOptions);
+			lazy.reload(sentence, Options.emptyOptions);
+			// Head lookups and locks work without the structure 
+			lazy.viewNode(0);
+			lazy.lockNode();
+			assertThat(lazy.isRoot()).isEqualTo(sentence.getHead(0)==LanguageConstants.DATA_HEAD_ROOT);
+			assertThat(lazy.getParentIndex()).isEqualTo(sentence.getHead(0));
+			
+			for (int i = 0; i < eager.size(); i++) {
+				eager.viewNode(i);
+				lazy.viewNode(i);
+				assertThat(lazy.getEdgeCount()).isEqualTo(eager.getEdgeCount());
+				assertThat(lazy.getHeight()).isEqualTo(eager.getHeight());
+				assertThat(lazy.getDescendantCount()).isEqualTo(eager.getDescendantCount());
+				for (int j = 0; j < eager.getEdgeCount(); j++) {
+					assertThat(lazy.getChildIndexAt(i, j)).isEqualTo(eager.getChildIndexAt(i, j));
+				}
+			}
+			// Building the structure must not drop existing locks
+			assertThat(lazy.isNodeLocked(0)).isTrue();
+			lazy.unlockNode(0);
+		}
+	}
+
+	@Test
+	void testProjectivity() throws Exception {
+		Random random = new Random(42);
+		TargetTree tree = new TargetTree();
+		int nonProjective = 0;
+		
+		for (int run = 0; run < 200; run++) {
+			int length = 1+random.nextInt(25);
+			// Attach nodes in random order to random previously attached nodes
+			int[] order = IntStream.range(0, length).toArray();
+			for (int i = length-1; i > 0; i--) {
+				int j = random.nextInt(i+1);
+				int tmp = order[i]; order[i] = order[j]; order[j] = tmp;
+			}
+			short[] heads = new short[length];
+			heads[order[0]] = LanguageConstants.DATA_HEAD_ROOT;
+			for (int i = 1; i < length; i++) {
+				heads[order[i]] = (short) order[random.nextInt(i)];
+			}
+			
+			String[] tokens = new String[length];
+			Arrays.fill(tokens, "x");
+			tree.reload(new CompactSentenceData(tokens, tokens, tokens, tokens, tokens, heads, new long[length]), 
+					Options.emptyOptions);
+			for (int i = 0; i < length; i++) {
+				tree.viewNode(i);
+				boolean expected = LanguageUtils.isProjective(i, heads);
+				assertThat(tree.isProjective()).as("run %d, token %d", run, i).isEqualTo(expected);
+				if(!expected) {
+					nonProjective++;
+				}
+			}
+		}
+		
+		assertThat(nonProjective).isPositive();
+	}
+}